@@ -0,0 +1,129 @@
+package org.andork.walls;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable map from {@code char}s to values, backed by an array indexed by
+ * the char. Intended for the small single-character alphabets the parsers
+ * dispatch on (unit suffixes, cardinal directions, etc.).
+ *
+ * The expected items for a failed match are computed once, in the iteration
+ * order of the map the instance was created from, so that
+ * {@link LineParser#oneOf(CharMap)} can report them without allocating.
+ *
+ * @param <V> the value type
+ */
+public final class CharMap<V> {
+	private final char[] keys;
+	private final Object[] values;
+	private final Set<String> expectedItems;
+
+	private CharMap(char[] keys, Object[] values) {
+		this.keys = keys;
+		this.values = values;
+		Set<String> expectedItems = new LinkedHashSet<>();
+		for (char key : keys) {
+			expectedItems.add(String.valueOf(key));
+		}
+		this.expectedItems = Collections.unmodifiableSet(expectedItems);
+	}
+
+	public CharMap(Map<Character, ? extends V> map) {
+		this(keys(map.keySet()), table(map));
+	}
+
+	/**
+	 * @return a map from each of the given chars to itself.
+	 */
+	public static CharMap<Character> identity(Set<Character> chars) {
+		Map<Character, Character> map = new LinkedHashMap<>();
+		for (Character c : chars) {
+			map.put(c, c);
+		}
+		return new CharMap<>(map);
+	}
+
+	private static char[] keys(Set<Character> keySet) {
+		char[] keys = new char[keySet.size()];
+		int i = 0;
+		for (Character key : keySet) {
+			keys[i++] = key;
+		}
+		return keys;
+	}
+
+	private static Object[] table(Map<Character, ?> map) {
+		int size = 0;
+		for (Character key : map.keySet()) {
+			size = Math.max(size, key + 1);
+		}
+		Object[] values = new Object[size];
+		for (Map.Entry<Character, ?> entry : map.entrySet()) {
+			if (entry.getValue() == null) {
+				throw new IllegalArgumentException("null values are not supported");
+			}
+			values[entry.getKey()] = entry.getValue();
+		}
+		return values;
+	}
+
+	public boolean containsKey(char c) {
+		return c < values.length && values[c] != null;
+	}
+
+	/**
+	 * @return the value for {@code c}, or {@code null} if there is none.
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(char c) {
+		return c < values.length ? (V) values[c] : null;
+	}
+
+	public int size() {
+		return keys.length;
+	}
+
+	public boolean isEmpty() {
+		return keys.length == 0;
+	}
+
+	/**
+	 * @return the keys as strings, in the order they were given.
+	 */
+	public Set<String> expectedItems() {
+		return expectedItems;
+	}
+
+	/**
+	 * @return a copy of this map without the given keys, preserving the order
+	 *         of the remaining ones.
+	 */
+	public CharMap<V> without(char... removed) {
+		char[] newKeys = new char[keys.length];
+		Object[] newValues = Arrays.copyOf(values, values.length);
+		int count = 0;
+		for (char key : keys) {
+			if (contains(removed, key)) {
+				newValues[key] = null;
+			}
+			else {
+				newKeys[count++] = key;
+			}
+		}
+		return new CharMap<>(Arrays.copyOf(newKeys, count), newValues);
+	}
+
+	private static boolean contains(char[] chars, char c) {
+		for (char d : chars) {
+			if (d == c) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
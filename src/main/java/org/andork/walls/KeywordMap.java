@@ -0,0 +1,112 @@
+package org.andork.walls;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable map from keywords to values that looks keys up directly in a
+ * region of a {@link CharSequence}, ignoring ASCII case, so that parsers can
+ * dispatch on a keyword without extracting and lowercasing it first. Backed by
+ * a trie with a sorted array of children per node.
+ *
+ * All keys may start with a common prefix (like the {@code #} of a directive)
+ * that the caller has already matched; it isn't part of the lookup, but the
+ * expected items still include it. The expected items are computed once, in
+ * the iteration order of the map the instance was created from.
+ *
+ * @param <V> the value type
+ */
+public final class KeywordMap<V> {
+	private static final class Node {
+		char[] chars = new char[0];
+		Node[] children = new Node[0];
+		Object value;
+
+		Node child(char c) {
+			for (int i = 0; i < chars.length && chars[i] <= c; i++) {
+				if (chars[i] == c) {
+					return children[i];
+				}
+			}
+			return null;
+		}
+
+		Node addChild(char c) {
+			Node child = child(c);
+			if (child != null) {
+				return child;
+			}
+			int i = 0;
+			while (i < chars.length && chars[i] < c) {
+				i++;
+			}
+			char[] newChars = new char[chars.length + 1];
+			Node[] newChildren = new Node[children.length + 1];
+			System.arraycopy(chars, 0, newChars, 0, i);
+			System.arraycopy(children, 0, newChildren, 0, i);
+			System.arraycopy(chars, i, newChars, i + 1, chars.length - i);
+			System.arraycopy(children, i, newChildren, i + 1, children.length - i);
+			newChars[i] = c;
+			newChildren[i] = child = new Node();
+			chars = newChars;
+			children = newChildren;
+			return child;
+		}
+	}
+
+	private final Node root = new Node();
+	private final Set<String> expectedItems;
+
+	public KeywordMap(Map<String, ? extends V> map) {
+		this(map, "");
+	}
+
+	/**
+	 * @param map    the keywords (which must be lowercase) and their values
+	 * @param prefix a prefix all of the keys start with, which is left out of
+	 *               the lookup
+	 */
+	public KeywordMap(Map<String, ? extends V> map, String prefix) {
+		for (Map.Entry<String, ? extends V> entry : map.entrySet()) {
+			String key = entry.getKey();
+			if (!key.startsWith(prefix)) {
+				throw new IllegalArgumentException("key doesn't start with " + prefix + ": " + key);
+			}
+			if (entry.getValue() == null) {
+				throw new IllegalArgumentException("null values are not supported");
+			}
+			Node node = root;
+			for (int i = prefix.length(); i < key.length(); i++) {
+				node = node.addChild(key.charAt(i));
+			}
+			node.value = entry.getValue();
+		}
+		expectedItems = Collections.unmodifiableSet(new LinkedHashSet<>(map.keySet()));
+	}
+
+	public static char toLowerAscii(char c) {
+		return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+	}
+
+	/**
+	 * @return the value for the keyword {@code s.subSequence(start, end)}
+	 *         (ignoring ASCII case), or {@code null} if there is none.
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(CharSequence s, int start, int end) {
+		Node node = root;
+		for (int i = start; i < end && node != null; i++) {
+			node = node.child(toLowerAscii(s.charAt(i)));
+		}
+		return node == null ? null : (V) node.value;
+	}
+
+	/**
+	 * @return the keys, in the order they were given.
+	 */
+	public Set<String> expectedItems() {
+		return expectedItems;
+	}
+}
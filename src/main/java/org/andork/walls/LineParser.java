@@ -1,7 +1,9 @@
 package org.andork.walls;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -38,6 +40,123 @@ public class LineParser {
 		public void run() throws SegmentParseException;
 	}
 
+	/**
+	 * A production that reports an expected-item failure by returning {@code false} instead of throwing a
+	 * {@link SegmentParseExpectedException}. Before returning {@code false} it must record what it expected with
+	 * {@link #addExpected(int, String)}, so that the failure can be turned into an exception later (see
+	 * {@link #require(Attempt)}) if the whole line fails to parse. Like a throwing production, it may leave the index
+	 * past the input it consumed before failing.
+	 *
+	 * Attempts must not throw {@link SegmentParseExpectedException}s; use {@link #attempt(Production)} to run
+	 * productions that do.
+	 */
+	@FunctionalInterface
+	public static interface Attempt {
+		public boolean run() throws SegmentParseException;
+	}
+
+	/**
+	 * Adapts a {@link Production} to an {@link Attempt}, for productions that haven't been ported to attempts.
+	 */
+	public Attempt attempt(Production<?> production) {
+		return () -> {
+			try {
+				production.run();
+				return true;
+			}
+			catch (SegmentParseExpectedException ex) {
+				addExpected(ex);
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Adapts a {@link VoidProduction} to an {@link Attempt}, for productions that haven't been ported to attempts.
+	 */
+	public Attempt attempt(VoidProduction production) {
+		return () -> {
+			try {
+				production.run();
+				return true;
+			}
+			catch (SegmentParseExpectedException ex) {
+				addExpected(ex);
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Runs the given {@link Attempt}, and throws a {@link SegmentParseExpectedException} for all of the expected
+	 * items recorded so far if it fails.
+	 */
+	public void require(Attempt attempt) throws SegmentParseException {
+		if (!attempt.run()) {
+			throw expectedFailure();
+		}
+	}
+
+	/**
+	 * Like {@link #maybe(VoidProduction)}: it's fine if the attempt fails without consuming input, but not after.
+	 *
+	 * @return {@code false} if the attempt failed after consuming input (so the caller fails too), otherwise
+	 *         {@code true}. Whether the attempt succeeded can be told by whether it consumed input.
+	 */
+	public boolean tryMaybe(Attempt attempt) throws SegmentParseException {
+		int start = index;
+		return attempt.run() || index == start;
+	}
+
+	/**
+	 * Like {@link #maybeWithLookahead(VoidProduction)}: if the attempt fails, the index is restored.
+	 *
+	 * @return whether the attempt succeeded.
+	 */
+	public boolean tryMaybeWithLookahead(Attempt attempt) throws SegmentParseException {
+		int start = index;
+		if (attempt.run()) {
+			return true;
+		}
+		index = start;
+		return false;
+	}
+
+	/**
+	 * Like {@link #oneOf(VoidProduction...)}: runs the attempts until one succeeds, but stops at one that fails
+	 * after consuming input.
+	 *
+	 * @return whether one of the attempts succeeded.
+	 */
+	public boolean tryOneOf(Attempt... attempts) throws SegmentParseException {
+		int start = index;
+		for (Attempt attempt : attempts) {
+			if (attempt.run()) {
+				return true;
+			}
+			if (index > start) {
+				return false;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Like {@link #oneOfWithLookahead(VoidProduction...)}: restores the index after each attempt that fails.
+	 *
+	 * @return whether one of the attempts succeeded.
+	 */
+	public boolean tryOneOfWithLookahead(Attempt... attempts) throws SegmentParseException {
+		int start = index;
+		for (Attempt attempt : attempts) {
+			if (attempt.run()) {
+				return true;
+			}
+			index = start;
+		}
+		return false;
+	}
+
 	public void throwAllExpected(Production<?> production) throws SegmentParseException {
 		try {
 			production.run();
@@ -114,7 +233,7 @@ public class LineParser {
 			for (char exp : set) {
 				expectedItems.add(String.valueOf(exp));
 			}
-			throw new SegmentParseExpectedException(line.charAtAsSegment(index), expectedItems);
+			throw SegmentParseExpectedException.lightweight(line.charAtAsSegment(index), expectedSet(expectedItems));
 		}
 		index++;
 		return c;
@@ -127,7 +246,7 @@ public class LineParser {
 			for (char exp : map.keySet()) {
 				expectedItems.add(String.valueOf(exp));
 			}
-			throw new SegmentParseExpectedException(line.charAtAsSegment(index), expectedItems);
+			throw SegmentParseExpectedException.lightweight(line.charAtAsSegment(index), expectedSet(expectedItems));
 		}
 		index++;
 		return map.get(c);
@@ -148,6 +267,25 @@ public class LineParser {
 		throwAllExpected();
 	}
 
+	public <V> V oneOf(CharMap<V> map) throws SegmentParseException {
+		V value;
+		if (index >= line.length() || (value = map.get(line.charAt(index))) == null) {
+			throw SegmentParseExpectedException.lightweight(line.charAtAsSegment(index), map.expectedItems());
+		}
+		index++;
+		return value;
+	}
+
+	public <V> V oneOf(CharMap<V> map, V elseValue) {
+		V value;
+		if (index >= line.length() || (value = map.get(line.charAt(index))) == null) {
+			addExpected(index, map.expectedItems());
+			return elseValue;
+		}
+		index++;
+		return value;
+	}
+
 	public <V> V oneOf(Map<Character, V> map, V elseValue) throws SegmentParseException {
 		try {
 			return oneOf(map);
@@ -164,7 +302,7 @@ public class LineParser {
 		String str = seg.toString().toLowerCase();
 		if (!map.containsKey(str)) {
 			index = start;
-			throw new SegmentParseExpectedException(seg, map.keySet());
+			throw SegmentParseExpectedException.lightweight(seg, expectedSet(map.keySet()));
 		}
 		return map.get(str);
 	}
@@ -227,7 +365,7 @@ public class LineParser {
 		throws SegmentParseExpectedException {
 		char c;
 		if (index >= line.length() || !charPredicate.test(c = line.charAt(index))) {
-			throw new SegmentParseExpectedException(line.charAtAsSegment(index), expectedItems);
+			throw SegmentParseExpectedException.lightweight(line.charAtAsSegment(index), expectedSet(expectedItems));
 		}
 		index++;
 		return c;
@@ -246,29 +384,54 @@ public class LineParser {
 
 	public void addExpected(SegmentParseExpectedException expected) {
 		int index = Math.max(expected.getSegment().sourceIndex, 0) - Math.max(line.sourceIndex, 0);
+		addExpected(index, expected.expectedItems());
+	}
 
+	public void addExpected(int index, Collection<String> items) {
 		if (index > expectedIndex) {
 			expectedItems.clear();
 			expectedIndex = index;
 		}
 		if (index == expectedIndex) {
-			expectedItems.addAll(expected.expectedItems());
+			expectedItems.addAll(items);
+		}
+	}
+
+	public void addExpected(int index, String item) {
+		if (index > expectedIndex) {
+			expectedItems.clear();
+			expectedIndex = index;
+		}
+		if (index == expectedIndex) {
+			expectedItems.add(item);
 		}
 	}
 
 	public SegmentParseExpectedException allExpected() {
 		if (!expectedItems.isEmpty()) {
-			return new SegmentParseExpectedException(line.charAtAsSegment(index), expectedItems);
+			return SegmentParseExpectedException.lightweight(line.charAtAsSegment(index), expectedSet(expectedItems));
 		}
-		return new SegmentParseExpectedException(line.charAtAsSegment(index), "<UNKNOWN>");
+		return SegmentParseExpectedException.lightweight(line.charAtAsSegment(index), "<UNKNOWN>");
 	}
 
 	public void throwAllExpected() throws SegmentParseExpectedException {
 		if (!expectedItems.isEmpty()) {
-			throw new SegmentParseExpectedException(line.charAtAsSegment(expectedIndex), expectedItems);
+			throw SegmentParseExpectedException
+				.lightweight(line.charAtAsSegment(expectedIndex), expectedSet(expectedItems));
 		}
 	}
 
+	/**
+	 * @return an exception for all of the expected items recorded so far.
+	 */
+	public SegmentParseExpectedException expectedFailure() {
+		if (expectedItems.isEmpty()) {
+			return SegmentParseExpectedException.lightweight(line.charAtAsSegment(index), "<UNKNOWN>");
+		}
+		return SegmentParseExpectedException
+			.lightweight(line.charAtAsSegment(expectedIndex), expectedSet(expectedItems));
+	}
+
 	public void throwAllExpected(SegmentParseExpectedException finalEx) throws SegmentParseExpectedException {
 		addExpected(finalEx);
 		throwAllExpected();
@@ -279,6 +442,63 @@ public class LineParser {
 		expectedIndex = 0;
 	}
 
+	private static final String[] asciiStrings = new String[128];
+	private static final List<Set<String>> asciiExpected = new ArrayList<>();
+	static {
+		for (char c = 0; c < asciiStrings.length; c++) {
+			asciiStrings[c] = String.valueOf(c);
+			asciiExpected.add(Collections.singleton(asciiStrings[c]));
+		}
+	}
+
+	protected static String charString(char c) {
+		return c < asciiStrings.length ? asciiStrings[c] : String.valueOf(c);
+	}
+
+	/**
+	 * @return a shared, immutable expected item set for the given char.
+	 */
+	protected static Set<String> charExpected(char c) {
+		return c < asciiStrings.length ? asciiExpected.get(c) : Collections.singleton(String.valueOf(c));
+	}
+
+	protected static Set<String> expectedSet(String... items) {
+		return items.length == 1 ? Collections.singleton(items[0]) : expectedSet(Arrays.asList(items));
+	}
+
+	protected static Set<String> expectedSet(Collection<String> items) {
+		return Collections.unmodifiableSet(new LinkedHashSet<>(items));
+	}
+
+	public boolean tryExpect(char c) {
+		if (index < line.length() && c == line.charAt(index)) {
+			index++;
+			return true;
+		}
+		addExpected(index, charString(c));
+		return false;
+	}
+
+	public boolean tryExpectIgnoreCase(char c) {
+		if (index < line.length() && Character.toLowerCase(c) == Character.toLowerCase(line.charAt(index))) {
+			index++;
+			return true;
+		}
+		addExpected(index, charString(c));
+		return false;
+	}
+
+	public boolean tryExpect(Pattern rx, String expectedItem) {
+		SegmentMatcher matcher = new SegmentMatcher(line, rx);
+		matcher.region(index, line.length());
+		if (!matcher.find() || matcher.start() != index) {
+			addExpected(index, expectedItem);
+			return false;
+		}
+		index = matcher.end();
+		return true;
+	}
+
 	public Segment expect(char c) throws SegmentParseExpectedException {
 		if (index < line.length()) {
 			if (c == line.charAt(index)) {
@@ -286,7 +506,7 @@ public class LineParser {
 				return line.charAtAsSegment(index - 1);
 			}
 		}
-		throw new SegmentParseExpectedException(line.charAtAsSegment(index), Character.toString(c));
+		throw SegmentParseExpectedException.lightweight(line.charAtAsSegment(index), charExpected(c));
 	}
 
 	public Segment expectIgnoreCase(char c) throws SegmentParseExpectedException {
@@ -296,7 +516,7 @@ public class LineParser {
 				return line.charAtAsSegment(index - 1);
 			}
 		}
-		throw new SegmentParseExpectedException(line.charAtAsSegment(index), Character.toString(c));
+		throw SegmentParseExpectedException.lightweight(line.charAtAsSegment(index), charExpected(c));
 	}
 
 	public Segment expect(String c) throws SegmentParseExpectedException {
@@ -307,7 +527,7 @@ public class LineParser {
 				return line.substring(start, index);
 			}
 		}
-		throw new SegmentParseExpectedException(line.charAtAsSegment(index), c);
+		throw SegmentParseExpectedException.lightweight(line.charAtAsSegment(index), c);
 	}
 
 	public Segment expectIgnoreCase(String c) throws SegmentParseExpectedException {
@@ -318,14 +538,14 @@ public class LineParser {
 				return line.substring(start, index);
 			}
 		}
-		throw new SegmentParseExpectedException(line.charAtAsSegment(index), c);
+		throw SegmentParseExpectedException.lightweight(line.charAtAsSegment(index), c);
 	}
 
 	public Segment expect(Pattern rx, Collection<String> expectedItems) throws SegmentParseExpectedException {
 		SegmentMatcher matcher = new SegmentMatcher(line, rx);
 		matcher.region(index, line.length());
 		if (!matcher.find() || matcher.start() != index) {
-			throw new SegmentParseExpectedException(line.charAtAsSegment(index), expectedItems);
+			throw SegmentParseExpectedException.lightweight(line.charAtAsSegment(index), expectedSet(expectedItems));
 		}
 		index = matcher.end();
 		return matcher.group(0);
@@ -335,32 +555,119 @@ public class LineParser {
 		SegmentMatcher matcher = new SegmentMatcher(line, rx);
 		matcher.region(index, line.length());
 		if (!matcher.find() || matcher.start() != index) {
-			throw new SegmentParseExpectedException(line.charAtAsSegment(index), expectedItems);
+			throw SegmentParseExpectedException.lightweight(line.charAtAsSegment(index), expectedSet(expectedItems));
 		}
 		index = matcher.end();
 		return matcher.group(0);
 	}
 
+	/*
+	 * The hot tokens below are matched by hand-written scanners instead of regexes. The patterns are kept as the
+	 * reference grammar for each scanner (and for subclasses that still use them with expect(Pattern, ...)).
+	 */
+
 	protected static final Pattern whitespaceRx = Pattern.compile("\\s+");
+	private static final Set<String> whitespaceExpected = Collections.singleton("<WHITESPACE>");
+
+	/**
+	 * @return whether {@code c} matches {@code \s} in {@link Pattern}.
+	 */
+	protected static boolean isWhitespace(char c) {
+		switch (c) {
+		case ' ':
+		case '\t':
+		case '\n':
+		case '\u000B':
+		case '\f':
+		case '\r':
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	protected static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	protected int skipWhitespace(int start) {
+		int i = start;
+		while (i < line.length() && isWhitespace(line.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+
+	protected int skipDigits(int start) {
+		int i = start;
+		while (i < line.length() && isDigit(line.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
 
 	public Segment whitespace() throws SegmentParseExpectedException {
-		return expect(whitespaceRx, "<WHITESPACE>");
+		int start = index;
+		if (!tryWhitespace()) {
+			throw SegmentParseExpectedException.lightweight(line.charAtAsSegment(index), whitespaceExpected);
+		}
+		return line.substring(start, index);
+	}
+
+	public boolean tryWhitespace() {
+		int end = skipWhitespace(index);
+		if (end == index) {
+			addExpected(index, whitespaceExpected);
+			return false;
+		}
+		index = end;
+		return true;
 	}
 
 	protected static final Pattern whitespaceAndOrCommaRx = Pattern.compile("\\s*,\\s*|\\s+");
+	private static final Set<String> whitespaceAndOrCommaExpected = Collections.singleton("<WHITESPACE/,>");
+
+	/**
+	 * Scans {@link #whitespaceAndOrCommaRx} at the given index.
+	 *
+	 * @return the end index of the match, or {@code -1} if there is none.
+	 */
+	protected int scanWhitespaceAndOrComma(int start) {
+		int i = skipWhitespace(start);
+		if (i < line.length() && line.charAt(i) == ',') {
+			return skipWhitespace(i + 1);
+		}
+		return i > start ? i : -1;
+	}
 
 	public Segment whitespaceAndOrComma() throws SegmentParseExpectedException {
-		return expect(whitespaceAndOrCommaRx, "<WHITESPACE/,>");
+		int start = index;
+		if (!tryWhitespaceAndOrComma()) {
+			throw SegmentParseExpectedException.lightweight(line.charAtAsSegment(index), whitespaceAndOrCommaExpected);
+		}
+		return line.substring(start, index);
+	}
+
+	public boolean tryWhitespaceAndOrComma() {
+		int end = scanWhitespaceAndOrComma(index);
+		if (end < 0) {
+			addExpected(index, whitespaceAndOrCommaExpected);
+			return false;
+		}
+		index = end;
+		return true;
 	}
 
 	protected static final Pattern nonwhitespaceRx = Pattern.compile("\\S+");
 
 	public Optional<Segment> maybeWhitespace() throws SegmentParseException {
-		return maybe(this::whitespace);
+		int start = index;
+		return tryWhitespace() ? Optional.of(line.substring(start, index)) : Optional.empty();
 	}
 
 	public Optional<Segment> maybeWhitespaceAndOrComma() throws SegmentParseException {
-		return maybe(this::whitespaceAndOrComma);
+		int start = index;
+		return tryWhitespaceAndOrComma() ? Optional.of(line.substring(start, index)) : Optional.empty();
 	}
 
 	public Segment nonwhitespace() throws SegmentParseExpectedException {
@@ -368,28 +675,163 @@ public class LineParser {
 	}
 
 	protected static final Pattern unsignedIntLiteralRx = Pattern.compile("\\d+");
+	private static final Set<String> unsignedIntLiteralExpected = Collections.singleton("<UNSIGNED_INT_LITERAL>");
+
+	/**
+	 * Scans {@link #unsignedIntLiteralRx} at the given index.
+	 *
+	 * @return the end index of the match, or {@code -1} if there is none.
+	 */
+	protected int scanUnsignedIntLiteral(int start) {
+		int end = skipDigits(start);
+		return end > start ? end : -1;
+	}
 
 	public int unsignedIntLiteral() throws NumberFormatException, SegmentParseExpectedException {
-		return Integer.valueOf(expect(unsignedIntLiteralRx, "<UNSIGNED_INT_LITERAL>").toString());
+		int end = scanUnsignedIntLiteral(index);
+		if (end < 0) {
+			throw SegmentParseExpectedException.lightweight(line.charAtAsSegment(index), unsignedIntLiteralExpected);
+		}
+		int start = index;
+		index = end;
+		return parseUnsignedInt(start, end);
+	}
+
+	/**
+	 * Parses the digits in the given range of the line without creating any intermediate objects, except when
+	 * the value overflows an {@code int}.
+	 *
+	 * @throws NumberFormatException if the value overflows an {@code int}.
+	 */
+	protected int parseUnsignedInt(int start, int end) throws NumberFormatException {
+		long value = 0;
+		for (int i = start; i < end; i++) {
+			value = value * 10 + (line.charAt(i) - '0');
+			if (value > Integer.MAX_VALUE) {
+				return Integer.valueOf(line.substring(start, end).toString());
+			}
+		}
+		return (int) value;
 	}
 
-	private static final Map<Character, Integer> intSignSignums = new HashMap<>();
-	static {
-		intSignSignums.put('-', -1);
-		intSignSignums.put('+', 1);
+	private static final Set<String> signExpected = Collections.unmodifiableSet(new LinkedHashSet<>(
+		Arrays.asList("+", "-")));
+
+	/**
+	 * Consumes an optional {@code +} or {@code -}.
+	 *
+	 * @return {@code -1} for {@code -}, {@code 1} for {@code +}, or {@code 0} if there is no sign (in which case
+	 *         the signs are recorded as expected items).
+	 */
+	public int trySign() {
+		if (index < line.length()) {
+			switch (line.charAt(index)) {
+			case '-':
+				index++;
+				return -1;
+			case '+':
+				index++;
+				return 1;
+			}
+		}
+		addExpected(index, signExpected);
+		return 0;
 	}
 
 	public int intLiteral() throws SegmentParseException {
-		Optional<Integer> signum = maybe(() -> oneOf(intSignSignums));
-		return signum.isPresent() ? signum.get() * unsignedIntLiteral() : unsignedIntLiteral();
+		int signum = trySign();
+		return signum < 0 ? -unsignedIntLiteral() : unsignedIntLiteral();
 	}
 
-	private static final Pattern unsignedDoubleLiteralRx = Pattern.compile("\\d+(\\.\\d*)?|\\.\\d+");
+	protected static final Pattern unsignedDoubleLiteralRx = Pattern.compile("\\d+(\\.\\d*)?|\\.\\d+");
+	private static final Set<String> unsignedDoubleLiteralExpected =
+		Collections.singleton("<UNSIGNED_DOUBLE_LITERAL>");
+
+	/**
+	 * Scans {@link #unsignedDoubleLiteralRx} at the given index.
+	 *
+	 * @return the end index of the match, or {@code -1} if there is none.
+	 */
+	protected int scanUnsignedDoubleLiteral(int start) {
+		int i = skipDigits(start);
+		if (i > start) {
+			return i < line.length() && line.charAt(i) == '.' ? skipDigits(i + 1) : i;
+		}
+		if (i < line.length() && line.charAt(i) == '.') {
+			int end = skipDigits(i + 1);
+			return end > i + 1 ? end : -1;
+		}
+		return -1;
+	}
 
 	public double unsignedDoubleLiteral() throws NumberFormatException, SegmentParseExpectedException {
-		return Double.valueOf(expect(unsignedDoubleLiteralRx, "<UNSIGNED_DOUBLE_LITERAL>").toString());
+		int end = scanUnsignedDoubleLiteral(index);
+		if (end < 0) {
+			throw SegmentParseExpectedException.lightweight(line.charAtAsSegment(index), unsignedDoubleLiteralExpected);
+		}
+		int start = index;
+		index = end;
+		return parseUnsignedDouble(start, end);
+	}
+
+	/**
+	 * Like {@link #unsignedDoubleLiteral()}, but returns {@code NaN} instead of throwing if there is no literal
+	 * (which can't be confused with a parsed value, since literals can't be {@code NaN}).
+	 */
+	public double unsignedDoubleLiteralOrNaN() {
+		int end = scanUnsignedDoubleLiteral(index);
+		if (end < 0) {
+			addExpected(index, unsignedDoubleLiteralExpected);
+			return Double.NaN;
+		}
+		int start = index;
+		index = end;
+		return parseUnsignedDouble(start, end);
+	}
+
+	private static final double[] powersOf10 = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	/**
+	 * Parses a match of {@link #unsignedDoubleLiteralRx} in the given range of the line, reading the digits
+	 * directly. As long as there are at most 15 significant digits and 22 fraction digits, the digits and the power
+	 * of 10 are both exactly representable as doubles, so a single division gives the correctly rounded result
+	 * (the same as {@link Double#parseDouble(String)}). Longer literals fall back to
+	 * {@link Double#parseDouble(String)}.
+	 */
+	protected double parseUnsignedDouble(int start, int end) {
+		long digits = 0;
+		int significantDigits = 0;
+		int fractionDigits = 0;
+		boolean inFraction = false;
+		for (int i = start; i < end; i++) {
+			char c = line.charAt(i);
+			if (c == '.') {
+				inFraction = true;
+				continue;
+			}
+			if (inFraction) {
+				fractionDigits++;
+			}
+			if (digits != 0 || c != '0') {
+				if (++significantDigits > 15) {
+					return Double.parseDouble(line.substring(start, end).toString());
+				}
+				digits = digits * 10 + (c - '0');
+			}
+		}
+		if (fractionDigits >= powersOf10.length) {
+			return Double.parseDouble(line.substring(start, end).toString());
+		}
+		return fractionDigits == 0 ? (double) digits : digits / powersOf10[fractionDigits];
 	}
 
+	/**
+	 * @deprecated no longer used; {@link #doubleLiteral()} reads the sign with {@link #trySign()}.
+	 */
+	@Deprecated
 	protected static final Map<Character, Double> signSignums = new HashMap<>();
 	static {
 		signSignums.put('-', -1.0);
@@ -397,14 +839,24 @@ public class LineParser {
 	}
 
 	public double doubleLiteral() throws SegmentParseException {
-		Optional<Double> signum = maybe(() -> oneOf(signSignums));
-		return signum.isPresent() ? signum.get() * unsignedDoubleLiteral() : unsignedDoubleLiteral();
+		int signum = trySign();
+		return signum < 0 ? -unsignedDoubleLiteral() : unsignedDoubleLiteral();
 	}
 
+	private static final Set<String> endOfLineExpected = Collections.singleton("<END_OF_LINE>");
+
 	public void endOfLine() throws SegmentParseExpectedException {
 		if (index != line.length()) {
-			throw new SegmentParseExpectedException(line.charAtAsSegment(index), "<END_OF_LINE>");
+			throw SegmentParseExpectedException.lightweight(line.charAtAsSegment(index), endOfLineExpected);
+		}
+	}
+
+	public boolean tryEndOfLine() {
+		if (index != line.length()) {
+			addExpected(index, endOfLineExpected);
+			return false;
 		}
+		return true;
 	}
 
 	public Segment remaining() {
@@ -414,9 +866,6 @@ public class LineParser {
 	}
 
 	public boolean maybeChar(char c) throws SegmentParseException {
-		return maybe(() -> {
-			expect(c);
-			return null;
-		}).isPresent();
+		return tryExpect(c);
 	}
 }
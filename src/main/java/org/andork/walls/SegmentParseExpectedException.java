@@ -12,20 +12,64 @@ public class SegmentParseExpectedException extends SegmentParseException {
 	private static final long serialVersionUID = -5243227002158898703L;
 
 	private final Set<String> expectedItems;
+	private String message;
 
 	public SegmentParseExpectedException(Segment segment, String... expectedItems) {
 		this(segment, Arrays.asList(expectedItems));
 	}
 
 	public SegmentParseExpectedException(Segment segment, Collection<String> expectedItems) {
-		super(createMessage(segment, expectedItems), segment);
-		this.expectedItems = Collections.unmodifiableSet(new LinkedHashSet<>(expectedItems));
+		this(segment, Collections.unmodifiableSet(new LinkedHashSet<>(expectedItems)), null);
+	}
+
+	private SegmentParseExpectedException(Segment segment, Set<String> expectedItems, Void shared) {
+		super((String) null, segment);
+		this.expectedItems = expectedItems;
+	}
+
+	/**
+	 * Creates a lightweight instance for the parser's internal backtracking: it doesn't capture a stack trace, and
+	 * it keeps a reference to {@code expectedItems} instead of copying it. The message is the same as for a normal
+	 * instance.
+	 *
+	 * @param expectedItems an immutable set, which must not be modified afterward.
+	 */
+	public static SegmentParseExpectedException lightweight(Segment segment, Set<String> expectedItems) {
+		return new Lightweight(segment, expectedItems);
+	}
+
+	/**
+	 * Like {@link #lightweight(Segment, Set)}, but for a single expected item.
+	 */
+	public static SegmentParseExpectedException lightweight(Segment segment, String expectedItem) {
+		return new Lightweight(segment, Collections.singleton(expectedItem));
+	}
+
+	private static final class Lightweight extends SegmentParseExpectedException {
+		private static final long serialVersionUID = 2613498731744106384L;
+
+		Lightweight(Segment segment, Set<String> expectedItems) {
+			super(segment, expectedItems, null);
+		}
+
+		@Override
+		public synchronized Throwable fillInStackTrace() {
+			return this;
+		}
 	}
 
 	public Set<String> expectedItems() {
 		return expectedItems;
 	}
 
+	@Override
+	public String getMessage() {
+		if (message == null) {
+			message = createMessage(getSegment(), expectedItems);
+		}
+		return message;
+	}
+
 	private static String createMessage(Segment segment, Collection<String> expectedItems) {
 		StringBuilder message = new StringBuilder("error: Expected ");
 		if (expectedItems.size() == 1) {
@@ -7,11 +7,20 @@ public class WallsMessage {
 	public final String severity;
 	public final String message;
 	public final Segment segment;
+	/**
+	 * A compact source location to resolve when there is no {@code segment}, or -1 if there is none.
+	 */
+	public final long location;
 
 	public WallsMessage(String severity, String message, Segment segment) {
+		this(severity, message, segment, -1);
+	}
+
+	public WallsMessage(String severity, String message, Segment segment, long location) {
 		this.severity = severity;
 		this.message = message;
 		this.segment = segment;
+		this.location = location;
 	}
 
 	public WallsMessage(SegmentParseException ex) {
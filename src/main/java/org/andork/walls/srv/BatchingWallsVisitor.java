@@ -0,0 +1,137 @@
+package org.andork.walls.srv;
+
+import java.util.Date;
+import java.util.List;
+
+import org.andork.walls.WallsMessage;
+
+/**
+ * Adapts a {@link WallsBatchVisitor} to the {@link WallsVisitor} the parser calls: collects vectors into a
+ * {@link VectorTable} and delivers them in batches of up to {@link #batchSize()} rows.
+ *
+ * To keep all events in order, the pending batch is delivered before any other event, so batches are only full when
+ * the target doesn't declare {@link WallsVisitor#interests() interest} in events (like comments or warnings) that
+ * occur between vectors. Call {@link #flush()} after parsing to deliver the last batch.
+ *
+ * The batch is {@link VectorTable#reset() reset} after each delivery, so its tables of distinct stations, segments,
+ * comments and units only grow with the batch size, not with the whole parse. If the target doesn't override
+ * {@link WallsBatchVisitor#parsedVectors(VectorTable)}, the parsed vectors are passed to its
+ * {@link WallsVisitor#parsedVector(Vector) parsedVector} as they are, without batching.
+ */
+public class BatchingWallsVisitor implements WallsVisitor {
+	public static final int DEFAULT_BATCH_SIZE = 1024;
+
+	private final WallsBatchVisitor target;
+	private final int batchSize;
+	private final VectorTable batch;
+	private final boolean batched;
+
+	public BatchingWallsVisitor(WallsBatchVisitor target) {
+		this(target, DEFAULT_BATCH_SIZE);
+	}
+
+	public BatchingWallsVisitor(WallsBatchVisitor target, int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+		}
+		this.target = target;
+		this.batchSize = batchSize;
+		this.batched = overridesParsedVectors(target);
+		this.batch = batched ? new VectorTable(batchSize) : null;
+	}
+
+	private static boolean overridesParsedVectors(WallsBatchVisitor target) {
+		try {
+			return target.getClass().getMethod("parsedVectors", VectorTable.class).getDeclaringClass() !=
+				WallsBatchVisitor.class;
+		}
+		catch (NoSuchMethodException ex) {
+			throw new AssertionError(ex);
+		}
+	}
+
+	public int batchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Delivers the pending vectors, if any, to the target.
+	 */
+	public void flush() {
+		if (batched && batch.size() > 0) {
+			target.parsedVectors(batch);
+			batch.reset();
+		}
+	}
+
+	@Override
+	public int interests() {
+		return target.interests();
+	}
+
+	@Override
+	public void parsedVector(Vector parsedVector) {
+		if (!batched) {
+			target.parsedVector(parsedVector);
+			return;
+		}
+		batch.add(parsedVector);
+		if (batch.size() >= batchSize) {
+			flush();
+		}
+	}
+
+	@Override
+	public void parsedFixStation(FixedStation station) {
+		flush();
+		target.parsedFixStation(station);
+	}
+
+	@Override
+	public void parsedComment(String parsedComment) {
+		flush();
+		target.parsedComment(parsedComment);
+	}
+
+	@Override
+	public void parsedNote(String station, String parsedNote) {
+		flush();
+		target.parsedNote(station, parsedNote);
+	}
+
+	@Override
+	public void parsedDate(Date date) {
+		flush();
+		target.parsedDate(date);
+	}
+
+	@Override
+	public void parsedFlag(List<String> stations, String flag) {
+		flush();
+		target.parsedFlag(stations, flag);
+	}
+
+	@Override
+	public void willParseUnits() {
+		flush();
+		target.willParseUnits();
+	}
+
+	@Override
+	public void parsedUnits() {
+		flush();
+		target.parsedUnits();
+	}
+
+	@Override
+	public void parsedSegment(String segment) {
+		flush();
+		target.parsedSegment(segment);
+	}
+
+	@Override
+	public void message(WallsMessage message) {
+		flush();
+		target.message(message);
+	}
+}
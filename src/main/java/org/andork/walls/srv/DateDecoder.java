@@ -0,0 +1,123 @@
+package org.andork.walls.srv;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Converts the fields of {@code #date} directives to {@link Date}s. Thread-safe.
+ *
+ * The results are the same as the lenient {@link java.text.SimpleDateFormat}s the parser used to share: fields are
+ * resolved in the default time zone as of class initialization, and two-digit years are resolved to the 100 years
+ * starting 80 years before then. The time in millis for each distinct date is cached.
+ */
+final class DateDecoder {
+	private DateDecoder() {
+	}
+
+	private static final Calendar template = new GregorianCalendar(TimeZone.getDefault(), Locale.getDefault());
+	private static final Date defaultCenturyStart;
+	private static final int defaultCenturyStartYear;
+
+	static {
+		Calendar calendar = (Calendar) template.clone();
+		calendar.setTimeInMillis(System.currentTimeMillis());
+		calendar.add(Calendar.YEAR, -80);
+		defaultCenturyStart = calendar.getTime();
+		defaultCenturyStartYear = calendar.get(Calendar.YEAR);
+	}
+
+	private static final ConcurrentMap<Integer, Long> cache = new ConcurrentHashMap<>();
+
+	/**
+	 * @param year       the year as written
+	 * @param yearDigits the number of digits the year was written with; two-digit years are resolved relative to
+	 *                   the default century
+	 * @param month      the month as written (1-based)
+	 * @param day        the day of the month
+	 */
+	static Date decode(int year, int yearDigits, int month, int day) {
+		if (year < 0 || year > 9999 || month < 0 || month > 99 || day < 0 || day > 99) {
+			throw new IllegalArgumentException("field out of range");
+		}
+		boolean twoDigitYear = yearDigits == 2;
+		Integer key = (((twoDigitYear ? 1 : 0) * 10000 + year) * 100 + month) * 100 + day;
+		Long time = cache.get(key);
+		if (time == null) {
+			time = computeTime(year, twoDigitYear, month, day);
+			cache.putIfAbsent(key, time);
+		}
+		return new Date(time);
+	}
+
+	private static long computeTime(int year, boolean twoDigitYear, int month, int day) {
+		boolean ambiguousYear = false;
+		if (twoDigitYear) {
+			int ambiguousTwoDigitYear = defaultCenturyStartYear % 100;
+			ambiguousYear = year == ambiguousTwoDigitYear;
+			year += (defaultCenturyStartYear / 100) * 100 + (year < ambiguousTwoDigitYear ? 100 : 0);
+		}
+		Calendar calendar = (Calendar) template.clone();
+		calendar.clear();
+		calendar.set(Calendar.YEAR, year);
+		calendar.set(Calendar.MONTH, month - 1);
+		calendar.set(Calendar.DAY_OF_MONTH, day);
+		Date date = calendar.getTime();
+		if (ambiguousYear && date.before(defaultCenturyStart)) {
+			calendar.clear();
+			calendar.set(Calendar.YEAR, year + 100);
+			calendar.set(Calendar.MONTH, month - 1);
+			calendar.set(Calendar.DAY_OF_MONTH, day);
+			date = calendar.getTime();
+		}
+		return date.getTime();
+	}
+
+	private static int parseDigits(CharSequence s, int start, int end) {
+		int value = 0;
+		for (int i = start; i < end; i++) {
+			value = value * 10 + s.charAt(i) - '0';
+		}
+		return value;
+	}
+
+	private static int skipDigits(CharSequence s, int start) {
+		int i = start;
+		while (i < s.length() && s.charAt(i) >= '0' && s.charAt(i) <= '9') {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Decodes a date matching {@code \d+[-/]\d+[-/]\d+} in month, day, year order.
+	 */
+	static Date decodeMonthDayYear(CharSequence s) {
+		int monthEnd = skipDigits(s, 0);
+		int dayEnd = skipDigits(s, monthEnd + 1);
+		int yearEnd = skipDigits(s, dayEnd + 1);
+		return decode(
+			parseDigits(s, dayEnd + 1, yearEnd),
+			yearEnd - dayEnd - 1,
+			parseDigits(s, 0, monthEnd),
+			parseDigits(s, monthEnd + 1, dayEnd));
+	}
+
+	/**
+	 * Decodes a date matching {@code \d+[-/]\d+[-/]\d+} in year, month, day order.
+	 */
+	static Date decodeYearMonthDay(CharSequence s) {
+		int yearEnd = skipDigits(s, 0);
+		int monthEnd = skipDigits(s, yearEnd + 1);
+		int dayEnd = skipDigits(s, monthEnd + 1);
+		return decode(
+			parseDigits(s, 0, yearEnd),
+			yearEnd,
+			parseDigits(s, yearEnd + 1, monthEnd),
+			parseDigits(s, monthEnd + 1, dayEnd));
+	}
+}
@@ -0,0 +1,278 @@
+package org.andork.walls.srv;
+
+import static org.andork.walls.srv.UnitsCorrections.*;
+
+/**
+ * Applies instrument and target heights and {@code inch} to compass-and-tape measurements in primitive doubles, the
+ * way {@link Vector#applyHeightCorrections(WallsVisitor)} does. Measurements are in meters and radians, {@code NaN}
+ * if missing, and (as in a {@link Vector}) don't include the corrections of their units yet.
+ */
+public final class HeightCorrections {
+	private HeightCorrections() {
+	}
+
+	/**
+	 * The shot didn't need correcting, and wasn't changed.
+	 */
+	public static final byte UNCHANGED = 0;
+	/**
+	 * The shot was corrected.
+	 */
+	public static final byte CORRECTED = 1;
+	/**
+	 * The shot was corrected, but its change in depth was greater than its taped distance, so the distance was
+	 * assumed to match the change in depth.
+	 */
+	public static final byte DEPTH_EXCEEDS_DISTANCE = 2;
+	/**
+	 * The shot is ambiguous because the difference between instrument and target heights above the tape is greater
+	 * than the distance, and wasn't changed.
+	 */
+	public static final byte AMBIGUOUS = 3;
+
+	static final int DISTANCE = 0;
+	static final int FRONTSIGHT_INCLINATION = 1;
+	static final int BACKSIGHT_INCLINATION = 2;
+	/**
+	 * Indices of the taped distance (with {@code incd}) and the distance assumed instead, for
+	 * {@link #DEPTH_EXCEEDS_DISTANCE}.
+	 */
+	static final int TAPE_DISTANCE = 3;
+	static final int ASSUMED_DISTANCE = 4;
+	static final int RESULT_COUNT = 5;
+
+	/**
+	 * The minimum length of the {@code scratch} array for
+	 * {@link #apply(WallsUnits, double[], double[], double[], double[], double[], byte[], int, int, double[])}.
+	 */
+	public static final int SCRATCH_SIZE = COUNT + RESULT_COUNT;
+
+	/**
+	 * Corrects shots {@code offset} to {@code offset + count - 1} of the given arrays in place, using the corrections
+	 * of {@code units}. Corrected shots get a new distance and inclinations.
+	 *
+	 * Their instrument and target heights are left as they are, as {@link Vector#applyHeightCorrections(WallsVisitor)}
+	 * leaves them (it only clears local copies of them), so a shot must not be corrected twice.
+	 *
+	 * @param status receives the status of each shot ({@link #UNCHANGED}, {@link #CORRECTED},
+	 *               {@link #DEPTH_EXCEEDS_DISTANCE} or {@link #AMBIGUOUS}), or {@code null}
+	 * @return the number of shots that were corrected.
+	 */
+	public static int apply(
+		WallsUnits units,
+		double[] distance,
+		double[] frontsightInclination,
+		double[] backsightInclination,
+		double[] instrumentHeight,
+		double[] targetHeight,
+		byte[] status,
+		int offset,
+		int count) {
+		return apply(
+			units,
+			distance,
+			frontsightInclination,
+			backsightInclination,
+			instrumentHeight,
+			targetHeight,
+			status,
+			offset,
+			count,
+			new double[SCRATCH_SIZE]);
+	}
+
+	/**
+	 * Like {@link #apply(WallsUnits, double[], double[], double[], double[], double[], byte[], int, int)}, but uses
+	 * {@code scratch} (of at least {@link #SCRATCH_SIZE} elements) instead of allocating.
+	 */
+	public static int apply(
+		WallsUnits units,
+		double[] distance,
+		double[] frontsightInclination,
+		double[] backsightInclination,
+		double[] instrumentHeight,
+		double[] targetHeight,
+		byte[] status,
+		int offset,
+		int count,
+		double[] scratch) {
+		if (scratch.length < SCRATCH_SIZE) {
+			throw new IllegalArgumentException("scratch must have at least " + SCRATCH_SIZE + " elements");
+		}
+		// the corrections go at the start of scratch, and each shot's result after them
+		UnitsCorrections.get(units, scratch, 0);
+		int r = COUNT;
+		int corrected = 0;
+		for (int i = offset; i < offset + count; i++) {
+			byte shotStatus = apply(
+				distance[i],
+				frontsightInclination[i],
+				backsightInclination[i],
+				instrumentHeight[i],
+				targetHeight[i],
+				scratch,
+				0,
+				scratch,
+				r);
+			if (shotStatus == CORRECTED || shotStatus == DEPTH_EXCEEDS_DISTANCE) {
+				distance[i] = scratch[r + DISTANCE];
+				frontsightInclination[i] = scratch[r + FRONTSIGHT_INCLINATION];
+				backsightInclination[i] = scratch[r + BACKSIGHT_INCLINATION];
+				corrected++;
+			}
+			if (status != null) {
+				status[i] = shotStatus;
+			}
+		}
+		return corrected;
+	}
+
+	private static boolean isFiniteNonzero(double value) {
+		return Double.isFinite(value) && value != 0;
+	}
+
+	/**
+	 * The inclination {@link WallsUnits#averageInclination(org.andork.unit.UnitizedDouble,
+	 * org.andork.unit.UnitizedDouble)} would return.
+	 */
+	private static double averageInclination(double fs, double bs, int flags) {
+		if (!Double.isNaN(bs) && (flags & TYPEVB_CORRECTED) == 0) {
+			bs = -bs;
+		}
+		if (Double.isNaN(fs)) {
+			return bs;
+		}
+		if (Double.isNaN(bs)) {
+			return fs;
+		}
+		return (fs + bs) * 0.5;
+	}
+
+	/**
+	 * Corrects a single shot, writing the new distance and inclinations to {@code result} (starting at index
+	 * {@code r}) if it returns {@link #CORRECTED} or {@link #DEPTH_EXCEEDS_DISTANCE}.
+	 */
+	static byte apply(
+		double distance,
+		double fsInclination,
+		double bsInclination,
+		double instrumentHeight,
+		double targetHeight,
+		double[] corrections,
+		int c,
+		double[] result,
+		int r) {
+		int flags = (int) corrections[c + OPTION_FLAGS];
+		double inch = corrections[c + INCH];
+
+		if (Vector.isVertical(averageInclination(fsInclination, bsInclination, flags))
+			|| (inch == 0 && !isFiniteNonzero(instrumentHeight) && !isFiniteNonzero(targetHeight))) {
+			return UNCHANGED;
+		}
+		byte status = CORRECTED;
+
+		// get corrected average inclination (NaN if there is none)
+		double inc = averageInclination(
+			fsInclination + corrections[c + INCV],
+			bsInclination + corrections[c + INCVB],
+			flags);
+
+		// get corrected distance
+		double tapeDist = distance + corrections[c + INCD];
+
+		// get corrected instrument and target heights (default to zero)
+		double ih = instrumentHeight + corrections[c + INCS];
+		if (!Double.isFinite(ih)) {
+			ih = 0;
+		}
+		double th = targetHeight + corrections[c + INCS];
+		if (!Double.isFinite(th)) {
+			th = 0;
+		}
+
+		double stationToStationDist = tapeDist;
+		double stationToStationInc = Double.NaN;
+
+		boolean fromStation = (flags & TAPE_FROM_STATION) != 0;
+		boolean toStation = (flags & TAPE_TO_STATION) != 0;
+
+		if (fromStation && toStation && (!Double.isFinite(inc) || inc == 0)) {
+			double heightOffset = ih - th;
+
+			if (Math.abs(heightOffset) > tapeDist * (1 + 1e-6)) {
+				result[r + TAPE_DISTANCE] = tapeDist;
+				tapeDist = Math.abs(heightOffset);
+				result[r + ASSUMED_DISTANCE] = tapeDist;
+				status = DEPTH_EXCEEDS_DISTANCE;
+			}
+
+			if (Math.abs(Math.abs(heightOffset) - tapeDist) < tapeDist * 1e-8) {
+				// vertical shot
+				stationToStationInc = heightOffset > 0 ? Math.PI / 2 : -Math.PI / 2;
+				stationToStationDist = Math.abs(heightOffset + inch);
+			}
+			else if (inch != 0) {
+				double horizDistance = Math.sqrt(tapeDist * tapeDist - heightOffset * heightOffset);
+				double totalHeightOffset = heightOffset + inch;
+				stationToStationDist =
+					Math.sqrt(horizDistance * horizDistance + totalHeightOffset * totalHeightOffset);
+				stationToStationInc = Math.atan2(totalHeightOffset, horizDistance);
+			}
+			else {
+				stationToStationInc = Math.asin(heightOffset / tapeDist);
+			}
+		}
+		if (!Double.isFinite(stationToStationInc)) {
+			if (!Double.isFinite(inc)) {
+				inc = 0;
+			}
+
+			// compute height of tape ends above stations
+			double tapeFromHeight = fromStation ? 0 : ih;
+			double tapeToHeight = toStation ? 0 : th;
+
+			// compute height of instrument and target above tape ends
+			double instHeightAboveTape = ih - tapeFromHeight;
+			double targetHeightAboveTape = th - tapeToHeight;
+
+			// height change between tape vector and instrument to target vector
+			double delta = instHeightAboveTape - targetHeightAboveTape;
+
+			if (Math.abs(delta) > tapeDist) {
+				return AMBIGUOUS;
+			}
+
+			double sinInc = Math.sin(inc);
+			double cosInc = Math.cos(inc);
+			double deltaCos = delta * cosInc;
+
+			// compute instrument to target distance
+			double instToTargetDist = Math.sqrt(tapeDist * tapeDist - deltaCos * deltaCos) - delta * sinInc;
+
+			// height change between inst to target vector and final corrected vector
+			double totalDelta = ih - th + inch;
+
+			// compute station to station distance and inclination
+			double rise = instToTargetDist * sinInc + totalDelta;
+			double run = instToTargetDist * cosInc;
+			stationToStationDist = Math.sqrt(rise * rise + run * run);
+			stationToStationInc = Math.atan2(rise, run);
+		}
+
+		// subtract corrections so that when they are applied later, they produce the same vector
+		result[r + DISTANCE] = stationToStationDist - corrections[c + INCD];
+
+		if (!Double.isFinite(fsInclination) && !Double.isFinite(bsInclination)) {
+			result[r + FRONTSIGHT_INCLINATION] = stationToStationInc - corrections[c + INCV];
+			result[r + BACKSIGHT_INCLINATION] = bsInclination;
+		}
+		else {
+			// since we are moving the original vectors by the difference, we don't need to subtract the
+			// correction factors -- they're already present
+			double dInc = stationToStationInc - inc;
+			result[r + FRONTSIGHT_INCLINATION] = fsInclination + dInc;
+			result[r + BACKSIGHT_INCLINATION] = bsInclination + dInc;
+		}
+		return status;
+	}
+}
@@ -22,6 +22,10 @@ import org.andork.walls.srv.WallsUnits.Data;
 public final class MutableWallsUnits {
 	private volatile boolean frozen = true;
 	private volatile Data data;
+	/**
+	 * The result of the last call to {@link #toImmutable()}.
+	 */
+	private volatile WallsUnits immutable;
 
 	MutableWallsUnits(Data data) {
 		this.data = data;
@@ -39,11 +43,17 @@ public final class MutableWallsUnits {
 	}
 
 	/**
-	 * @return an immutable copy of this {@code MutableWallsUnits}.
+	 * @return an immutable copy of this {@code MutableWallsUnits}. Equal units states return the same instance.
 	 */
 	public WallsUnits toImmutable() {
+		WallsUnits result = immutable;
+		if (result == null || !frozen || !result.dataIs(data)) {
+			result = WallsUnits.intern(data);
+			data = result.data();
+			immutable = result;
+		}
 		frozen = true;
-		return new WallsUnits(data);
+		return result;
 	}
 
 	/**
@@ -792,7 +802,7 @@ public final class MutableWallsUnits {
 	}
 
 	boolean dataEquals(Data data) {
-		return data.equals(data);
+		return this.data.equals(data);
 	}
 
 	@Override
@@ -841,6 +851,15 @@ public final class MutableWallsUnits {
 		return name.replaceFirst("^:+", "");
 	}
 
+	/**
+	 * Interns the name {@link #processStationName(String)} would return in {@code stations}, without building it.
+	 *
+	 * @return the id of the name, or -1 if {@code name} is {@code null}
+	 */
+	public int processStationId(CharSequence name, StationSymbolTable stations) {
+		return stations.resolve(name, getPrefix(), getCase_());
+	}
+
 	public UnitizedDouble<Angle> averageInclination(UnitizedDouble<Angle> fs, UnitizedDouble<Angle> bs) {
 		if (bs != null && !isTypevbCorrected()) {
 			bs = bs.negate();
@@ -0,0 +1,199 @@
+package org.andork.walls.srv;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.andork.walls.WallsMessage;
+
+/**
+ * A {@link WallsVisitor} that records the callbacks it receives so that they can be replayed into another visitor
+ * later, in the same order. It declares the {@link #interests()} it was created with, so that a parser only records
+ * what the visitors it is replayed into need.
+ */
+public class RecordingWallsVisitor implements WallsVisitor {
+	public static enum EventType {
+		VECTOR,
+		FIX_STATION,
+		COMMENT,
+		NOTE,
+		DATE,
+		FLAG,
+		WILL_PARSE_UNITS,
+		PARSED_UNITS,
+		SEGMENT,
+		MESSAGE;
+	}
+
+	/**
+	 * A recorded callback. {@code arg} is the argument of the callback (or its first argument, for
+	 * {@link WallsVisitor#parsedNote(String, String) parsedNote} and
+	 * {@link WallsVisitor#parsedFlag(List, String) parsedFlag}), and {@code arg2} is the second argument, if any.
+	 */
+	public static final class Event {
+		public final EventType type;
+		public final Object arg;
+		public final Object arg2;
+
+		public Event(EventType type, Object arg, Object arg2) {
+			this.type = type;
+			this.arg = arg;
+			this.arg2 = arg2;
+		}
+
+		@SuppressWarnings("unchecked")
+		public void replay(WallsVisitor visitor) {
+			switch (type) {
+			case VECTOR:
+				visitor.parsedVector((Vector) arg);
+				break;
+			case FIX_STATION:
+				visitor.parsedFixStation((FixedStation) arg);
+				break;
+			case COMMENT:
+				visitor.parsedComment((String) arg);
+				break;
+			case NOTE:
+				visitor.parsedNote((String) arg, (String) arg2);
+				break;
+			case DATE:
+				visitor.parsedDate((Date) arg);
+				break;
+			case FLAG:
+				visitor.parsedFlag((List<String>) arg, (String) arg2);
+				break;
+			case WILL_PARSE_UNITS:
+				visitor.willParseUnits();
+				break;
+			case PARSED_UNITS:
+				visitor.parsedUnits();
+				break;
+			case SEGMENT:
+				visitor.parsedSegment((String) arg);
+				break;
+			case MESSAGE:
+				visitor.message((WallsMessage) arg);
+				break;
+			}
+		}
+
+		/**
+		 * @return an event with copies of the mutable arguments ({@link Vector}s, {@link FixedStation}s,
+		 *         {@link Date}s and flag station lists), so that visitors that modify them don't affect this event.
+		 */
+		@SuppressWarnings("unchecked")
+		public Event copy() {
+			switch (type) {
+			case VECTOR:
+				return new Event(type, ((Vector) arg).clone(), arg2);
+			case FIX_STATION:
+				return new Event(type, ((FixedStation) arg).clone(), arg2);
+			case DATE:
+				return new Event(type, arg == null ? null : ((Date) arg).clone(), arg2);
+			case FLAG:
+				return new Event(type, arg == null ? null : new ArrayList<>((List<String>) arg), arg2);
+			default:
+				return this;
+			}
+		}
+	}
+
+	private final int interests;
+	private final List<Event> events = new ArrayList<>();
+	private final List<Event> unmodifiableEvents = Collections.unmodifiableList(events);
+
+	public RecordingWallsVisitor() {
+		this(ALL);
+	}
+
+	public RecordingWallsVisitor(int interests) {
+		this.interests = interests;
+	}
+
+	@Override
+	public int interests() {
+		return interests;
+	}
+
+	void record(EventType type, Object arg, Object arg2) {
+		events.add(new Event(type, arg, arg2));
+	}
+
+	public List<Event> events() {
+		return unmodifiableEvents;
+	}
+
+	/**
+	 * Replays all recorded callbacks into the given visitor.
+	 */
+	public void replay(WallsVisitor visitor) {
+		for (Event event : events) {
+			event.replay(visitor);
+		}
+	}
+
+	/**
+	 * Replays copies of all recorded callbacks (see {@link Event#copy()}) into the given visitor, so that they can
+	 * be replayed again later.
+	 */
+	public void replayCopies(WallsVisitor visitor) {
+		for (Event event : events) {
+			event.copy().replay(visitor);
+		}
+	}
+
+	public void clear() {
+		events.clear();
+	}
+
+	@Override
+	public void parsedVector(Vector parsedVector) {
+		record(EventType.VECTOR, parsedVector, null);
+	}
+
+	@Override
+	public void parsedFixStation(FixedStation station) {
+		record(EventType.FIX_STATION, station, null);
+	}
+
+	@Override
+	public void parsedComment(String parsedComment) {
+		record(EventType.COMMENT, parsedComment, null);
+	}
+
+	@Override
+	public void parsedNote(String station, String parsedNote) {
+		record(EventType.NOTE, station, parsedNote);
+	}
+
+	@Override
+	public void parsedDate(Date date) {
+		record(EventType.DATE, date, null);
+	}
+
+	@Override
+	public void parsedFlag(List<String> stations, String flag) {
+		record(EventType.FLAG, stations, flag);
+	}
+
+	@Override
+	public void willParseUnits() {
+		record(EventType.WILL_PARSE_UNITS, null, null);
+	}
+
+	@Override
+	public void parsedUnits() {
+		record(EventType.PARSED_UNITS, null, null);
+	}
+
+	@Override
+	public void parsedSegment(String segment) {
+		record(EventType.SEGMENT, segment, null);
+	}
+
+	@Override
+	public void message(WallsMessage message) {
+		record(EventType.MESSAGE, message, null);
+	}
+}
@@ -0,0 +1,157 @@
+package org.andork.walls.srv;
+
+import static org.andork.walls.srv.UnitsCorrections.*;
+
+import java.util.Date;
+import java.util.List;
+
+import org.andork.walls.WallsMessage;
+import org.andork.walls.srv.VectorTable.Column;
+
+/**
+ * Derives compass-and-tape measurements from rectangular measurements in bulk, like
+ * {@link Vector#deriveCtFromRect()} does for a single vector, but in primitive doubles (in meters and radians).
+ *
+ * As a pipeline stage, it fills in the distance, frontsight azimuth and frontsight inclination of the rectangular
+ * vectors in each batch it receives (in the distance, azimuth and inclination units of their {@link WallsUnits}),
+ * and passes the batch and all other events on to the next visitor. Single vectors are converted with
+ * {@link Vector#deriveCtFromRect()}.
+ */
+public class RectToCt implements WallsBatchVisitor {
+	private static final double TWO_PI = 2 * Math.PI;
+
+	private final WallsBatchVisitor next;
+	private final UnitsCorrections.Cache corrections = new UnitsCorrections.Cache();
+	private final double[] ct = new double[3];
+
+	public RectToCt(WallsBatchVisitor next) {
+		this.next = next;
+	}
+
+	/**
+	 * Converts shots {@code offset} to {@code offset + count - 1} of the east, north and up arrays (in meters;
+	 * missing up values count as 0) to distance (in meters) and azimuth and inclination (in radians), minus the
+	 * {@code incd}, {@code inca} and {@code incv} of {@code units}.
+	 */
+	public static void convert(
+		WallsUnits units,
+		double[] east,
+		double[] north,
+		double[] up,
+		double[] distance,
+		double[] azimuth,
+		double[] inclination,
+		int offset,
+		int count) {
+		double[] corrections = new double[COUNT];
+		UnitsCorrections.get(units, corrections, 0);
+		double[] ct = new double[3];
+		for (int i = offset; i < offset + count; i++) {
+			convert(east[i], north[i], up[i], corrections, 0, ct);
+			distance[i] = ct[0];
+			azimuth[i] = ct[1];
+			inclination[i] = ct[2];
+		}
+	}
+
+	/**
+	 * Writes the distance, azimuth and inclination of a single shot to {@code ct}.
+	 */
+	static void convert(double east, double north, double up, double[] corrections, int c, double[] ct) {
+		double ne2 = north * north + east * east;
+		if (!Double.isFinite(up)) {
+			up = 0;
+		}
+		ct[0] = Math.sqrt(ne2 + up * up) - corrections[c + INCD];
+		double azimuth = Math.atan2(east, north) - corrections[c + INCA];
+		ct[1] = azimuth < 0 ? azimuth + TWO_PI : azimuth;
+		ct[2] = Math.atan2(up, Math.sqrt(ne2)) - corrections[c + INCV];
+	}
+
+	@Override
+	public int interests() {
+		return next.interests();
+	}
+
+	@Override
+	public void parsedVectors(VectorTable batch) {
+		for (int row = 0; row < batch.size(); row++) {
+			double north = batch.value(Column.NORTH, row);
+			int unitsId = batch.unitsId(row);
+			if (Double.isNaN(north) || unitsId < 0) {
+				continue;
+			}
+			int c = corrections.offset(batch, unitsId);
+			int flags = (int) corrections.values()[c + OPTION_FLAGS];
+			if ((flags & RECTANGULAR) == 0) {
+				continue;
+			}
+			convert(
+				batch.value(Column.EAST, row),
+				north,
+				batch.value(Column.ELEVATION, row),
+				corrections.values(),
+				c,
+				ct);
+			WallsUnits units = batch.units(unitsId);
+			batch.set(Column.DISTANCE, row, ct[0], units.getDUnit());
+			batch.set(Column.FRONTSIGHT_AZIMUTH, row, ct[1], units.getAUnit());
+			batch.set(Column.FRONTSIGHT_INCLINATION, row, ct[2], units.getVUnit());
+		}
+		next.parsedVectors(batch);
+	}
+
+	@Override
+	public void parsedVector(Vector parsedVector) {
+		// LRUD-only vectors have no rectangular measurements
+		if (parsedVector.north != null) {
+			parsedVector.deriveCtFromRect();
+		}
+		next.parsedVector(parsedVector);
+	}
+
+	@Override
+	public void parsedFixStation(FixedStation station) {
+		next.parsedFixStation(station);
+	}
+
+	@Override
+	public void parsedComment(String parsedComment) {
+		next.parsedComment(parsedComment);
+	}
+
+	@Override
+	public void parsedNote(String station, String parsedNote) {
+		next.parsedNote(station, parsedNote);
+	}
+
+	@Override
+	public void parsedDate(Date date) {
+		next.parsedDate(date);
+	}
+
+	@Override
+	public void parsedFlag(List<String> stations, String flag) {
+		next.parsedFlag(stations, flag);
+	}
+
+	@Override
+	public void willParseUnits() {
+		next.willParseUnits();
+	}
+
+	@Override
+	public void parsedUnits() {
+		next.parsedUnits();
+	}
+
+	@Override
+	public void parsedSegment(String segment) {
+		next.parsedSegment(segment);
+	}
+
+	@Override
+	public void message(WallsMessage message) {
+		next.message(message);
+	}
+}
@@ -0,0 +1,189 @@
+package org.andork.walls.srv;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An immutable, interned segment path (as set by {@code #segment} directives). There is only one instance of each
+ * distinct path, so two {@code SegmentPath}s are equal if and only if they are the same instance, and vectors and
+ * fixed stations in the same segment share the same list. Each path only stores its last part and a pointer to its
+ * parent, so {@link #get(int)} takes time proportional to the depth of the path. Thread-safe.
+ *
+ * Children are only weakly referenced by their parents, so paths that are no longer used anywhere are garbage
+ * collected (and created again if needed) instead of accumulating for the life of the process.
+ */
+public final class SegmentPath extends AbstractList<String> {
+	/**
+	 * The empty path.
+	 */
+	public static final SegmentPath ROOT = new SegmentPath(null, null);
+
+	/**
+	 * Receives the references to children that have been garbage collected, so that they can be removed from their
+	 * parents.
+	 */
+	private static final ReferenceQueue<SegmentPath> collected = new ReferenceQueue<>();
+
+	private static final class ChildReference extends WeakReference<SegmentPath> {
+		final SegmentPath parent;
+		final String part;
+
+		ChildReference(SegmentPath child) {
+			super(child, collected);
+			this.parent = child.parent;
+			this.part = child.part;
+		}
+	}
+
+	private final SegmentPath parent;
+	private final String part;
+	private final int size;
+	private final int hashCode;
+	private final ConcurrentMap<String, ChildReference> children = new ConcurrentHashMap<>();
+
+	private SegmentPath(SegmentPath parent, String part) {
+		this.parent = parent;
+		this.part = part;
+		if (parent == null) {
+			size = 0;
+			hashCode = 1;
+		}
+		else {
+			size = parent.size + 1;
+			// same as List.hashCode()
+			hashCode = 31 * parent.hashCode + part.hashCode();
+		}
+	}
+
+	/**
+	 * @return the interned path for the given list of parts, or {@code null} if {@code parts} is {@code null}.
+	 */
+	public static SegmentPath of(List<String> parts) {
+		if (parts == null || parts instanceof SegmentPath) {
+			return (SegmentPath) parts;
+		}
+		SegmentPath result = ROOT;
+		for (int i = 0; i < parts.size(); i++) {
+			result = result.child(parts.get(i));
+		}
+		return result;
+	}
+
+	/**
+	 * @return the interned path with {@code part} appended to this one.
+	 */
+	public SegmentPath child(String part) {
+		if (part == null) {
+			throw new NullPointerException("part must not be null");
+		}
+		ChildReference ref = children.get(part);
+		SegmentPath child = ref == null ? null : ref.get();
+		if (child != null) {
+			return child;
+		}
+		removeCollected();
+		child = new SegmentPath(this, part);
+		ChildReference newRef = new ChildReference(child);
+		while (true) {
+			ref = children.putIfAbsent(part, newRef);
+			if (ref == null) {
+				return child;
+			}
+			SegmentPath existing = ref.get();
+			if (existing != null) {
+				return existing;
+			}
+			if (children.replace(part, ref, newRef)) {
+				return child;
+			}
+		}
+	}
+
+	/**
+	 * Removes the references to children that have been garbage collected from their parents.
+	 */
+	static void removeCollected() {
+		ChildReference ref;
+		while ((ref = (ChildReference) collected.poll()) != null) {
+			ref.parent.children.remove(ref.part, ref);
+		}
+	}
+
+	/**
+	 * @return the path without its last part, or {@code null} for {@link #ROOT}.
+	 */
+	public SegmentPath parent() {
+		return parent;
+	}
+
+	/**
+	 * @return the last part of the path, or {@code null} for {@link #ROOT}.
+	 */
+	public String part() {
+		return part;
+	}
+
+	/**
+	 * @return the reference to the child with the given part, which may have been cleared, or {@code null} if there
+	 *         is none.
+	 */
+	WeakReference<SegmentPath> childReference(String part) {
+		return children.get(part);
+	}
+
+	/**
+	 * @return whether this path has the same parts as the given list, without allocating.
+	 */
+	public boolean matches(List<String> other) {
+		if (other == this) {
+			return true;
+		}
+		if (other == null || other.size() != size) {
+			return false;
+		}
+		SegmentPath node = this;
+		for (int i = size - 1; i >= 0; i--, node = node.parent) {
+			if (!node.part.equals(other.get(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+		}
+		SegmentPath node = this;
+		for (int i = size - 1; i > index; i--) {
+			node = node.parent;
+		}
+		return node.part;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public int hashCode() {
+		return hashCode;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) {
+			return true;
+		}
+		if (obj instanceof SegmentPath) {
+			return false;
+		}
+		return super.equals(obj);
+	}
+}
@@ -0,0 +1,68 @@
+package org.andork.walls.srv;
+
+/**
+ * Packs a source location (source id, line, and column range) into a {@code long}, so that parsed items can point
+ * back to their source without retaining the line. Use a {@link SourceLocationResolver} to assign source ids and to
+ * get the text back.
+ *
+ * Columns past {@link #MAX_COLUMN} and lines past {@link #MAX_LINE} are clamped.
+ */
+public final class SourceLocation {
+	private SourceLocation() {
+	}
+
+	/**
+	 * Means there is no location.
+	 */
+	public static final long NONE = -1L;
+
+	static final int SOURCE_BITS = 20;
+	static final int LINE_BITS = 24;
+	static final int COLUMN_BITS = 10;
+
+	public static final int MAX_SOURCE_ID = (1 << SOURCE_BITS) - 2;
+	public static final int MAX_LINE = (1 << LINE_BITS) - 1;
+	public static final int MAX_COLUMN = (1 << COLUMN_BITS) - 1;
+
+	/**
+	 * @param sourceId the source id, from 0 to {@link #MAX_SOURCE_ID}
+	 * @param line     the 0-based line
+	 * @param startCol the 0-based start column (inclusive)
+	 * @param endCol   the end column (exclusive)
+	 */
+	public static long pack(int sourceId, int line, int startCol, int endCol) {
+		if (sourceId < 0 || sourceId > MAX_SOURCE_ID) {
+			throw new IllegalArgumentException("source id out of range: " + sourceId);
+		}
+		if (line < 0 || startCol < 0 || endCol < startCol) {
+			throw new IllegalArgumentException("invalid location: " + line + ":" + startCol + "-" + endCol);
+		}
+		return (long) sourceId << (LINE_BITS + 2 * COLUMN_BITS)
+			| (long) Math.min(line, MAX_LINE) << (2 * COLUMN_BITS)
+			| (long) Math.min(startCol, MAX_COLUMN) << COLUMN_BITS
+			| Math.min(endCol, MAX_COLUMN);
+	}
+
+	public static int sourceId(long location) {
+		return (int) (location >>> (LINE_BITS + 2 * COLUMN_BITS));
+	}
+
+	public static int line(long location) {
+		return (int) (location >>> (2 * COLUMN_BITS)) & MAX_LINE;
+	}
+
+	public static int startCol(long location) {
+		return (int) (location >>> COLUMN_BITS) & MAX_COLUMN;
+	}
+
+	public static int endCol(long location) {
+		return (int) location & MAX_COLUMN;
+	}
+
+	public static String toString(long location) {
+		if (location == NONE) {
+			return "<none>";
+		}
+		return sourceId(location) + ":" + line(location) + ":" + startCol(location) + "-" + endCol(location);
+	}
+}
@@ -0,0 +1,22 @@
+package org.andork.walls.srv;
+
+import org.andork.segment.Segment;
+import org.andork.segment.SegmentParseException;
+
+/**
+ * A {@link SegmentParseException} about an item that was parsed with a {@link SourceLocation} instead of a
+ * {@link Segment}. Use {@link SourceLocationResolver#segment(SegmentParseException)} to get its text back.
+ */
+public class SourceLocationParseException extends SegmentParseException {
+	private static final long serialVersionUID = -3518093746523108751L;
+
+	/**
+	 * The {@link SourceLocation} of the error, or {@link SourceLocation#NONE} if there is none.
+	 */
+	public final long location;
+
+	public SourceLocationParseException(String message, Segment segment, long location) {
+		super(message, segment);
+		this.location = location;
+	}
+}
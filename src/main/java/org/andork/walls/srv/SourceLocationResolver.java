@@ -0,0 +1,188 @@
+package org.andork.walls.srv;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.andork.segment.Segment;
+import org.andork.segment.SegmentParseException;
+import org.andork.walls.WallsMessage;
+
+/**
+ * Assigns ids to sources for {@link SourceLocation}s, and turns locations back into {@link Segment}s by rereading
+ * the source file when they're needed, e.g. to render a {@link WallsMessage}. Thread-safe.
+ *
+ * The byte offsets of each file's lines are cached (until the file's length or modification time changes), so
+ * resolving a location only rereads its line.
+ *
+ * Only {@link File} sources can be reread; locations in other sources resolve to {@code null}. Source ids are only
+ * meaningful to the resolver that assigned them; {@link WallsSnapshot}s store locations by source path instead.
+ */
+public class SourceLocationResolver {
+	private final ConcurrentMap<Object, Integer> sourceIds = new ConcurrentHashMap<>();
+	private final List<Object> sources = new ArrayList<>();
+	private final ConcurrentMap<File, LineIndex> lineIndexes = new ConcurrentHashMap<>();
+
+	private static final int LINE_BUFFER_SIZE = 4096;
+
+	/**
+	 * Buffers for rereading lines, so that resolving a location doesn't allocate one.
+	 */
+	private final ThreadLocal<byte[]> lineBuffers = ThreadLocal.withInitial(() -> new byte[LINE_BUFFER_SIZE]);
+
+	private static final class LineIndex {
+		final long length;
+		final long lastModified;
+		final long[] lineStarts;
+
+		LineIndex(long length, long lastModified, long[] lineStarts) {
+			this.length = length;
+			this.lastModified = lastModified;
+			this.lineStarts = lineStarts;
+		}
+	}
+
+	/**
+	 * @return the id of the given source, assigning one if necessary.
+	 */
+	public int sourceId(Object source) {
+		Integer id = sourceIds.get(source);
+		if (id != null) {
+			return id;
+		}
+		synchronized (sources) {
+			id = sourceIds.get(source);
+			if (id == null) {
+				if (sources.size() > SourceLocation.MAX_SOURCE_ID) {
+					throw new IllegalStateException("too many sources");
+				}
+				id = sources.size();
+				sources.add(source);
+				sourceIds.put(source, id);
+			}
+			return id;
+		}
+	}
+
+	/**
+	 * @return the source with the given id, or {@code null} if this resolver hasn't assigned it.
+	 */
+	public Object source(int sourceId) {
+		synchronized (sources) {
+			return sourceId >= 0 && sourceId < sources.size() ? sources.get(sourceId) : null;
+		}
+	}
+
+	/**
+	 * @return the location of the given segment, or {@link SourceLocation#NONE} if it has no source.
+	 */
+	public long locate(Segment segment) {
+		if (segment.source == null) {
+			return SourceLocation.NONE;
+		}
+		return SourceLocation.pack(
+			sourceId(segment.source),
+			segment.startLine,
+			segment.startCol,
+			segment.startCol + segment.length());
+	}
+
+	/**
+	 * Rereads the text at the given location.
+	 *
+	 * @return the text as a {@link Segment} (clamped to the line it's on), or {@code null} if the location is
+	 *         {@link SourceLocation#NONE} or its source isn't a file.
+	 * @throws IOException if the file can't be read, or no longer has the line
+	 */
+	public Segment resolve(long location) throws IOException {
+		if (location == SourceLocation.NONE) {
+			return null;
+		}
+		Object source = source(SourceLocation.sourceId(location));
+		if (!(source instanceof File)) {
+			return null;
+		}
+		File file = (File) source;
+		int lineNumber = SourceLocation.line(location);
+		long[] lineStarts = lineStarts(file);
+		if (lineNumber < lineStarts.length) {
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				channel.position(lineStarts[lineNumber]);
+				Segment line = new SrvFileReader(channel, file, lineBuffers.get(), lineNumber).readLine();
+				if (line != null) {
+					int start = Math.min(SourceLocation.startCol(location) - line.startCol, line.length());
+					int end = Math.min(SourceLocation.endCol(location) - line.startCol, line.length());
+					return line.substring(Math.max(0, start), Math.max(start, end));
+				}
+			}
+		}
+		throw new IOException(source + " no longer has line " + (lineNumber + 1));
+	}
+
+	/**
+	 * @return the byte offsets of the lines of the given file, from the cache unless the file has changed since.
+	 */
+	private long[] lineStarts(File file) throws IOException {
+		long length = file.length();
+		long lastModified = file.lastModified();
+		LineIndex index = lineIndexes.get(file);
+		if (index == null || index.length != length || index.lastModified != lastModified) {
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				index = new LineIndex(length, lastModified, SrvFileReader.lineStarts(channel));
+			}
+			lineIndexes.put(file, index);
+		}
+		return index.lineStarts;
+	}
+
+	/**
+	 * @return the message's segment, or its resolved {@link WallsMessage#location location} if it doesn't have one
+	 *         (or {@code null} if that can't be resolved).
+	 */
+	public Segment segment(WallsMessage message) {
+		if (message.segment != null) {
+			return message.segment;
+		}
+		try {
+			return resolve(message.location);
+		}
+		catch (IOException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Like {@link WallsMessage#toString()}, but resolves the message's location if necessary.
+	 */
+	public String render(WallsMessage message) {
+		return new SegmentParseException(message.message, segment(message)).toString();
+	}
+
+	/**
+	 * @return the exception's segment, or the resolved {@link SourceLocationParseException#location location} of a
+	 *         {@link SourceLocationParseException} that doesn't have one (or {@code null} if that can't be resolved).
+	 */
+	public Segment segment(SegmentParseException ex) {
+		if (ex.getSegment() != null || !(ex instanceof SourceLocationParseException)) {
+			return ex.getSegment();
+		}
+		try {
+			return resolve(((SourceLocationParseException) ex).location);
+		}
+		catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Like {@link SegmentParseException#toString()}, but resolves the exception's location if necessary.
+	 */
+	public String render(SegmentParseException ex) {
+		return new SegmentParseException(ex.getMessage(), segment(ex)).toString();
+	}
+}
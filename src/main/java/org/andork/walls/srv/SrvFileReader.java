@@ -0,0 +1,176 @@
+package org.andork.walls.srv;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.andork.segment.Segment;
+
+/**
+ * Reads the lines of a .SRV file as {@link Segment}s. Bytes are read in bulk into a reusable heap buffer and scanned
+ * by array index, lines are split at the byte level (on {@code \n}, {@code \r} or {@code \r\n}, like
+ * {@link java.io.BufferedReader#readLine()}), and each byte is decoded from the Walls legacy charset (Windows-1252)
+ * with a lookup table into a reusable char buffer, so the only per-line allocation is the line's {@code String} and
+ * {@code Segment}.
+ */
+public class SrvFileReader implements Closeable {
+	public static final Charset CHARSET = Charset.forName("windows-1252");
+
+	private static final char[] decodeTable = createDecodeTable(CHARSET);
+
+	static char[] createDecodeTable(Charset charset) {
+		char[] table = new char[256];
+		byte[] bytes = new byte[1];
+		for (int b = 0; b < 256; b++) {
+			bytes[0] = (byte) b;
+			table[b] = new String(bytes, charset).charAt(0);
+		}
+		return table;
+	}
+
+	private final ReadableByteChannel channel;
+	private final Object source;
+	private final byte[] bytes;
+	private final ByteBuffer buffer;
+	/**
+	 * The index of the next byte to scan in {@link #bytes}.
+	 */
+	private int position;
+	/**
+	 * The number of bytes read into {@link #bytes}.
+	 */
+	private int limit;
+	private char[] chars = new char[256];
+	private int lineNumber;
+	private boolean skipLineFeed;
+	private boolean eof;
+
+	public SrvFileReader(File file) throws IOException {
+		this(FileChannel.open(file.toPath(), StandardOpenOption.READ), file);
+	}
+
+	/**
+	 * @param source the source for the {@link Segment}s
+	 */
+	public SrvFileReader(ReadableByteChannel channel, Object source) {
+		this(channel, source, 1 << 16);
+	}
+
+	SrvFileReader(ReadableByteChannel channel, Object source, int bufferSize) {
+		this(channel, source, bufferSize, 0);
+	}
+
+	/**
+	 * @param firstLine the line number of the first line read, for reading from the middle of a file
+	 */
+	SrvFileReader(ReadableByteChannel channel, Object source, int bufferSize, int firstLine) {
+		this(channel, source, new byte[bufferSize], firstLine);
+	}
+
+	/**
+	 * @param bytes     the buffer to read into, which must not be used by anything else until the reader is done
+	 * @param firstLine the line number of the first line read, for reading from the middle of a file
+	 */
+	SrvFileReader(ReadableByteChannel channel, Object source, byte[] bytes, int firstLine) {
+		this.channel = channel;
+		this.source = source;
+		this.bytes = bytes;
+		buffer = ByteBuffer.wrap(bytes);
+		lineNumber = firstLine;
+	}
+
+	/**
+	 * @return the byte offsets where the lines {@link #readLine()} would return start.
+	 */
+	static long[] lineStarts(ReadableByteChannel channel) throws IOException {
+		long[] starts = new long[256];
+		int count = 1;
+		byte[] bytes = new byte[1 << 16];
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		long position = 0;
+		boolean afterCarriageReturn = false;
+		while (channel.read(buffer) >= 0) {
+			int limit = buffer.position();
+			for (int i = 0; i < limit; i++) {
+				byte b = bytes[i];
+				position++;
+				if (b == '\n' && afterCarriageReturn) {
+					// the line starts after the \n of a \r\n
+					starts[count - 1] = position;
+				}
+				else if (b == '\n' || b == '\r') {
+					if (count == starts.length) {
+						starts = Arrays.copyOf(starts, count * 2);
+					}
+					starts[count++] = position;
+				}
+				afterCarriageReturn = b == '\r';
+			}
+			buffer.clear();
+		}
+		// an empty last line without a terminator isn't returned
+		if (starts[count - 1] == position) {
+			count--;
+		}
+		return Arrays.copyOf(starts, count);
+	}
+
+	private boolean fill() throws IOException {
+		buffer.clear();
+		int read;
+		do {
+			read = channel.read(buffer);
+		} while (read == 0);
+		position = 0;
+		limit = buffer.position();
+		return read > 0;
+	}
+
+	/**
+	 * @return the next line (without its terminator), or {@code null} at the end of the file.
+	 */
+	public Segment readLine() throws IOException {
+		if (eof) {
+			return null;
+		}
+		int length = 0;
+		while (true) {
+			if (position == limit && !fill()) {
+				eof = true;
+				return length > 0 ? createSegment(length) : null;
+			}
+			while (position < limit) {
+				byte b = bytes[position++];
+				if (skipLineFeed) {
+					skipLineFeed = false;
+					if (b == '\n') {
+						continue;
+					}
+				}
+				if (b == '\n' || b == '\r') {
+					skipLineFeed = b == '\r';
+					return createSegment(length);
+				}
+				if (length == chars.length) {
+					chars = Arrays.copyOf(chars, length * 2);
+				}
+				chars[length++] = decodeTable[b & 0xff];
+			}
+		}
+	}
+
+	private Segment createSegment(int length) {
+		return new Segment(new String(chars, 0, length), source, lineNumber++, 0);
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
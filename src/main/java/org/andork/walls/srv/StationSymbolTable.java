@@ -0,0 +1,283 @@
+package org.andork.walls.srv;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Interns fully-prefixed station names (like {@code c:a:b}) as dense int ids. Names are stored as a trie of their
+ * colon-separated components, so a station shares the nodes of its prefixes with every other station in the same
+ * prefix, and each component is only stored once per parent. Not thread-safe.
+ *
+ * {@link #resolve(CharSequence, List, CaseType)} gives the same result as
+ * {@link WallsUnits#processStationName(String)} without building the name.
+ */
+public class StationSymbolTable {
+	/**
+	 * The id of the empty name, which is the parent of all top-level components.
+	 */
+	public static final int ROOT = 0;
+
+	private static final boolean asciiCaseMappingIsDefault =
+		"i".toUpperCase().equals("I") && "I".toLowerCase().equals("i");
+
+	private int size = 1;
+	private int[] parents = new int[64];
+	private String[] components = new String[64];
+	private int[] hashes = new int[64];
+	private String[] names = new String[64];
+	/**
+	 * Open addressing hash table of node id + 1 (0 means empty).
+	 */
+	private int[] slots = new int[128];
+
+	public StationSymbolTable() {
+		parents[ROOT] = -1;
+		components[ROOT] = "";
+		names[ROOT] = "";
+	}
+
+	/**
+	 * @return the number of ids, including {@link #ROOT} and the ids of prefixes.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the id of the name this one is a component of, or -1 for {@link #ROOT}.
+	 */
+	public int parent(int id) {
+		checkId(id);
+		return parents[id];
+	}
+
+	/**
+	 * @return the last component of the name with the given id.
+	 */
+	public String component(int id) {
+		checkId(id);
+		return components[id];
+	}
+
+	/**
+	 * @return the full name with the given id, with components separated by colons.
+	 */
+	public String name(int id) {
+		checkId(id);
+		String name = names[id];
+		if (name == null) {
+			int parent = parents[id];
+			name = parent == ROOT ? components[id] : name(parent) + ":" + components[id];
+			names[id] = name;
+		}
+		return name;
+	}
+
+	private void checkId(int id) {
+		if (id < 0 || id >= size) {
+			throw new IndexOutOfBoundsException("id: " + id + ", size: " + size);
+		}
+	}
+
+	private static char applyCase(char c, CaseType caseType) {
+		switch (caseType) {
+		case UPPER:
+			return c >= 'a' && c <= 'z' ? (char) (c - 'a' + 'A') : c;
+		case LOWER:
+			return c >= 'A' && c <= 'Z' ? (char) (c - 'A' + 'a') : c;
+		default:
+			return c;
+		}
+	}
+
+	private static int hash(int parent, CharSequence s, int start, int end, CaseType caseType) {
+		int hash = parent;
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + applyCase(s.charAt(i), caseType);
+		}
+		return hash ^ (hash >>> 16);
+	}
+
+	private boolean matches(int id, int parent, CharSequence s, int start, int end, CaseType caseType) {
+		if (parents[id] != parent) {
+			return false;
+		}
+		String component = components[id];
+		if (component.length() != end - start) {
+			return false;
+		}
+		for (int i = start; i < end; i++) {
+			if (component.charAt(i - start) != applyCase(s.charAt(i), caseType)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the id of the component {@code s[start, end)} under {@code parent}, adding it if necessary.
+	 */
+	public int child(int parent, CharSequence s, int start, int end) {
+		return child(parent, s, start, end, CaseType.MIXED);
+	}
+
+	/**
+	 * Like {@link #child(int, CharSequence, int, int)}, but converts ASCII letters of the component to the given
+	 * case.
+	 */
+	int child(int parent, CharSequence s, int start, int end, CaseType caseType) {
+		checkId(parent);
+		int hash = hash(parent, s, start, end, caseType);
+		int mask = slots.length - 1;
+		int slot = hash & mask;
+		while (slots[slot] != 0) {
+			int id = slots[slot] - 1;
+			if (hashes[id] == hash && matches(id, parent, s, start, end, caseType)) {
+				return id;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		char[] chars = new char[end - start];
+		for (int i = start; i < end; i++) {
+			chars[i - start] = applyCase(s.charAt(i), caseType);
+		}
+		if (size == parents.length) {
+			int capacity = size * 2;
+			parents = Arrays.copyOf(parents, capacity);
+			components = Arrays.copyOf(components, capacity);
+			hashes = Arrays.copyOf(hashes, capacity);
+			names = Arrays.copyOf(names, capacity);
+		}
+		int id = size++;
+		parents[id] = parent;
+		components[id] = new String(chars);
+		hashes[id] = hash;
+		slots[slot] = id + 1;
+		if (size * 2 > slots.length) {
+			rehash();
+		}
+		return id;
+	}
+
+	private void rehash() {
+		slots = new int[slots.length * 2];
+		int mask = slots.length - 1;
+		for (int id = 1; id < size; id++) {
+			int slot = hashes[id] & mask;
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = id + 1;
+		}
+	}
+
+	/**
+	 * Adds the next component of a name being resolved. Empty components at the start of a name are dropped, like
+	 * {@link WallsUnits#processStationName(String)} drops leading colons, unless they are the last component.
+	 */
+	private int append(int node, CharSequence s, int start, int end, CaseType caseType, boolean last) {
+		if (node == ROOT && start == end && !last) {
+			return ROOT;
+		}
+		return child(node, s, start, end, caseType);
+	}
+
+	/**
+	 * @return the id of a fully-prefixed name (which is used as is; no prefixes or case conversion are applied).
+	 */
+	public int intern(CharSequence name) {
+		return resolve(name, null, CaseType.MIXED);
+	}
+
+	/**
+	 * @return the id {@link #intern(CharSequence)} would return for a fully-prefixed name, or -1 if it hasn't been
+	 *         interned. Unlike {@code intern}, never adds ids.
+	 */
+	public int find(CharSequence name) {
+		if (name == null) {
+			return -1;
+		}
+		int length = name.length();
+		int node = ROOT;
+		int start = 0;
+		for (int i = 0; i <= length; i++) {
+			if (i == length || name.charAt(i) == ':') {
+				if (node != ROOT || start != i || i == length) {
+					node = find(node, name, start, i);
+					if (node < 0) {
+						return -1;
+					}
+				}
+				start = i + 1;
+			}
+		}
+		return node;
+	}
+
+	private int find(int parent, CharSequence s, int start, int end) {
+		int hash = hash(parent, s, start, end, CaseType.MIXED);
+		int mask = slots.length - 1;
+		for (int slot = hash & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+			int id = slots[slot] - 1;
+			if (hashes[id] == hash && matches(id, parent, s, start, end, CaseType.MIXED)) {
+				return id;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Interns the name {@link WallsUnits#processStationName(String)} would return for a station name with the given
+	 * prefixes and case.
+	 *
+	 * @param name     the station name as written, possibly with explicit prefixes
+	 * @param prefix   the prefixes in effect, starting with {@code prefix1} ({@code null} elements are treated as
+	 *                 empty), or {@code null} if none
+	 * @param caseType how to convert the case of the station name (but not its prefixes)
+	 * @return the id of the fully-prefixed name, or -1 if {@code name} is {@code null}
+	 */
+	public int resolve(CharSequence name, List<String> prefix, CaseType caseType) {
+		if (name == null) {
+			return -1;
+		}
+		int length = name.length();
+		int explicitPrefixCount = 0;
+		int baseStart = 0;
+		for (int i = 0; i < length; i++) {
+			if (name.charAt(i) == ':') {
+				explicitPrefixCount++;
+				baseStart = i + 1;
+			}
+		}
+
+		int node = ROOT;
+		if (prefix != null) {
+			for (int i = prefix.size() - 1; i >= explicitPrefixCount; i--) {
+				String component = prefix.get(i) == null ? "" : prefix.get(i);
+				node = append(node, component, 0, component.length(), CaseType.MIXED, false);
+			}
+		}
+		int start = 0;
+		for (int i = 0; i < baseStart; i++) {
+			if (name.charAt(i) == ':') {
+				node = append(node, name, start, i, CaseType.MIXED, false);
+				start = i + 1;
+			}
+		}
+		if (caseType != CaseType.MIXED && !(asciiCaseMappingIsDefault && isAscii(name, baseStart, length))) {
+			String base = caseType.apply(name.subSequence(baseStart, length).toString());
+			return append(node, base, 0, base.length(), CaseType.MIXED, true);
+		}
+		return append(node, name, baseStart, length, caseType, true);
+	}
+
+	private static boolean isAscii(CharSequence s, int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (s.charAt(i) >= 0x80) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,343 @@
+package org.andork.walls.srv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Assembles parsed vectors and fixed stations into a survey network.
+ *
+ * Stations are numbered densely from 0 in the order they're first seen, by their fully-prefixed names (see
+ * {@link WallsUnits#processStationName(String)}). Shots between two stations are kept in {@link #shots()}, with the
+ * same row numbers as their shot index; splay shots ({@link Vector#isSplay()}) are kept in {@link #splays()} instead,
+ * and LRUD-only vectors just add their station. The adjacency of each station and the connected components are
+ * computed in compressed sparse row form when they're first needed after a change. The shot tables share the network's
+ * {@link StationSymbolTable}, so their station ids are symbol ids in it.
+ */
+public class SurveyNetwork extends AbstractWallsVisitor {
+	private final StationSymbolTable symbols;
+	/**
+	 * The station of each symbol id, or -1.
+	 */
+	private int[] stationOfSymbol = new int[64];
+	private int[] symbolOfStation = new int[64];
+	private int stationCount;
+
+	private final VectorTable shots;
+	private int[] shotFrom = new int[64];
+	private int[] shotTo = new int[64];
+
+	private final VectorTable splays;
+	private int[] splayStations = new int[64];
+
+	private final List<FixedStation> fixedStations = new ArrayList<>();
+	private int[] fixedStationStations = new int[8];
+
+	private boolean built;
+	/**
+	 * The adjacency of station {@code s} is at indices {@code adjacencyStart[s]} (inclusive) to
+	 * {@code adjacencyStart[s + 1]} (exclusive) of {@link #adjacentStations} and {@link #adjacentShots}.
+	 */
+	private int[] adjacencyStart;
+	private int[] adjacentStations;
+	private int[] adjacentShots;
+	private int[] components;
+	private int componentCount;
+	/**
+	 * The index of the first fixed station in each component, or -1.
+	 */
+	private int[] componentAnchors;
+
+	public SurveyNetwork() {
+		this(new StationSymbolTable());
+	}
+
+	public SurveyNetwork(StationSymbolTable symbols) {
+		this.symbols = symbols;
+		shots = new VectorTable(1024, symbols);
+		splays = new VectorTable(1024, symbols);
+		Arrays.fill(stationOfSymbol, -1);
+	}
+
+	public StationSymbolTable symbols() {
+		return symbols;
+	}
+
+	private int station(int symbol) {
+		if (symbol >= stationOfSymbol.length) {
+			int oldLength = stationOfSymbol.length;
+			stationOfSymbol = Arrays.copyOf(stationOfSymbol, Math.max(symbol + 1, oldLength * 2));
+			Arrays.fill(stationOfSymbol, oldLength, stationOfSymbol.length, -1);
+		}
+		int station = stationOfSymbol[symbol];
+		if (station < 0) {
+			if (stationCount == symbolOfStation.length) {
+				symbolOfStation = Arrays.copyOf(symbolOfStation, stationCount * 2);
+			}
+			station = stationCount++;
+			symbolOfStation[station] = symbol;
+			stationOfSymbol[symbol] = station;
+			built = false;
+		}
+		return station;
+	}
+
+	private int symbol(String name, WallsUnits units) {
+		return name == null ? -1 : units.processStationId(name, symbols);
+	}
+
+	@Override
+	public void parsedVector(Vector vector) {
+		int fromSymbol = symbol(vector.from, vector.units);
+		int toSymbol = symbol(vector.to, vector.units);
+		int from = fromSymbol < 0 ? -1 : station(fromSymbol);
+		int to = toSymbol < 0 ? -1 : station(toSymbol);
+		if (vector.distance == null && vector.north == null) {
+			// LRUD-only
+			return;
+		}
+		if (vector.isSplay()) {
+			int row = splays.add(vector, fromSymbol, toSymbol);
+			if (row == splayStations.length) {
+				splayStations = Arrays.copyOf(splayStations, row * 2);
+			}
+			splayStations[row] = from >= 0 ? from : to;
+			return;
+		}
+		int row = shots.add(vector, fromSymbol, toSymbol);
+		if (row == shotFrom.length) {
+			shotFrom = Arrays.copyOf(shotFrom, row * 2);
+			shotTo = Arrays.copyOf(shotTo, row * 2);
+		}
+		shotFrom[row] = from;
+		shotTo[row] = to;
+		built = false;
+	}
+
+	@Override
+	public void parsedFixStation(FixedStation station) {
+		int index = fixedStations.size();
+		if (index == fixedStationStations.length) {
+			fixedStationStations = Arrays.copyOf(fixedStationStations, index * 2);
+		}
+		int symbol = symbol(station.name, station.units);
+		fixedStationStations[index] = symbol < 0 ? -1 : station(symbol);
+		fixedStations.add(station);
+		built = false;
+	}
+
+	public int stationCount() {
+		return stationCount;
+	}
+
+	/**
+	 * @return the fully-prefixed name of the given station.
+	 */
+	public String stationName(int station) {
+		checkStation(station);
+		return symbols.name(symbolOfStation[station]);
+	}
+
+	/**
+	 * @param name a fully-prefixed station name
+	 * @return the station with the given name, or -1 if there is none.
+	 */
+	public int station(String name) {
+		int symbol = symbols.find(name);
+		return symbol >= 0 && symbol < stationOfSymbol.length ? stationOfSymbol[symbol] : -1;
+	}
+
+	private void checkStation(int station) {
+		if (station < 0 || station >= stationCount) {
+			throw new IndexOutOfBoundsException("station: " + station + ", count: " + stationCount);
+		}
+	}
+
+	/**
+	 * @return the shots between two stations.
+	 */
+	public VectorTable shots() {
+		return shots;
+	}
+
+	public int shotCount() {
+		return shots.size();
+	}
+
+	public int shotFrom(int shot) {
+		checkShot(shot);
+		return shotFrom[shot];
+	}
+
+	public int shotTo(int shot) {
+		checkShot(shot);
+		return shotTo[shot];
+	}
+
+	private void checkShot(int shot) {
+		if (shot < 0 || shot >= shots.size()) {
+			throw new IndexOutOfBoundsException("shot: " + shot + ", count: " + shots.size());
+		}
+	}
+
+	/**
+	 * @return the splay shots.
+	 */
+	public VectorTable splays() {
+		return splays;
+	}
+
+	public int splayCount() {
+		return splays.size();
+	}
+
+	/**
+	 * @return the station of the given splay shot.
+	 */
+	public int splayStation(int splay) {
+		if (splay < 0 || splay >= splays.size()) {
+			throw new IndexOutOfBoundsException("splay: " + splay + ", count: " + splays.size());
+		}
+		return splayStations[splay];
+	}
+
+	public int fixedStationCount() {
+		return fixedStations.size();
+	}
+
+	public FixedStation fixedStation(int index) {
+		return fixedStations.get(index);
+	}
+
+	/**
+	 * @return the station of the given fixed station.
+	 */
+	public int fixedStationStation(int index) {
+		if (index < 0 || index >= fixedStations.size()) {
+			throw new IndexOutOfBoundsException("fixed station: " + index + ", count: " + fixedStations.size());
+		}
+		return fixedStationStations[index];
+	}
+
+	/**
+	 * @return the start (inclusive) of the given station's adjacency, for {@link #adjacentStation(int)} and
+	 *         {@link #adjacentShot(int)}.
+	 */
+	public int adjacencyStart(int station) {
+		checkStation(station);
+		build();
+		return adjacencyStart[station];
+	}
+
+	/**
+	 * @return the end (exclusive) of the given station's adjacency.
+	 */
+	public int adjacencyEnd(int station) {
+		checkStation(station);
+		build();
+		return adjacencyStart[station + 1];
+	}
+
+	/**
+	 * @return the station at the other end of the shot at the given adjacency index.
+	 */
+	public int adjacentStation(int index) {
+		build();
+		return adjacentStations[index];
+	}
+
+	/**
+	 * @return the shot at the given adjacency index.
+	 */
+	public int adjacentShot(int index) {
+		build();
+		return adjacentShots[index];
+	}
+
+	public int componentCount() {
+		build();
+		return componentCount;
+	}
+
+	/**
+	 * @return the connected component of the given station, from 0 to {@link #componentCount()} - 1.
+	 */
+	public int component(int station) {
+		checkStation(station);
+		build();
+		return components[station];
+	}
+
+	/**
+	 * @return the index of the first fixed station in the given component, or -1 if it doesn't have one.
+	 */
+	public int componentAnchor(int component) {
+		build();
+		if (component < 0 || component >= componentCount) {
+			throw new IndexOutOfBoundsException("component: " + component + ", count: " + componentCount);
+		}
+		return componentAnchors[component];
+	}
+
+	private void build() {
+		if (built) {
+			return;
+		}
+		int shotCount = shots.size();
+
+		adjacencyStart = new int[stationCount + 1];
+		for (int shot = 0; shot < shotCount; shot++) {
+			adjacencyStart[shotFrom[shot] + 1]++;
+			adjacencyStart[shotTo[shot] + 1]++;
+		}
+		for (int station = 0; station < stationCount; station++) {
+			adjacencyStart[station + 1] += adjacencyStart[station];
+		}
+		adjacentStations = new int[shotCount * 2];
+		adjacentShots = new int[shotCount * 2];
+		int[] next = Arrays.copyOf(adjacencyStart, stationCount);
+		for (int shot = 0; shot < shotCount; shot++) {
+			int from = shotFrom[shot];
+			int to = shotTo[shot];
+			adjacentStations[next[from]] = to;
+			adjacentShots[next[from]++] = shot;
+			adjacentStations[next[to]] = from;
+			adjacentShots[next[to]++] = shot;
+		}
+
+		components = new int[stationCount];
+		Arrays.fill(components, -1);
+		componentCount = 0;
+		int[] queue = new int[stationCount];
+		for (int start = 0; start < stationCount; start++) {
+			if (components[start] >= 0) {
+				continue;
+			}
+			int component = componentCount++;
+			int head = 0;
+			int tail = 0;
+			components[start] = component;
+			queue[tail++] = start;
+			while (head < tail) {
+				int station = queue[head++];
+				for (int i = adjacencyStart[station]; i < adjacencyStart[station + 1]; i++) {
+					int adjacent = adjacentStations[i];
+					if (components[adjacent] < 0) {
+						components[adjacent] = component;
+						queue[tail++] = adjacent;
+					}
+				}
+			}
+		}
+
+		componentAnchors = new int[componentCount];
+		Arrays.fill(componentAnchors, -1);
+		for (int i = 0; i < fixedStations.size(); i++) {
+			int component = components[fixedStationStations[i]];
+			if (componentAnchors[component] < 0) {
+				componentAnchors[component] = i;
+			}
+		}
+		built = true;
+	}
+}
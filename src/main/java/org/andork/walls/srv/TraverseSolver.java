@@ -0,0 +1,228 @@
+package org.andork.walls.srv;
+
+import java.util.Arrays;
+
+/**
+ * Computes approximate station coordinates (east, north and up in meters, relative to UTM grid north) for a
+ * {@link SurveyNetwork} by propagating the reduced shots breadth-first from its fixed stations, without a least-squares
+ * adjustment. Time and memory are linear in the number of stations and shots.
+ *
+ * Each group of stations connected by reducible shots starts from its fixed stations that have an east and north
+ * (fixes given only by latitude and longitude are ignored), or, if it has none, from its lowest-numbered station at the
+ * origin. Loops aren't closed: depending on the {@link LoopMode}, each station is positioned from the shot it was
+ * first reached by, or from the average of all its already-positioned neighbors.
+ *
+ * Splays don't affect the coordinates. Shots that can't be reduced (e.g. without a distance) are ignored.
+ */
+public class TraverseSolver {
+	public static enum LoopMode {
+		/**
+		 * Position each station from the shot it was first reached by.
+		 */
+		FIRST_REACHED,
+		/**
+		 * Position each station from the average of the positions its already-positioned neighbors give it.
+		 */
+		AVERAGED;
+	}
+
+	private final SurveyNetwork network;
+	private LoopMode loopMode = LoopMode.FIRST_REACHED;
+
+	private double[] shotEast;
+	private double[] shotNorth;
+	private double[] shotUp;
+
+	private double[] east;
+	private double[] north;
+	private double[] up;
+	/**
+	 * The shot each station was first reached by, or -1 for starting stations.
+	 */
+	private int[] reachedBy;
+	private boolean[] fixed;
+
+	public TraverseSolver(SurveyNetwork network) {
+		this.network = network;
+	}
+
+	public void setLoopMode(LoopMode loopMode) {
+		if (loopMode == null) {
+			throw new IllegalArgumentException("loopMode must not be null");
+		}
+		this.loopMode = loopMode;
+	}
+
+	public LoopMode getLoopMode() {
+		return loopMode;
+	}
+
+	/**
+	 * Computes the coordinates of all stations currently in the network.
+	 */
+	public void solve() {
+		int stationCount = network.stationCount();
+
+		VectorReducer reducer = new VectorReducer();
+		reducer.setApplyHeightCorrections(true);
+		double[][] deltas = reducer.reduce(network.shots());
+		shotEast = deltas[0];
+		shotNorth = deltas[1];
+		shotUp = deltas[2];
+
+		east = new double[stationCount];
+		north = new double[stationCount];
+		up = new double[stationCount];
+		reachedBy = new int[stationCount];
+		fixed = new boolean[stationCount];
+		Arrays.fill(reachedBy, -1);
+
+		// 0 = unreached, 1 = queued, 2 = positioned
+		byte[] state = new byte[stationCount];
+		int[] queue = new int[stationCount];
+		int tail = 0;
+
+		for (int i = 0; i < network.fixedStationCount(); i++) {
+			FixedStation fixedStation = network.fixedStation(i);
+			double fixedEast = UnitsCorrections.metersOrNaN(fixedStation.east);
+			double fixedNorth = UnitsCorrections.metersOrNaN(fixedStation.north);
+			int station = network.fixedStationStation(i);
+			if (Double.isNaN(fixedEast) || Double.isNaN(fixedNorth) || state[station] != 0) {
+				continue;
+			}
+			double fixedUp = UnitsCorrections.metersOrNaN(fixedStation.elevation);
+			east[station] = fixedEast;
+			north[station] = fixedNorth;
+			up[station] = Double.isNaN(fixedUp) ? 0 : fixedUp;
+			fixed[station] = true;
+			state[station] = 2;
+			queue[tail++] = station;
+		}
+		int head = propagate(queue, 0, tail, state);
+
+		for (int station = 0; station < stationCount; station++) {
+			if (state[station] == 0) {
+				state[station] = 2;
+				queue[head] = station;
+				head = propagate(queue, head, head + 1, state);
+			}
+		}
+	}
+
+	/**
+	 * Positions every station reachable from the queued ones, which must already be positioned.
+	 *
+	 * @return the new end of the queue.
+	 */
+	private int propagate(int[] queue, int head, int tail, byte[] state) {
+		while (head < tail) {
+			int station = queue[head++];
+			if (state[station] != 2) {
+				position(station, state);
+			}
+			int end = network.adjacencyEnd(station);
+			for (int i = network.adjacencyStart(station); i < end; i++) {
+				int adjacent = network.adjacentStation(i);
+				int shot = network.adjacentShot(i);
+				if (state[adjacent] == 0 && isReduced(shot)) {
+					state[adjacent] = 1;
+					reachedBy[adjacent] = shot;
+					queue[tail++] = adjacent;
+				}
+			}
+		}
+		return tail;
+	}
+
+	private boolean isReduced(int shot) {
+		return !Double.isNaN(shotEast[shot]) && !Double.isNaN(shotNorth[shot]) && !Double.isNaN(shotUp[shot]);
+	}
+
+	private void position(int station, byte[] state) {
+		if (loopMode == LoopMode.AVERAGED) {
+			double sumEast = 0;
+			double sumNorth = 0;
+			double sumUp = 0;
+			int count = 0;
+			int end = network.adjacencyEnd(station);
+			for (int i = network.adjacencyStart(station); i < end; i++) {
+				int adjacent = network.adjacentStation(i);
+				int shot = network.adjacentShot(i);
+				if (state[adjacent] == 2 && isReduced(shot)) {
+					double sign = network.shotTo(shot) == station ? 1 : -1;
+					sumEast += east[adjacent] + sign * shotEast[shot];
+					sumNorth += north[adjacent] + sign * shotNorth[shot];
+					sumUp += up[adjacent] + sign * shotUp[shot];
+					count++;
+				}
+			}
+			east[station] = sumEast / count;
+			north[station] = sumNorth / count;
+			up[station] = sumUp / count;
+		}
+		else {
+			int shot = reachedBy[station];
+			int from = network.shotFrom(shot);
+			int to = network.shotTo(shot);
+			if (to == station) {
+				east[station] = east[from] + shotEast[shot];
+				north[station] = north[from] + shotNorth[shot];
+				up[station] = up[from] + shotUp[shot];
+			}
+			else {
+				east[station] = east[to] - shotEast[shot];
+				north[station] = north[to] - shotNorth[shot];
+				up[station] = up[to] - shotUp[shot];
+			}
+		}
+		state[station] = 2;
+	}
+
+	private void checkSolved() {
+		if (east == null) {
+			throw new IllegalStateException("solve() hasn't been called");
+		}
+	}
+
+	public double east(int station) {
+		checkSolved();
+		return east[station];
+	}
+
+	public double north(int station) {
+		checkSolved();
+		return north[station];
+	}
+
+	public double up(int station) {
+		checkSolved();
+		return up[station];
+	}
+
+	/**
+	 * @return whether the given station was placed at the coordinates of a fixed station.
+	 */
+	public boolean isFixed(int station) {
+		checkSolved();
+		return fixed[station];
+	}
+
+	/**
+	 * @return the shot the given station was first reached by, or -1 if the traverse started at it.
+	 */
+	public int reachedBy(int station) {
+		checkSolved();
+		return reachedBy[station];
+	}
+
+	/**
+	 * Gets the east, north and up deltas of the given shot, from its {@link SurveyNetwork#shotFrom(int) from} to its
+	 * {@link SurveyNetwork#shotTo(int) to} station, or {@code NaN}s if it couldn't be reduced.
+	 */
+	public void shotDelta(int shot, double[] enu) {
+		checkSolved();
+		enu[0] = shotEast[shot];
+		enu[1] = shotNorth[shot];
+		enu[2] = shotUp[shot];
+	}
+}
@@ -0,0 +1,130 @@
+package org.andork.walls.srv;
+
+import java.util.Arrays;
+
+import org.andork.unit.Angle;
+import org.andork.unit.Length;
+import org.andork.unit.UnitizedDouble;
+
+/**
+ * The corrections of a {@link WallsUnits} as primitive doubles (in meters and radians), for code that reduces many
+ * vectors without allocating. They're stored as {@link #COUNT} consecutive values of a {@code double[]}, indexed by
+ * the constants below.
+ */
+final class UnitsCorrections {
+	private UnitsCorrections() {
+	}
+
+	static final int DECL = 0;
+	static final int GRID = 1;
+	static final int RECT = 2;
+	static final int INCD = 3;
+	static final int INCA = 4;
+	static final int INCAB = 5;
+	static final int INCV = 6;
+	static final int INCVB = 7;
+	static final int INCS = 8;
+	static final int INCH = 9;
+	static final int OPTION_FLAGS = 10;
+	static final int COUNT = 11;
+
+	/**
+	 * Bits of the value at {@link #OPTION_FLAGS}.
+	 */
+	static final int TYPEAB_CORRECTED = 1;
+	static final int TYPEAB_NO_AVERAGE = 2;
+	static final int TYPEVB_CORRECTED = 4;
+	static final int TYPEVB_NO_AVERAGE = 8;
+	static final int TAPE_FROM_STATION = 16;
+	static final int TAPE_TO_STATION = 32;
+	static final int RECTANGULAR = 64;
+
+	static void get(WallsUnits units, double[] out, int offset) {
+		out[offset + DECL] = radians(units.getDecl());
+		out[offset + GRID] = radians(units.getGrid());
+		out[offset + RECT] = radians(units.getRect());
+		out[offset + INCD] = meters(units.getIncd());
+		out[offset + INCA] = radians(units.getInca());
+		out[offset + INCAB] = radians(units.getIncab());
+		out[offset + INCV] = radians(units.getIncv());
+		out[offset + INCVB] = radians(units.getIncvb());
+		out[offset + INCS] = meters(units.getIncs());
+		out[offset + INCH] = meters(units.getInch());
+		int flags = 0;
+		if (units.isTypeabCorrected()) {
+			flags |= TYPEAB_CORRECTED;
+		}
+		if (units.isTypeabNoAverage()) {
+			flags |= TYPEAB_NO_AVERAGE;
+		}
+		if (units.isTypevbCorrected()) {
+			flags |= TYPEVB_CORRECTED;
+		}
+		if (units.isTypevbNoAverage()) {
+			flags |= TYPEVB_NO_AVERAGE;
+		}
+		if (units.getTape().get(0) == TapingMethodMeasurement.STATION) {
+			flags |= TAPE_FROM_STATION;
+		}
+		if (units.getTape().get(1) == TapingMethodMeasurement.STATION) {
+			flags |= TAPE_TO_STATION;
+		}
+		if (units.getVectorType() == VectorType.RECTANGULAR) {
+			flags |= RECTANGULAR;
+		}
+		out[offset + OPTION_FLAGS] = flags;
+	}
+
+	static double radians(UnitizedDouble<Angle> angle) {
+		return angle == null ? 0 : angle.doubleValue(Angle.radians);
+	}
+
+	static double meters(UnitizedDouble<Length> length) {
+		return length == null ? 0 : length.doubleValue(Length.meters);
+	}
+
+	static double radiansOrNaN(UnitizedDouble<Angle> angle) {
+		return angle == null ? Double.NaN : angle.doubleValue(Angle.radians);
+	}
+
+	static double metersOrNaN(UnitizedDouble<Length> length) {
+		return length == null ? Double.NaN : length.doubleValue(Length.meters);
+	}
+
+	/**
+	 * Converts the corrections of the units in a {@link VectorTable} as they're needed, and keeps them for as long as
+	 * it's used with the same table, until the table is {@link VectorTable#reset() reset}.
+	 */
+	static final class Cache {
+		private double[] values = new double[0];
+		private int count;
+		private VectorTable table;
+		private int idScope;
+
+		/**
+		 * @return the corrections, at the offset {@link #offset(VectorTable, int)} returns.
+		 */
+		double[] values() {
+			return values;
+		}
+
+		/**
+		 * @return the offset of the corrections for the given units id of {@code table} in {@link #values()}.
+		 */
+		int offset(VectorTable table, int unitsId) {
+			if (table != this.table || table.idScope() != idScope) {
+				this.table = table;
+				idScope = table.idScope();
+				count = 0;
+			}
+			while (count <= unitsId) {
+				if ((count + 1) * COUNT > values.length) {
+					values = Arrays.copyOf(values, Math.max(4, count * 2) * COUNT);
+				}
+				get(table.units(count), values, count * COUNT);
+				count++;
+			}
+			return unitsId * COUNT;
+		}
+	}
+}
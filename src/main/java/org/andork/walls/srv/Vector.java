@@ -18,6 +18,11 @@ import org.andork.walls.WallsMessage;
 
 public class Vector implements HasVarianceOverrides, HasComment, HasInlineSegment, Cloneable {
 	public Segment sourceSegment;
+	/**
+	 * The {@link SourceLocation} of the line, if the parser was set to emit locations instead of
+	 * {@link #sourceSegment}s.
+	 */
+	public long sourceLocation = SourceLocation.NONE;
 	public String from;
 	public String to;
 	public UnitizedDouble<Length> distance;
@@ -43,6 +48,38 @@ public class Vector implements HasVarianceOverrides, HasComment, HasInlineSegmen
 	public Date date;
 	public WallsUnits units;
 	
+	/**
+	 * Clears all fields, as if this were a new {@code Vector}.
+	 */
+	void reset() {
+		sourceSegment = null;
+		sourceLocation = SourceLocation.NONE;
+		from = null;
+		to = null;
+		distance = null;
+		frontsightAzimuth = null;
+		backsightAzimuth = null;
+		frontsightInclination = null;
+		backsightInclination = null;
+		targetHeight = null;
+		instrumentHeight = null;
+		north = null;
+		east = null;
+		elevation = null;
+		horizontalVariance = null;
+		verticalVariance = null;
+		left = null;
+		right = null;
+		up = null;
+		down = null;
+		lrudFacingAzimuth = null;
+		cFlag = false;
+		segment = null;
+		comment = null;
+		date = null;
+		units = null;
+	}
+
 	public Vector clone() {
 		Vector result;
 		try {
@@ -50,7 +87,7 @@ public class Vector implements HasVarianceOverrides, HasComment, HasInlineSegmen
 		} catch (CloneNotSupportedException e) {
 			throw new RuntimeException(e);
 		}
-		result.segment = segment == null ? null : new ArrayList<>(segment);
+		result.segment = segment == null || segment instanceof SegmentPath ? segment : new ArrayList<>(segment);
 		result.date = date == null ? null : (Date) result.date.clone();
 		return result;
 	}
@@ -59,6 +96,15 @@ public class Vector implements HasVarianceOverrides, HasComment, HasInlineSegmen
 		return angle != null && Math.abs(angle.abs().doubleValue(Angle.degrees) - 90.0) < 1e-6;
 	}
 
+	/**
+	 * Like {@link #isVertical(UnitizedDouble)}, for an inclination in radians.
+	 */
+	static boolean isVertical(double inclination) {
+		return Math.abs(Math.abs(inclination) - Math.PI / 2) < VERTICAL_TOLERANCE;
+	}
+
+	private static final double VERTICAL_TOLERANCE = Math.toRadians(1e-6);
+
 	public boolean isVertical() {
 		return isVertical(units.averageInclination(frontsightInclination, backsightInclination));
 	}
@@ -69,7 +115,8 @@ public class Vector implements HasVarianceOverrides, HasComment, HasInlineSegmen
 	}
 
 	/**
-	 * Derives compass-and-tape measurements from rectangular measurements.
+	 * Derives compass-and-tape measurements from rectangular measurements. See {@link RectToCt} to do this for many
+	 * vectors at once.
 	 */
 	public boolean deriveCtFromRect() {
 		if (units.getVectorType() != VectorType.RECTANGULAR) {
@@ -85,7 +132,7 @@ public class Vector implements HasVarianceOverrides, HasComment, HasInlineSegmen
 		}
 		double upValue = up.doubleValue(north.unit);
 
-		UnitizedDouble<Length> distance = new UnitizedDouble<>(
+		distance = new UnitizedDouble<>(
 				Math.sqrt(ne2 + upValue * upValue), north.unit);
 		distance = distance.in(units.getDUnit()).sub(units.getIncd());
 		UnitizedDouble<Angle> azm = Angle.atan2(east, north).in(units.getAUnit()).sub(units.getInca());
@@ -101,6 +148,9 @@ public class Vector implements HasVarianceOverrides, HasComment, HasInlineSegmen
 		return this.applyHeightCorrections(null);
 	}
 
+	/**
+	 * See {@link HeightCorrections} to do this for many shots without allocating.
+	 */
 	public boolean applyHeightCorrections(WallsVisitor visitor) throws SegmentParseException {
 		if (isVertical() || (units.getInch().isZero() && 
 				(!isFinite(instrumentHeight) || instrumentHeight.isZero()) && 
@@ -139,12 +189,14 @@ public class Vector implements HasVarianceOverrides, HasComment, HasInlineSegmen
 			UnitizedDouble<Length> heightOffset = instrumentHeight.sub(targetHeight);
 
 			if (heightOffset.abs().compareTo(tapeDist.mul(1 + 1e-6)) > 0) {
+				UnitizedDouble<Length> originalTapeDist = tapeDist;
 				tapeDist = heightOffset.abs();
 				if (visitor != null) {
 					visitor.message(new WallsMessage(
 						"error",
-						"Change in depth greater than taped distance! Distance assumed to be " + heightOffset.abs() + " (not " + tapeDist + ") to match change",
-						sourceSegment));
+						"Change in depth greater than taped distance! Distance assumed to be " + heightOffset.abs() + " (not " + originalTapeDist + ") to match change",
+						sourceSegment,
+						sourceLocation));
 				}
 			}
 
@@ -186,9 +238,10 @@ public class Vector implements HasVarianceOverrides, HasComment, HasInlineSegmen
 			UnitizedDouble<Length> delta = instHeightAboveTape.sub(targetHeightAboveTape);
 
 			if (delta.abs().compareTo(tapeDist) > 0) {
-				throw new SegmentParseException(
+				throw new SourceLocationParseException(
 						"vector is ambiguous because abs(instrument height above tape - target height above tape) > distance.  In this case, there are two possible vectors that fulfill the constraints imposed by the measurements.  Split this shot into two shots (one vertical) to make it unambiguous.",
-						sourceSegment);
+						sourceSegment,
+						sourceLocation);
 			}
 
 			// compute instrument to target distance
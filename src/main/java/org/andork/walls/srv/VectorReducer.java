@@ -0,0 +1,224 @@
+package org.andork.walls.srv;
+
+import static org.andork.walls.srv.UnitsCorrections.*;
+
+/**
+ * Reduces vectors to east, north and up deltas (in meters, relative to UTM grid north) in primitive doubles, applying
+ * the Walls corrections of their units:
+ * <ul>
+ * <li>{@code incd}, {@code inca}, {@code incab}, {@code incv} and {@code incvb}</li>
+ * <li>averaging of frontsights and backsights, according to {@code typeab} and {@code typevb}</li>
+ * <li>{@code decl} for compass-and-tape vectors, {@code rect} for rectangular vectors, and {@code grid} for both</li>
+ * </ul>
+ * Instrument and target heights and {@code inch} are not applied to single vectors; call
+ * {@link Vector#applyHeightCorrections()} first for vectors that have them. Batches apply them too if
+ * {@link #setApplyHeightCorrections(boolean)} is set (see {@link HeightCorrections}).
+ *
+ * Batches are reduced from the rows of a {@link VectorTable}, whose measurements are already stored in meters and
+ * radians. The corrections of each distinct units are converted once per table, so reducing a row doesn't allocate.
+ * Rows that can't be reduced (e.g. without a distance or non-vertical without an azimuth) produce {@code NaN}s.
+ *
+ * Not thread-safe.
+ */
+public class VectorReducer {
+	private static final double TWO_PI = 2 * Math.PI;
+
+	private final UnitsCorrections.Cache corrections = new UnitsCorrections.Cache();
+	private boolean applyHeightCorrections;
+	private final double[] heightCorrected = new double[HeightCorrections.RESULT_COUNT];
+
+	/**
+	 * Sets whether batches apply instrument and target heights and {@code inch} to compass-and-tape rows that have
+	 * them, like {@link Vector#applyHeightCorrections()} would. Ambiguous rows are reduced without them. Off by
+	 * default.
+	 */
+	public void setApplyHeightCorrections(boolean applyHeightCorrections) {
+		this.applyHeightCorrections = applyHeightCorrections;
+	}
+
+	/**
+	 * Reduces rows {@code start} to {@code start + count - 1} of {@code table}, writing their deltas to
+	 * {@code east}, {@code north} and {@code up} starting at {@code offset}.
+	 */
+	public void reduce(
+		VectorTable table,
+		int start,
+		int count,
+		double[] east,
+		double[] north,
+		double[] up,
+		int offset) {
+		if (start < 0 || count < 0 || start + count > table.size()) {
+			throw new IndexOutOfBoundsException("rows " + start + " to " + (start + count) + " of " + table.size());
+		}
+		double[] enu = new double[3];
+		for (int i = 0; i < count; i++) {
+			int row = start + i;
+			int unitsId = table.unitsId(row);
+			if (unitsId < 0) {
+				east[offset + i] = north[offset + i] = up[offset + i] = Double.NaN;
+				continue;
+			}
+			int c = corrections.offset(table, unitsId);
+			double rectNorth = table.value(VectorTable.Column.NORTH, row);
+			if (!Double.isNaN(rectNorth)) {
+				reduceRect(
+					table.value(VectorTable.Column.EAST, row),
+					rectNorth,
+					table.value(VectorTable.Column.ELEVATION, row),
+					corrections.values(),
+					c,
+					enu);
+			}
+			else {
+				double distance = table.value(VectorTable.Column.DISTANCE, row);
+				double fsInclination = table.value(VectorTable.Column.FRONTSIGHT_INCLINATION, row);
+				double bsInclination = table.value(VectorTable.Column.BACKSIGHT_INCLINATION, row);
+				if (applyHeightCorrections) {
+					byte status = HeightCorrections.apply(
+						distance,
+						fsInclination,
+						bsInclination,
+						table.value(VectorTable.Column.INSTRUMENT_HEIGHT, row),
+						table.value(VectorTable.Column.TARGET_HEIGHT, row),
+						corrections.values(),
+						c,
+						heightCorrected,
+						0);
+					if (status == HeightCorrections.CORRECTED || status == HeightCorrections.DEPTH_EXCEEDS_DISTANCE) {
+						distance = heightCorrected[HeightCorrections.DISTANCE];
+						fsInclination = heightCorrected[HeightCorrections.FRONTSIGHT_INCLINATION];
+						bsInclination = heightCorrected[HeightCorrections.BACKSIGHT_INCLINATION];
+					}
+				}
+				reduceCt(
+					distance,
+					table.value(VectorTable.Column.FRONTSIGHT_AZIMUTH, row),
+					table.value(VectorTable.Column.BACKSIGHT_AZIMUTH, row),
+					fsInclination,
+					bsInclination,
+					corrections.values(),
+					c,
+					enu);
+			}
+			east[offset + i] = enu[0];
+			north[offset + i] = enu[1];
+			up[offset + i] = enu[2];
+		}
+	}
+
+	/**
+	 * Reduces all rows of {@code table} into new arrays.
+	 *
+	 * @return the {@code east}, {@code north} and {@code up} arrays.
+	 */
+	public double[][] reduce(VectorTable table) {
+		int size = table.size();
+		double[][] result = new double[3][size];
+		reduce(table, 0, size, result[0], result[1], result[2], 0);
+		return result;
+	}
+
+	/**
+	 * Reduces a single vector, writing its east, north and up deltas to {@code enu}.
+	 */
+	public static void reduce(Vector vector, double[] enu) {
+		double[] corrections = new double[COUNT];
+		UnitsCorrections.get(vector.units, corrections, 0);
+		if (vector.north != null) {
+			reduceRect(
+				metersOrNaN(vector.east),
+				metersOrNaN(vector.north),
+				metersOrNaN(vector.elevation),
+				corrections,
+				0,
+				enu);
+		}
+		else {
+			reduceCt(
+				metersOrNaN(vector.distance),
+				radiansOrNaN(vector.frontsightAzimuth),
+				radiansOrNaN(vector.backsightAzimuth),
+				radiansOrNaN(vector.frontsightInclination),
+				radiansOrNaN(vector.backsightInclination),
+				corrections,
+				0,
+				enu);
+		}
+	}
+
+	static void reduceRect(double east, double north, double elevation, double[] corrections, int c, double[] enu) {
+		double rotation = corrections[c + RECT] - corrections[c + GRID];
+		double cos = Math.cos(rotation);
+		double sin = Math.sin(rotation);
+		enu[0] = east * cos + north * sin;
+		enu[1] = north * cos - east * sin;
+		enu[2] = Double.isNaN(elevation) ? 0 : elevation;
+	}
+
+	/**
+	 * Arguments are in meters and radians, {@code NaN} if missing.
+	 */
+	static void reduceCt(
+		double distance,
+		double fsAzimuth,
+		double bsAzimuth,
+		double fsInclination,
+		double bsInclination,
+		double[] corrections,
+		int c,
+		double[] enu) {
+		int flags = (int) corrections[c + OPTION_FLAGS];
+
+		double inclination = average(
+			fsInclination + corrections[c + INCV],
+			(flags & TYPEVB_CORRECTED) != 0
+				? bsInclination + corrections[c + INCVB]
+				: -(bsInclination + corrections[c + INCVB]),
+			(flags & TYPEVB_NO_AVERAGE) != 0);
+		if (Double.isNaN(inclination)) {
+			inclination = 0;
+		}
+
+		double fs = fsAzimuth + corrections[c + INCA];
+		double bs = bsAzimuth + corrections[c + INCAB];
+		if ((flags & TYPEAB_CORRECTED) == 0) {
+			bs += Math.PI;
+		}
+		double azimuth;
+		if (Double.isNaN(fs) || Double.isNaN(bs)) {
+			azimuth = Double.isNaN(fs) ? bs : fs;
+		}
+		else if ((flags & TYPEAB_NO_AVERAGE) != 0) {
+			azimuth = fs;
+		}
+		else {
+			// average along the shorter arc between them
+			double diff = Math.IEEEremainder(bs - fs, TWO_PI);
+			azimuth = fs + diff * 0.5;
+		}
+		azimuth += corrections[c + DECL] - corrections[c + GRID];
+
+		distance += corrections[c + INCD];
+		double horizontal = distance * Math.cos(inclination);
+		enu[2] = distance * Math.sin(inclination);
+		if (Double.isNaN(azimuth) && Vector.isVertical(inclination)) {
+			enu[0] = 0;
+			enu[1] = 0;
+		}
+		else {
+			enu[0] = horizontal * Math.sin(azimuth);
+			enu[1] = horizontal * Math.cos(azimuth);
+		}
+	}
+
+	private static double average(double fs, double bs, boolean noAverage) {
+		if (Double.isNaN(fs)) {
+			return bs;
+		}
+		if (Double.isNaN(bs) || noAverage) {
+			return fs;
+		}
+		return (fs + bs) * 0.5;
+	}
+}
@@ -0,0 +1,527 @@
+package org.andork.walls.srv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.andork.unit.Angle;
+import org.andork.unit.Length;
+import org.andork.unit.Unit;
+import org.andork.unit.UnitType;
+import org.andork.unit.UnitizedDouble;
+import org.andork.walls.srv.WallsUnits.Data;
+
+/**
+ * Stores parsed {@link Vector}s column by column in primitive arrays, so that large projects don't need an object
+ * graph per shot. Add it as a {@link WallsVisitor} (or call {@link #add(Vector)}) to fill it, and use
+ * {@link #get(int, Vector)} to view a row as a {@link Vector}.
+ *
+ * Measurements are stored in meters and radians along with a code for the unit they were given in, so views return
+ * them in the same units (up to rounding). Stations, segment paths, comments and units are stored as ids into tables
+ * of distinct values. The {@link Vector#sourceSegment sourceSegment} is not stored, but the
+ * {@link Vector#sourceLocation sourceLocation} is.
+ *
+ * Stations are stored as they were written, unless the table is given a {@link StationSymbolTable} to share: then they
+ * are stored as the ids of their fully-prefixed names (see {@link WallsUnits#processStationName(String)}) in it.
+ */
+public class VectorTable extends AbstractWallsVisitor {
+	public static enum Column {
+		DISTANCE(Length.meters),
+		FRONTSIGHT_AZIMUTH(Angle.radians),
+		BACKSIGHT_AZIMUTH(Angle.radians),
+		FRONTSIGHT_INCLINATION(Angle.radians),
+		BACKSIGHT_INCLINATION(Angle.radians),
+		TARGET_HEIGHT(Length.meters),
+		INSTRUMENT_HEIGHT(Length.meters),
+		NORTH(Length.meters),
+		EAST(Length.meters),
+		ELEVATION(Length.meters),
+		LEFT(Length.meters),
+		RIGHT(Length.meters),
+		UP(Length.meters),
+		DOWN(Length.meters),
+		LRUD_FACING_AZIMUTH(Angle.radians),
+		HORIZONTAL_VARIANCE(Length.meters),
+		VERTICAL_VARIANCE(Length.meters);
+
+		/**
+		 * The unit values in this column are stored in.
+		 */
+		public final Unit<?> siUnit;
+
+		private Column(Unit<?> siUnit) {
+			this.siUnit = siUnit;
+		}
+	}
+
+	private static final Column[] columns = Column.values();
+
+	/**
+	 * Codes for how a {@link VarianceOverride} is stored. The value of {@link #VARIANCE_LENGTH} and
+	 * {@link #VARIANCE_RMS_ERROR} overrides is in the {@link Column#HORIZONTAL_VARIANCE} or
+	 * {@link Column#VERTICAL_VARIANCE} column.
+	 */
+	public static final byte VARIANCE_NONE = 0;
+	public static final byte VARIANCE_FLOATED = 1;
+	public static final byte VARIANCE_FLOATED_TRAVERSE = 2;
+	public static final byte VARIANCE_LENGTH = 3;
+	public static final byte VARIANCE_RMS_ERROR = 4;
+
+	private static final byte NULL_UNIT = -1;
+	private static final long NULL_DATE = Long.MIN_VALUE;
+
+	private int size;
+	private final double[][] values = new double[columns.length][];
+	private final byte[][] unitCodes = new byte[columns.length][];
+	private byte[] horizontalVarianceTypes;
+	private byte[] verticalVarianceTypes;
+	private int[] fromIds;
+	private int[] toIds;
+	private int[] segmentIds;
+	private int[] commentIds;
+	private int[] unitsIds;
+	private long[] dates;
+	private long[] sourceLocations;
+	private boolean[] cFlags;
+
+	/**
+	 * The shared table station ids are in, or {@code null} if they're in {@link #stations}.
+	 */
+	private final StationSymbolTable symbols;
+	private final List<String> stations = new ArrayList<>();
+	private final Map<String, Integer> stationIds = new HashMap<>();
+	private final List<SegmentPath> segments = new ArrayList<>();
+	private final Map<SegmentPath, Integer> segmentIdMap = new IdentityHashMap<>();
+	private final List<String> comments = new ArrayList<>();
+	private final Map<String, Integer> commentIdMap = new HashMap<>();
+	private final List<WallsUnits> units = new ArrayList<>();
+	private final Map<Data, Integer> unitsIdMap = new IdentityHashMap<>();
+	/**
+	 * Incremented by {@link #reset()}, so that caches of ids can tell when they're stale.
+	 */
+	private int idScope;
+
+	public VectorTable() {
+		this(1024);
+	}
+
+	public VectorTable(int initialCapacity) {
+		this(initialCapacity, null);
+	}
+
+	/**
+	 * @param symbols the table to intern fully-prefixed station names in, or {@code null} to store station names as
+	 *                written
+	 */
+	public VectorTable(int initialCapacity, StationSymbolTable symbols) {
+		this.symbols = symbols;
+		allocate(Math.max(1, initialCapacity));
+	}
+
+	private void allocate(int capacity) {
+		for (int i = 0; i < columns.length; i++) {
+			values[i] = values[i] == null ? new double[capacity] : Arrays.copyOf(values[i], capacity);
+			unitCodes[i] = unitCodes[i] == null ? new byte[capacity] : Arrays.copyOf(unitCodes[i], capacity);
+		}
+		horizontalVarianceTypes = copyOf(horizontalVarianceTypes, capacity);
+		verticalVarianceTypes = copyOf(verticalVarianceTypes, capacity);
+		fromIds = copyOf(fromIds, capacity);
+		toIds = copyOf(toIds, capacity);
+		segmentIds = copyOf(segmentIds, capacity);
+		commentIds = copyOf(commentIds, capacity);
+		unitsIds = copyOf(unitsIds, capacity);
+		dates = copyOf(dates, capacity);
+		sourceLocations = copyOf(sourceLocations, capacity);
+		cFlags = cFlags == null ? new boolean[capacity] : Arrays.copyOf(cFlags, capacity);
+	}
+
+	private static byte[] copyOf(byte[] array, int capacity) {
+		return array == null ? new byte[capacity] : Arrays.copyOf(array, capacity);
+	}
+
+	private static int[] copyOf(int[] array, int capacity) {
+		return array == null ? new int[capacity] : Arrays.copyOf(array, capacity);
+	}
+
+	private static long[] copyOf(long[] array, int capacity) {
+		return array == null ? new long[capacity] : Arrays.copyOf(array, capacity);
+	}
+
+	private static <T> int intern(T value, List<T> list, Map<T, Integer> ids) {
+		if (value == null) {
+			return -1;
+		}
+		Integer id = ids.get(value);
+		if (id == null) {
+			id = list.size();
+			list.add(value);
+			ids.put(value, id);
+		}
+		return id;
+	}
+
+	static byte unitCode(Unit<?> unit) {
+		int code = WallsEventCodec.units.indexOf(unit);
+		if (code < 0) {
+			throw new IllegalArgumentException("unsupported unit: " + unit);
+		}
+		return (byte) code;
+	}
+
+	@Override
+	public void parsedVector(Vector vector) {
+		add(vector);
+	}
+
+	/**
+	 * Appends a row with the values of the given vector.
+	 *
+	 * @return the index of the row.
+	 */
+	public int add(Vector v) {
+		return add(v, stationId(v.from, v.units), stationId(v.to, v.units));
+	}
+
+	private int stationId(String name, WallsUnits units) {
+		if (symbols == null) {
+			return intern(name, stations, stationIds);
+		}
+		if (name == null) {
+			return -1;
+		}
+		return units != null ? units.processStationId(name, symbols) : symbols.intern(name);
+	}
+
+	/**
+	 * Like {@link #add(Vector)}, but with station ids the caller has already interned.
+	 */
+	int add(Vector v, int fromId, int toId) {
+		if (size == fromIds.length) {
+			allocate(size * 2);
+		}
+		int row = size++;
+		set(Column.DISTANCE, row, v.distance);
+		set(Column.FRONTSIGHT_AZIMUTH, row, v.frontsightAzimuth);
+		set(Column.BACKSIGHT_AZIMUTH, row, v.backsightAzimuth);
+		set(Column.FRONTSIGHT_INCLINATION, row, v.frontsightInclination);
+		set(Column.BACKSIGHT_INCLINATION, row, v.backsightInclination);
+		set(Column.TARGET_HEIGHT, row, v.targetHeight);
+		set(Column.INSTRUMENT_HEIGHT, row, v.instrumentHeight);
+		set(Column.NORTH, row, v.north);
+		set(Column.EAST, row, v.east);
+		set(Column.ELEVATION, row, v.elevation);
+		set(Column.LEFT, row, v.left);
+		set(Column.RIGHT, row, v.right);
+		set(Column.UP, row, v.up);
+		set(Column.DOWN, row, v.down);
+		set(Column.LRUD_FACING_AZIMUTH, row, v.lrudFacingAzimuth);
+		horizontalVarianceTypes[row] = setVariance(Column.HORIZONTAL_VARIANCE, row, v.horizontalVariance);
+		verticalVarianceTypes[row] = setVariance(Column.VERTICAL_VARIANCE, row, v.verticalVariance);
+		fromIds[row] = fromId;
+		toIds[row] = toId;
+		segmentIds[row] = intern(SegmentPath.of(v.segment), segments, segmentIdMap);
+		commentIds[row] = intern(v.comment, comments, commentIdMap);
+		unitsIds[row] = internUnits(v.units);
+		dates[row] = v.date == null ? NULL_DATE : v.date.getTime();
+		cFlags[row] = v.cFlag;
+		sourceLocations[row] = v.sourceLocation;
+		return row;
+	}
+
+	private int internUnits(WallsUnits wallsUnits) {
+		if (wallsUnits == null) {
+			return -1;
+		}
+		Integer id = unitsIdMap.get(wallsUnits.data());
+		if (id == null) {
+			id = units.size();
+			units.add(wallsUnits);
+			unitsIdMap.put(wallsUnits.data(), id);
+		}
+		return id;
+	}
+
+	private void set(Column column, int row, UnitizedDouble<?> value) {
+		if (value == null) {
+			values[column.ordinal()][row] = Double.NaN;
+			unitCodes[column.ordinal()][row] = NULL_UNIT;
+		}
+		else {
+			values[column.ordinal()][row] = toSi(column, value);
+			unitCodes[column.ordinal()][row] = unitCode(value.unit);
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static double toSi(Column column, UnitizedDouble value) {
+		return value.doubleValue(column.siUnit);
+	}
+
+	private byte setVariance(Column column, int row, VarianceOverride override) {
+		if (override == null) {
+			set(column, row, null);
+			return VARIANCE_NONE;
+		}
+		if (override == VarianceOverride.FLOATED) {
+			set(column, row, null);
+			return VARIANCE_FLOATED;
+		}
+		if (override == VarianceOverride.FLOATED_TRAVERSE) {
+			set(column, row, null);
+			return VARIANCE_FLOATED_TRAVERSE;
+		}
+		if (override instanceof VarianceOverride.Length) {
+			set(column, row, ((VarianceOverride.Length) override).lengthOverride);
+			return VARIANCE_LENGTH;
+		}
+		if (override instanceof VarianceOverride.RMSError) {
+			set(column, row, ((VarianceOverride.RMSError) override).error);
+			return VARIANCE_RMS_ERROR;
+		}
+		throw new IllegalArgumentException("unsupported variance override: " + override);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Removes all rows, but keeps the station, segment, comment and units ids.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Removes all rows and their station (unless they're in a shared {@link StationSymbolTable}), segment, comment
+	 * and units ids, so that rows added afterward get ids starting from 0 again.
+	 */
+	public void reset() {
+		size = 0;
+		stations.clear();
+		stationIds.clear();
+		segments.clear();
+		segmentIdMap.clear();
+		comments.clear();
+		commentIdMap.clear();
+		units.clear();
+		unitsIdMap.clear();
+		idScope++;
+	}
+
+	/**
+	 * @return a number that changes whenever {@link #reset()} invalidates the ids.
+	 */
+	int idScope() {
+		return idScope;
+	}
+
+	private void checkRow(int row) {
+		if (row < 0 || row >= size) {
+			throw new IndexOutOfBoundsException("row: " + row + ", size: " + size);
+		}
+	}
+
+	/**
+	 * @return the value in meters or radians (see {@link Column#siUnit}), or {@code NaN} if there is none.
+	 */
+	public double value(Column column, int row) {
+		checkRow(row);
+		return values[column.ordinal()][row];
+	}
+
+	/**
+	 * Replaces a value.
+	 *
+	 * @param value the value in meters or radians (see {@link Column#siUnit}), or {@code NaN} for none
+	 * @param unit  the unit to report the value in
+	 */
+	public void set(Column column, int row, double value, Unit<?> unit) {
+		checkRow(row);
+		values[column.ordinal()][row] = value;
+		unitCodes[column.ordinal()][row] = Double.isNaN(value) ? NULL_UNIT : unitCode(unit);
+	}
+
+	/**
+	 * @return the unit the value was given in, or {@code null} if there is no value.
+	 */
+	public Unit<?> unit(Column column, int row) {
+		checkRow(row);
+		byte code = unitCodes[column.ordinal()][row];
+		return code == NULL_UNIT ? null : WallsEventCodec.units.get(code);
+	}
+
+	/**
+	 * @return one of the {@code VARIANCE_*} constants.
+	 */
+	public byte horizontalVarianceType(int row) {
+		checkRow(row);
+		return horizontalVarianceTypes[row];
+	}
+
+	/**
+	 * @return one of the {@code VARIANCE_*} constants.
+	 */
+	public byte verticalVarianceType(int row) {
+		checkRow(row);
+		return verticalVarianceTypes[row];
+	}
+
+	/**
+	 * @return the id of the from station (see {@link #station(int)}), or -1 if there is none.
+	 */
+	public int fromId(int row) {
+		checkRow(row);
+		return fromIds[row];
+	}
+
+	/**
+	 * @return the id of the to station (see {@link #station(int)}), or -1 if there is none.
+	 */
+	public int toId(int row) {
+		checkRow(row);
+		return toIds[row];
+	}
+
+	/**
+	 * @return the number of station ids (of the shared {@link StationSymbolTable}, if any).
+	 */
+	public int stationCount() {
+		return symbols != null ? symbols.size() : stations.size();
+	}
+
+	public String station(int id) {
+		if (id < 0) {
+			return null;
+		}
+		return symbols != null ? symbols.name(id) : stations.get(id);
+	}
+
+	/**
+	 * @return the id of the segment path (see {@link #segment(int)}), or -1 if there is none.
+	 */
+	public int segmentId(int row) {
+		checkRow(row);
+		return segmentIds[row];
+	}
+
+	public SegmentPath segment(int id) {
+		return id < 0 ? null : segments.get(id);
+	}
+
+	public String comment(int row) {
+		checkRow(row);
+		return commentIds[row] < 0 ? null : comments.get(commentIds[row]);
+	}
+
+	/**
+	 * @return the id of the units (see {@link #units(int)}), or -1 if there are none.
+	 */
+	public int unitsId(int row) {
+		checkRow(row);
+		return unitsIds[row];
+	}
+
+	public WallsUnits units(int id) {
+		return id < 0 ? null : units.get(id);
+	}
+
+	/**
+	 * @return the date in millis, or {@link Long#MIN_VALUE} if there is none.
+	 */
+	public long date(int row) {
+		checkRow(row);
+		return dates[row];
+	}
+
+	/**
+	 * @return the {@link Vector#sourceLocation}.
+	 */
+	public long sourceLocation(int row) {
+		checkRow(row);
+		return sourceLocations[row];
+	}
+
+	public boolean cFlag(int row) {
+		checkRow(row);
+		return cFlags[row];
+	}
+
+	/**
+	 * @return a new vector with the values of the given row.
+	 */
+	public Vector get(int row) {
+		Vector result = get(row, new Vector());
+		if (result.segment != null) {
+			result.segment = new ArrayList<>(result.segment);
+		}
+		return result;
+	}
+
+	/**
+	 * Sets the fields of {@code view} to the values of the given row, so that rows can be visited without creating a
+	 * {@link Vector} for each. The {@link Vector#segment segment} of the view is the row's (immutable)
+	 * {@link SegmentPath}.
+	 *
+	 * @return {@code view}
+	 */
+	public Vector get(int row, Vector view) {
+		checkRow(row);
+		view.sourceSegment = null;
+		view.sourceLocation = sourceLocations[row];
+		view.from = station(fromIds[row]);
+		view.to = station(toIds[row]);
+		view.distance = get(Column.DISTANCE, row);
+		view.frontsightAzimuth = get(Column.FRONTSIGHT_AZIMUTH, row);
+		view.backsightAzimuth = get(Column.BACKSIGHT_AZIMUTH, row);
+		view.frontsightInclination = get(Column.FRONTSIGHT_INCLINATION, row);
+		view.backsightInclination = get(Column.BACKSIGHT_INCLINATION, row);
+		view.targetHeight = get(Column.TARGET_HEIGHT, row);
+		view.instrumentHeight = get(Column.INSTRUMENT_HEIGHT, row);
+		view.north = get(Column.NORTH, row);
+		view.east = get(Column.EAST, row);
+		view.elevation = get(Column.ELEVATION, row);
+		view.left = get(Column.LEFT, row);
+		view.right = get(Column.RIGHT, row);
+		view.up = get(Column.UP, row);
+		view.down = get(Column.DOWN, row);
+		view.lrudFacingAzimuth = get(Column.LRUD_FACING_AZIMUTH, row);
+		view.horizontalVariance = getVariance(Column.HORIZONTAL_VARIANCE, horizontalVarianceTypes[row], row);
+		view.verticalVariance = getVariance(Column.VERTICAL_VARIANCE, verticalVarianceTypes[row], row);
+		view.cFlag = cFlags[row];
+		view.segment = segment(segmentIds[row]);
+		view.comment = commentIds[row] < 0 ? null : comments.get(commentIds[row]);
+		view.date = dates[row] == NULL_DATE ? null : new Date(dates[row]);
+		view.units = units(unitsIds[row]);
+		return view;
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T extends UnitType<T>> UnitizedDouble<T> get(Column column, int row) {
+		byte code = unitCodes[column.ordinal()][row];
+		if (code == NULL_UNIT) {
+			return null;
+		}
+		Unit<T> unit = (Unit<T>) WallsEventCodec.units.get(code);
+		return new UnitizedDouble<>(values[column.ordinal()][row], (Unit<T>) column.siUnit).in(unit);
+	}
+
+	private VarianceOverride getVariance(Column column, byte type, int row) {
+		switch (type) {
+		case VARIANCE_FLOATED:
+			return VarianceOverride.FLOATED;
+		case VARIANCE_FLOATED_TRAVERSE:
+			return VarianceOverride.FLOATED_TRAVERSE;
+		case VARIANCE_LENGTH:
+			return new VarianceOverride.Length(get(column, row));
+		case VARIANCE_RMS_ERROR:
+			return new VarianceOverride.RMSError(get(column, row));
+		default:
+			return null;
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package org.andork.walls.srv;
+
+/**
+ * A {@link WallsVisitor} that can receive vectors in batches, as the rows of a {@link VectorTable}, so that it can
+ * process them in tight loops over the table's columns. Use a {@link BatchingWallsVisitor} to parse into one.
+ */
+public interface WallsBatchVisitor extends WallsVisitor {
+    /**
+     * Receives a batch of vectors in rows {@code 0} to {@code batch.size() - 1} of {@code batch}. The table is
+     * {@link VectorTable#reset() reset} and reused for the next batch, so its station, segment, comment and units ids
+     * are only valid until this method returns.
+     *
+     * {@link BatchingWallsVisitor} only calls this if the visitor overrides it; otherwise it passes the parsed
+     * vectors to {@link #parsedVector(Vector)} as they are.
+     *
+     * By default, calls {@link #parsedVector(Vector)} with a new {@link VectorTable#get(int) Vector} for each row,
+     * which the visitor may keep. These aren't the parsed vectors, though: the table stores measurements in meters and
+     * radians, so they may differ from the parsed values by rounding, and their
+     * {@link Vector#sourceSegment sourceSegment} is {@code null} (only their {@link Vector#sourceLocation
+     * sourceLocation} is kept).
+     */
+    default void parsedVectors(VectorTable batch) {
+        for (int row = 0; row < batch.size(); row++) {
+            parsedVector(batch.get(row));
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package org.andork.walls.srv;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.andork.segment.Segment;
+import org.andork.walls.wpj.WallsProjectEntry;
+
+/**
+ * Remembers the parsed callbacks of survey entries so that {@link WallsProjectCompiler} only has to reparse the
+ * entries whose file contents or inherited state ({@link WallsProjectEntry#allOptions() options} and
+ * {@link WallsProjectEntry#segment() segment}) have changed since the last compile. Callbacks are recorded with the
+ * {@link WallsVisitor#interests() interests} of the visitor they were parsed for, and are only reused for the same
+ * interests. Thread-safe.
+ *
+ * Recorded {@link SourceLocation}s are only meaningful to the {@link SourceLocationResolver} the parsers used, so
+ * compilers that share a cache should use the same resolver.
+ */
+public class WallsCompileCache {
+	/**
+	 * Identifies the input to parsing an entry.
+	 */
+	public static final class Key {
+		final Path path;
+		final byte[] contentHash;
+		final String fingerprint;
+		final int interests;
+
+		Key(Path path, byte[] contentHash, String fingerprint, int interests) {
+			this.path = path;
+			this.contentHash = contentHash;
+			this.fingerprint = fingerprint;
+			this.interests = interests;
+		}
+
+		boolean sameInput(Key other) {
+			return Arrays.equals(contentHash, other.contentHash) && variant().equals(other.variant());
+		}
+
+		/**
+		 * @return what distinguishes the records of the same path.
+		 */
+		String variant() {
+			return Integer.toHexString(interests) + ':' + fingerprint;
+		}
+	}
+
+	private static final class Record {
+		final Key key;
+		final RecordingWallsVisitor events;
+
+		Record(Key key, RecordingWallsVisitor events) {
+			this.key = key;
+			this.events = events;
+		}
+	}
+
+	/**
+	 * Records by normalized absolute path and {@link Key#variant() variant}, so that a file included with different
+	 * options or compiled for different interests doesn't evict itself.
+	 */
+	private final ConcurrentMap<Path, ConcurrentMap<String, Record>> records = new ConcurrentHashMap<>();
+
+	static byte[] contentHash(Path file) throws IOException {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file));
+		}
+		catch (NoSuchAlgorithmException ex) {
+			// every Java platform is required to support SHA-256
+			throw new RuntimeException(ex);
+		}
+	}
+
+	/**
+	 * @return a string that is the same for two entries if and only if they inherit the same options and segment.
+	 */
+	static String fingerprint(WallsProjectEntry entry) {
+		StringBuilder result = new StringBuilder();
+		for (Segment options : entry.allOptions()) {
+			appendField(result, options.toString());
+		}
+		result.append('\n');
+		for (String segment : entry.segment()) {
+			appendField(result, segment);
+		}
+		return result.toString();
+	}
+
+	private static void appendField(StringBuilder result, String field) {
+		result.append(field.length()).append(':').append(field);
+	}
+
+	/**
+	 * Reads and hashes the entry's file.
+	 */
+	public Key key(WallsProjectEntry entry) throws IOException {
+		return key(entry, WallsVisitor.ALL);
+	}
+
+	/**
+	 * Reads and hashes the entry's file.
+	 *
+	 * @param interests the {@link WallsVisitor#interests() interests} the entry is parsed with
+	 */
+	public Key key(WallsProjectEntry entry, int interests) throws IOException {
+		Path path = entry.absolutePath().toAbsolutePath().normalize();
+		return new Key(path, contentHash(path), fingerprint(entry), interests);
+	}
+
+	/**
+	 * @return the callbacks recorded for the given input, or {@code null} if there are none.
+	 */
+	public RecordingWallsVisitor get(Key key) {
+		ConcurrentMap<String, Record> byVariant = records.get(key.path);
+		Record record = byVariant == null ? null : byVariant.get(key.variant());
+		return record != null && record.key.sameInput(key) ? record.events : null;
+	}
+
+	/**
+	 * Stores the callbacks from successfully parsing the given input. They must not be modified afterward.
+	 */
+	public void put(Key key, RecordingWallsVisitor events) {
+		records.computeIfAbsent(key.path, p -> new ConcurrentHashMap<>()).put(key.variant(), new Record(key, events));
+	}
+
+	public void invalidate(Path path) {
+		records.remove(path.toAbsolutePath().normalize());
+	}
+
+	public void clear() {
+		records.clear();
+	}
+
+	/**
+	 * @return the number of recorded inputs.
+	 */
+	public int size() {
+		int size = 0;
+		for (ConcurrentMap<String, Record> byVariant : records.values()) {
+			size += byVariant.size();
+		}
+		return size;
+	}
+}
@@ -0,0 +1,681 @@
+package org.andork.walls.srv;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.andork.segment.Segment;
+import org.andork.unit.Angle;
+import org.andork.unit.Length;
+import org.andork.unit.Unit;
+import org.andork.unit.UnitType;
+import org.andork.unit.UnitizedDouble;
+import org.andork.walls.WallsMessage;
+import org.andork.walls.srv.RecordingWallsVisitor.Event;
+import org.andork.walls.srv.RecordingWallsVisitor.EventType;
+import org.andork.walls.srv.WallsUnits.Data;
+
+/**
+ * Encodes recorded {@link WallsVisitor} callbacks in a compact binary form. Each call to
+ * {@link #write(List, DataOutputStream)} produces a self-contained block: strings and units snapshots are written
+ * once per block and referred to by index afterward.
+ *
+ * {@link Segment}s are restored with their text, source, line and column. A {@link File} source is restored as a
+ * {@code File}; any other non-null source is restored as its {@code toString()}.
+ *
+ * {@link SourceLocation}s contain source ids that only mean something to the {@link SourceLocationResolver} that
+ * assigned them, so they are written as their source, line and columns (using the writer's resolver), and packed
+ * again with the reader's resolver. Without a resolver on either side, they are restored as
+ * {@link SourceLocation#NONE}.
+ */
+final class WallsEventCodec {
+	private WallsEventCodec() {
+	}
+
+	static final List<Unit<?>> units = Arrays
+		.asList(
+			Length.meters,
+			Length.feet,
+			Length.inches,
+			Angle.degrees,
+			Angle.gradians,
+			Angle.milsNATO,
+			Angle.percentGrade);
+
+	private static final int NULL = 0;
+	private static final int NEW = 1;
+
+	private static final int SOURCE_STRING = 1;
+	private static final int SOURCE_FILE = 2;
+
+	static void writeVarInt(DataOutputStream out, int value) throws IOException {
+		while ((value & ~0x7f) != 0) {
+			out.writeByte((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	static int readVarInt(DataInputStream in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("malformed varint");
+	}
+
+	static void writeUtf8(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(out, bytes.length);
+		out.write(bytes);
+	}
+
+	static String readUtf8(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[readVarInt(in)];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	static void write(List<Event> events, DataOutputStream out) throws IOException {
+		write(events, out, null);
+	}
+
+	/**
+	 * @param sourceLocations the resolver the {@link SourceLocation}s in the events are from, or {@code null} to
+	 *                        leave them out
+	 */
+	static void write(List<Event> events, DataOutputStream out, SourceLocationResolver sourceLocations)
+		throws IOException {
+		new Writer(out, sourceLocations).writeEvents(events);
+	}
+
+	static RecordingWallsVisitor read(DataInputStream in) throws IOException {
+		return read(in, null);
+	}
+
+	/**
+	 * @param sourceLocations the resolver to pack {@link SourceLocation}s with, or {@code null} to restore them as
+	 *                        {@link SourceLocation#NONE}
+	 */
+	static RecordingWallsVisitor read(DataInputStream in, SourceLocationResolver sourceLocations) throws IOException {
+		return new Reader(in, sourceLocations).readEvents();
+	}
+
+	private static final class Writer {
+		final DataOutputStream out;
+		final SourceLocationResolver sourceLocations;
+		final Map<String, Integer> strings = new HashMap<>();
+		final Map<Data, Integer> unitsSnapshots = new IdentityHashMap<>();
+
+		Writer(DataOutputStream out, SourceLocationResolver sourceLocations) {
+			this.out = out;
+			this.sourceLocations = sourceLocations;
+		}
+
+		void writeEvents(List<Event> events) throws IOException {
+			writeVarInt(out, events.size());
+			for (Event event : events) {
+				writeEvent(event);
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		void writeEvent(Event event) throws IOException {
+			out.writeByte(event.type.ordinal());
+			switch (event.type) {
+			case VECTOR:
+				writeVector((Vector) event.arg);
+				break;
+			case FIX_STATION:
+				writeFixedStation((FixedStation) event.arg);
+				break;
+			case COMMENT:
+			case SEGMENT:
+				writeString((String) event.arg);
+				break;
+			case NOTE:
+				writeString((String) event.arg);
+				writeString((String) event.arg2);
+				break;
+			case DATE:
+				writeDate((Date) event.arg);
+				break;
+			case FLAG:
+				writeStrings((List<String>) event.arg);
+				writeString((String) event.arg2);
+				break;
+			case MESSAGE:
+				writeMessage((WallsMessage) event.arg);
+				break;
+			case WILL_PARSE_UNITS:
+			case PARSED_UNITS:
+				break;
+			}
+		}
+
+		void writeString(String s) throws IOException {
+			if (s == null) {
+				writeVarInt(out, NULL);
+				return;
+			}
+			Integer index = strings.get(s);
+			if (index != null) {
+				writeVarInt(out, index + 2);
+				return;
+			}
+			strings.put(s, strings.size());
+			writeVarInt(out, NEW);
+			writeUtf8(out, s);
+		}
+
+		void writeStrings(List<String> list) throws IOException {
+			if (list == null) {
+				writeVarInt(out, 0);
+				return;
+			}
+			writeVarInt(out, list.size() + 1);
+			for (String s : list) {
+				writeString(s);
+			}
+		}
+
+		void writeDate(Date date) throws IOException {
+			out.writeBoolean(date != null);
+			if (date != null) {
+				out.writeLong(date.getTime());
+			}
+		}
+
+		void writeUnit(Unit<?> unit) throws IOException {
+			int index = units.indexOf(unit);
+			if (index < 0) {
+				throw new IOException("unsupported unit: " + unit);
+			}
+			out.writeByte(index);
+		}
+
+		<T extends UnitType<T>> void writeUnitized(UnitizedDouble<T> value) throws IOException {
+			if (value == null) {
+				out.writeByte(-1);
+				return;
+			}
+			writeUnit(value.unit);
+			out.writeDouble(value.get(value.unit));
+		}
+
+		void writeEnums(List<? extends Enum<?>> list) throws IOException {
+			writeVarInt(out, list.size());
+			for (Enum<?> e : list) {
+				out.writeByte(e.ordinal());
+			}
+		}
+
+		void writeEnum(Enum<?> e) throws IOException {
+			out.writeByte(e == null ? -1 : e.ordinal());
+		}
+
+		void writeSegment(Segment segment) throws IOException {
+			if (segment == null) {
+				out.writeByte(NULL);
+				return;
+			}
+			writeSource(segment.source);
+			writeString(segment.toString());
+			writeVarInt(out, segment.startLine);
+			writeVarInt(out, segment.startCol);
+		}
+
+		void writeSource(Object source) throws IOException {
+			out.writeByte(source == null ? NEW : source instanceof File ? SOURCE_FILE + 1 : SOURCE_STRING + 1);
+			if (source != null) {
+				writeString(source instanceof File ? ((File) source).getPath() : source.toString());
+			}
+		}
+
+		void writeLocation(long location) throws IOException {
+			Object source = location == SourceLocation.NONE || sourceLocations == null
+				? null
+				: sourceLocations.source(SourceLocation.sourceId(location));
+			if (source == null) {
+				out.writeByte(NULL);
+				return;
+			}
+			writeSource(source);
+			writeVarInt(out, SourceLocation.line(location));
+			writeVarInt(out, SourceLocation.startCol(location));
+			writeVarInt(out, SourceLocation.endCol(location));
+		}
+
+		void writeVarianceOverride(VarianceOverride override) throws IOException {
+			if (override == null) {
+				out.writeByte(0);
+			}
+			else if (override == VarianceOverride.FLOATED) {
+				out.writeByte(1);
+			}
+			else if (override == VarianceOverride.FLOATED_TRAVERSE) {
+				out.writeByte(2);
+			}
+			else if (override instanceof VarianceOverride.Length) {
+				out.writeByte(3);
+				writeUnitized(((VarianceOverride.Length) override).lengthOverride);
+			}
+			else if (override instanceof VarianceOverride.RMSError) {
+				out.writeByte(4);
+				writeUnitized(((VarianceOverride.RMSError) override).error);
+			}
+			else {
+				throw new IOException("unsupported variance override: " + override);
+			}
+		}
+
+		void writeUnits(WallsUnits wallsUnits) throws IOException {
+			if (wallsUnits == null) {
+				writeVarInt(out, NULL);
+				return;
+			}
+			Data data = wallsUnits.data();
+			Integer index = unitsSnapshots.get(data);
+			if (index != null) {
+				writeVarInt(out, index + 2);
+				return;
+			}
+			unitsSnapshots.put(data, unitsSnapshots.size());
+			writeVarInt(out, NEW);
+			writeEnum(data.vectorType);
+			writeEnums(data.ctOrder);
+			writeEnums(data.rectOrder);
+			writeUnit(data.dUnit);
+			writeUnit(data.sUnit);
+			writeUnit(data.aUnit);
+			writeUnit(data.abUnit);
+			writeUnit(data.vUnit);
+			writeUnit(data.vbUnit);
+			writeUnitized(data.decl);
+			writeUnitized(data.grid);
+			writeUnitized(data.rect);
+			writeUnitized(data.incd);
+			writeUnitized(data.inca);
+			writeUnitized(data.incab);
+			writeUnitized(data.incv);
+			writeUnitized(data.incvb);
+			writeUnitized(data.incs);
+			writeUnitized(data.inch);
+			out.writeBoolean(data.typeabCorrected);
+			writeUnitized(data.typeabTolerance);
+			out.writeBoolean(data.typeabNoAverage);
+			out.writeBoolean(data.typevbCorrected);
+			writeUnitized(data.typevbTolerance);
+			out.writeBoolean(data.typevbNoAverage);
+			writeEnum(data.case_);
+			writeEnum(data.lrud);
+			writeEnums(data.lrudOrder);
+			writeEnums(data.tape);
+			writeString(data.flag);
+			writeStrings(data.prefix);
+			out.writeDouble(data.uvh);
+			out.writeDouble(data.uvv);
+		}
+
+		void writeVector(Vector v) throws IOException {
+			writeSegment(v.sourceSegment);
+			writeLocation(v.sourceLocation);
+			writeString(v.from);
+			writeString(v.to);
+			writeUnitized(v.distance);
+			writeUnitized(v.frontsightAzimuth);
+			writeUnitized(v.backsightAzimuth);
+			writeUnitized(v.frontsightInclination);
+			writeUnitized(v.backsightInclination);
+			writeUnitized(v.targetHeight);
+			writeUnitized(v.instrumentHeight);
+			writeUnitized(v.north);
+			writeUnitized(v.east);
+			writeUnitized(v.elevation);
+			writeVarianceOverride(v.horizontalVariance);
+			writeVarianceOverride(v.verticalVariance);
+			writeUnitized(v.left);
+			writeUnitized(v.right);
+			writeUnitized(v.up);
+			writeUnitized(v.down);
+			writeUnitized(v.lrudFacingAzimuth);
+			out.writeBoolean(v.cFlag);
+			writeStrings(v.segment);
+			writeString(v.comment);
+			writeDate(v.date);
+			writeUnits(v.units);
+		}
+
+		void writeFixedStation(FixedStation s) throws IOException {
+			writeString(s.name);
+			writeUnitized(s.north);
+			writeUnitized(s.east);
+			writeUnitized(s.elevation);
+			writeUnitized(s.latitude);
+			writeUnitized(s.longitude);
+			writeVarianceOverride(s.horizontalVariance);
+			writeVarianceOverride(s.verticalVariance);
+			writeString(s.note);
+			writeStrings(s.segment);
+			writeString(s.comment);
+			writeDate(s.date);
+			writeUnits(s.units);
+		}
+
+		void writeMessage(WallsMessage message) throws IOException {
+			writeString(message.severity);
+			writeString(message.message);
+			writeSegment(message.segment);
+			writeLocation(message.location);
+		}
+	}
+
+	private static final class Reader {
+		final DataInputStream in;
+		final SourceLocationResolver sourceLocations;
+		final List<String> strings = new ArrayList<>();
+		final List<WallsUnits> unitsSnapshots = new ArrayList<>();
+		final Map<String, File> files = new HashMap<>();
+
+		Reader(DataInputStream in, SourceLocationResolver sourceLocations) {
+			this.in = in;
+			this.sourceLocations = sourceLocations;
+		}
+
+		RecordingWallsVisitor readEvents() throws IOException {
+			RecordingWallsVisitor result = new RecordingWallsVisitor();
+			int count = readVarInt(in);
+			EventType[] types = EventType.values();
+			for (int i = 0; i < count; i++) {
+				int type = in.readUnsignedByte();
+				if (type >= types.length) {
+					throw new IOException("invalid event type: " + type);
+				}
+				readEvent(types[type], result);
+			}
+			return result;
+		}
+
+		void readEvent(EventType type, RecordingWallsVisitor result) throws IOException {
+			switch (type) {
+			case VECTOR:
+				result.record(type, readVector(), null);
+				break;
+			case FIX_STATION:
+				result.record(type, readFixedStation(), null);
+				break;
+			case COMMENT:
+			case SEGMENT:
+				result.record(type, readString(), null);
+				break;
+			case NOTE:
+				result.record(type, readString(), readString());
+				break;
+			case DATE:
+				result.record(type, readDate(), null);
+				break;
+			case FLAG:
+				result.record(type, readStrings(), readString());
+				break;
+			case MESSAGE:
+				result.record(type, readMessage(), null);
+				break;
+			case WILL_PARSE_UNITS:
+			case PARSED_UNITS:
+				result.record(type, null, null);
+				break;
+			}
+		}
+
+		String readString() throws IOException {
+			int code = readVarInt(in);
+			if (code == NULL) {
+				return null;
+			}
+			if (code == NEW) {
+				String s = readUtf8(in);
+				strings.add(s);
+				return s;
+			}
+			if (code - 2 >= strings.size()) {
+				throw new IOException("invalid string reference: " + code);
+			}
+			return strings.get(code - 2);
+		}
+
+		List<String> readStrings() throws IOException {
+			int size = readVarInt(in) - 1;
+			if (size < 0) {
+				return null;
+			}
+			List<String> list = new ArrayList<>(size);
+			for (int i = 0; i < size; i++) {
+				list.add(readString());
+			}
+			return list;
+		}
+
+		Date readDate() throws IOException {
+			return in.readBoolean() ? new Date(in.readLong()) : null;
+		}
+
+		@SuppressWarnings("unchecked")
+		<T extends UnitType<T>> Unit<T> readUnit() throws IOException {
+			int index = in.readUnsignedByte();
+			if (index >= units.size()) {
+				throw new IOException("invalid unit: " + index);
+			}
+			return (Unit<T>) units.get(index);
+		}
+
+		<T extends UnitType<T>> UnitizedDouble<T> readUnitized() throws IOException {
+			int index = in.readByte();
+			if (index < 0) {
+				return null;
+			}
+			if (index >= units.size()) {
+				throw new IOException("invalid unit: " + index);
+			}
+			@SuppressWarnings("unchecked")
+			Unit<T> unit = (Unit<T>) units.get(index);
+			return new UnitizedDouble<T>(in.readDouble(), unit);
+		}
+
+		<E extends Enum<E>> E readEnum(E[] values) throws IOException {
+			int ordinal = in.readByte();
+			if (ordinal >= values.length) {
+				throw new IOException("invalid ordinal: " + ordinal);
+			}
+			return ordinal < 0 ? null : values[ordinal];
+		}
+
+		<E extends Enum<E>> List<E> readEnums(E[] values) throws IOException {
+			int size = readVarInt(in);
+			List<E> list = new ArrayList<>(size);
+			for (int i = 0; i < size; i++) {
+				list.add(readEnum(values));
+			}
+			return list;
+		}
+
+		Segment readSegment() throws IOException {
+			int sourceType = in.readUnsignedByte();
+			if (sourceType == NULL) {
+				return null;
+			}
+			Object source = readSource(sourceType);
+			String value = readString();
+			int startLine = readVarInt(in);
+			int startCol = readVarInt(in);
+			return new Segment(value, source, startLine, startCol);
+		}
+
+		Object readSource(int sourceType) throws IOException {
+			Object source = null;
+			if (sourceType == SOURCE_FILE + 1) {
+				source = files.computeIfAbsent(readString(), File::new);
+			}
+			else if (sourceType == SOURCE_STRING + 1) {
+				source = readString();
+			}
+			else if (sourceType != NEW) {
+				throw new IOException("invalid source type: " + sourceType);
+			}
+			return source;
+		}
+
+		long readLocation() throws IOException {
+			int sourceType = in.readUnsignedByte();
+			if (sourceType == NULL) {
+				return SourceLocation.NONE;
+			}
+			Object source = readSource(sourceType);
+			int line = readVarInt(in);
+			int startCol = readVarInt(in);
+			int endCol = readVarInt(in);
+			if (source == null || line < 0 || startCol < 0 || endCol < startCol) {
+				throw new IOException("invalid source location");
+			}
+			return sourceLocations == null
+				? SourceLocation.NONE
+				: SourceLocation.pack(sourceLocations.sourceId(source), line, startCol, endCol);
+		}
+
+		VarianceOverride readVarianceOverride() throws IOException {
+			int type = in.readUnsignedByte();
+			switch (type) {
+			case 0:
+				return null;
+			case 1:
+				return VarianceOverride.FLOATED;
+			case 2:
+				return VarianceOverride.FLOATED_TRAVERSE;
+			case 3:
+				return new VarianceOverride.Length(readUnitized());
+			case 4:
+				return new VarianceOverride.RMSError(readUnitized());
+			default:
+				throw new IOException("invalid variance override type: " + type);
+			}
+		}
+
+		WallsUnits readUnits() throws IOException {
+			int code = readVarInt(in);
+			if (code == NULL) {
+				return null;
+			}
+			if (code != NEW) {
+				if (code - 2 >= unitsSnapshots.size()) {
+					throw new IOException("invalid units reference: " + code);
+				}
+				return unitsSnapshots.get(code - 2);
+			}
+			Data data = new Data();
+			data.vectorType = readEnum(VectorType.values());
+			data.ctOrder = readEnums(CtMeasurement.values());
+			data.rectOrder = readEnums(RectMeasurement.values());
+			data.dUnit = readUnit();
+			data.sUnit = readUnit();
+			data.aUnit = readUnit();
+			data.abUnit = readUnit();
+			data.vUnit = readUnit();
+			data.vbUnit = readUnit();
+			data.decl = readUnitized();
+			data.grid = readUnitized();
+			data.rect = readUnitized();
+			data.incd = readUnitized();
+			data.inca = readUnitized();
+			data.incab = readUnitized();
+			data.incv = readUnitized();
+			data.incvb = readUnitized();
+			data.incs = readUnitized();
+			data.inch = readUnitized();
+			data.typeabCorrected = in.readBoolean();
+			data.typeabTolerance = readUnitized();
+			data.typeabNoAverage = in.readBoolean();
+			data.typevbCorrected = in.readBoolean();
+			data.typevbTolerance = readUnitized();
+			data.typevbNoAverage = in.readBoolean();
+			data.case_ = readEnum(CaseType.values());
+			data.lrud = readEnum(LrudType.values());
+			data.lrudOrder = readEnums(LrudMeasurement.values());
+			data.tape = readEnums(TapingMethodMeasurement.values());
+			data.flag = readString();
+			data.prefix = readStrings();
+			data.uvh = in.readDouble();
+			data.uvv = in.readDouble();
+			WallsUnits result = WallsUnits.intern(data);
+			unitsSnapshots.add(result);
+			return result;
+		}
+
+		Vector readVector() throws IOException {
+			Vector v = new Vector();
+			v.sourceSegment = readSegment();
+			v.sourceLocation = readLocation();
+			v.from = readString();
+			v.to = readString();
+			v.distance = readUnitized();
+			v.frontsightAzimuth = readUnitized();
+			v.backsightAzimuth = readUnitized();
+			v.frontsightInclination = readUnitized();
+			v.backsightInclination = readUnitized();
+			v.targetHeight = readUnitized();
+			v.instrumentHeight = readUnitized();
+			v.north = readUnitized();
+			v.east = readUnitized();
+			v.elevation = readUnitized();
+			v.horizontalVariance = readVarianceOverride();
+			v.verticalVariance = readVarianceOverride();
+			v.left = readUnitized();
+			v.right = readUnitized();
+			v.up = readUnitized();
+			v.down = readUnitized();
+			v.lrudFacingAzimuth = readUnitized();
+			v.cFlag = in.readBoolean();
+			v.segment = SegmentPath.of(readStrings());
+			v.comment = readString();
+			v.date = readDate();
+			v.units = readUnits();
+			return v;
+		}
+
+		FixedStation readFixedStation() throws IOException {
+			FixedStation s = new FixedStation();
+			s.name = readString();
+			s.north = readUnitized();
+			s.east = readUnitized();
+			s.elevation = readUnitized();
+			s.latitude = readUnitized();
+			s.longitude = readUnitized();
+			s.horizontalVariance = readVarianceOverride();
+			s.verticalVariance = readVarianceOverride();
+			s.note = readString();
+			s.segment = SegmentPath.of(readStrings());
+			s.comment = readString();
+			s.date = readDate();
+			s.units = readUnits();
+			return s;
+		}
+
+		WallsMessage readMessage() throws IOException {
+			String severity = readString();
+			String message = readString();
+			Segment segment = readSegment();
+			return new WallsMessage(severity, message, segment, readLocation());
+		}
+	}
+}
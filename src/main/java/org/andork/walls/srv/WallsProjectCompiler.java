@@ -0,0 +1,252 @@
+package org.andork.walls.srv;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.function.Function;
+
+import org.andork.segment.SegmentParseException;
+import org.andork.walls.wpj.WallsProjectBook;
+import org.andork.walls.wpj.WallsProjectEntry;
+
+/**
+ * Parses all of the survey entries in a project concurrently, with one {@link WallsSurveyParser} per entry, and
+ * delivers their callbacks to the visitor on the calling thread in project order, exactly as if the entries had been
+ * passed to {@link WallsSurveyParser#parseSurveyEntry(WallsProjectEntry)} one by one.
+ *
+ * At most {@code maxPending} entries are parsed ahead of the one being delivered, to bound the memory used by the
+ * recorded callbacks.
+ */
+public class WallsProjectCompiler {
+	private final Executor executor;
+	private final int maxPending;
+	private volatile WallsCompileCache cache;
+
+	/**
+	 * Creates a compiler that uses the common {@link ForkJoinPool}. {@link #compile} may be called from a task in the
+	 * pool: it waits for entries with {@link ForkJoinPool#managedBlock}, so the pool can add threads to parse them.
+	 */
+	public WallsProjectCompiler() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	public WallsProjectCompiler(Executor executor) {
+		this(executor, Math.max(2, Runtime.getRuntime().availableProcessors() * 4));
+	}
+
+	public WallsProjectCompiler(Executor executor, int maxPending) {
+		if (maxPending < 1) {
+			throw new IllegalArgumentException("maxPending must be >= 1");
+		}
+		this.executor = executor;
+		this.maxPending = maxPending;
+	}
+
+	/**
+	 * Sets the cache to replay unchanged entries from, or {@code null} to parse every entry. When a cache is set,
+	 * visitors receive copies of the recorded {@link Vector}s, {@link FixedStation}s, etc.
+	 */
+	public void setCache(WallsCompileCache cache) {
+		this.cache = cache;
+	}
+
+	public WallsCompileCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * @return the survey entries under (and including) {@code root}, in project order.
+	 */
+	public static List<WallsProjectEntry> surveyEntries(WallsProjectEntry root) {
+		List<WallsProjectEntry> result = new ArrayList<>();
+		addSurveyEntries(root, result);
+		return result;
+	}
+
+	private static void addSurveyEntries(WallsProjectEntry entry, List<WallsProjectEntry> result) {
+		if (entry.isSurvey()) {
+			result.add(entry);
+		}
+		if (entry instanceof WallsProjectBook) {
+			for (WallsProjectEntry child : ((WallsProjectBook) entry).children()) {
+				addSurveyEntries(child, result);
+			}
+		}
+	}
+
+	/**
+	 * Creates the parser for an entry. May be called concurrently. Since the parsed vectors are recorded, vector
+	 * reuse ({@link WallsSurveyParser#setReuseVectors(boolean)}) is turned off on the returned parser.
+	 */
+	protected WallsSurveyParser createParser(WallsProjectEntry entry) {
+		return new WallsSurveyParser();
+	}
+
+	RecordingWallsVisitor parse(WallsProjectEntry entry, WallsCompileCache cache, int interests) throws Exception {
+		WallsCompileCache.Key key = null;
+		if (cache != null) {
+			key = cache.key(entry, interests);
+			RecordingWallsVisitor cached = cache.get(key);
+			if (cached != null) {
+				return cached;
+			}
+		}
+		RecordingWallsVisitor recorder = new RecordingWallsVisitor(interests);
+		WallsSurveyParser parser = createParser(entry);
+		parser.setReuseVectors(false);
+		parser.setVisitor(recorder);
+		try {
+			parser.parseSurveyEntry(entry);
+		}
+		catch (Exception ex) {
+			throw new EntryFailedException(recorder, ex);
+		}
+		if (cache != null) {
+			cache.put(key, recorder);
+		}
+		return recorder;
+	}
+
+	/**
+	 * Carries the callbacks recorded before an entry failed, so they can be delivered before the failure is rethrown.
+	 */
+	private static class EntryFailedException extends Exception {
+		private static final long serialVersionUID = -1981357452127366044L;
+
+		final RecordingWallsVisitor recorder;
+
+		EntryFailedException(RecordingWallsVisitor recorder, Exception cause) {
+			super(cause);
+			this.recorder = recorder;
+		}
+	}
+
+	/**
+	 * Parses all survey entries under (and including) {@code root} with the {@link WallsVisitor#interests()
+	 * interests} of {@code visitor}, and delivers their callbacks to it.
+	 */
+	public void compile(WallsProjectEntry root, WallsVisitor visitor) throws IOException, SegmentParseException {
+		compile(root, visitor.interests(), entry -> visitor);
+	}
+
+	/**
+	 * Like {@link #compile(WallsProjectEntry, int, Function)}, with interest in everything.
+	 */
+	public void compile(
+		WallsProjectEntry root,
+		Function<? super WallsProjectEntry, ? extends WallsVisitor> visitorForEntry)
+		throws IOException, SegmentParseException {
+		compile(root, WallsVisitor.ALL, visitorForEntry);
+	}
+
+	/**
+	 * Parses all survey entries under (and including) {@code root}. Each entry's callbacks are delivered to the
+	 * visitor {@code visitorForEntry} returns for it; {@code visitorForEntry} is called on the calling thread, in
+	 * project order, right before the entry's callbacks are delivered.
+	 *
+	 * If an entry fails to parse, its callbacks up to the failure are delivered, the remaining entries are cancelled
+	 * and the exception is rethrown.
+	 *
+	 * @param interests the {@link WallsVisitor#interests() interests} to parse the entries with, since they are
+	 *                  parsed before their visitors are known. The visitors must not need anything else.
+	 */
+	public void compile(
+		WallsProjectEntry root,
+		int interests,
+		Function<? super WallsProjectEntry, ? extends WallsVisitor> visitorForEntry)
+		throws IOException, SegmentParseException {
+		WallsCompileCache cache = this.cache;
+		List<WallsProjectEntry> entries = surveyEntries(root);
+		Deque<Future<RecordingWallsVisitor>> pending = new ArrayDeque<>();
+		int submitted = 0;
+		try {
+			for (WallsProjectEntry entry : entries) {
+				while (submitted < entries.size() && pending.size() < maxPending) {
+					WallsProjectEntry next = entries.get(submitted++);
+					FutureTask<RecordingWallsVisitor> task = new FutureTask<>(() -> parse(next, cache, interests));
+					executor.execute(task);
+					pending.add(task);
+				}
+				WallsVisitor visitor = visitorForEntry.apply(entry);
+				try {
+					RecordingWallsVisitor recorder = await(pending.remove());
+					if (cache != null) {
+						recorder.replayCopies(visitor);
+					}
+					else {
+						recorder.replay(visitor);
+					}
+				}
+				catch (ExecutionException ex) {
+					Throwable cause = ex.getCause();
+					if (cause instanceof EntryFailedException) {
+						((EntryFailedException) cause).recorder.replay(visitor);
+						cause = cause.getCause();
+					}
+					rethrow(cause);
+				}
+			}
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while compiling project");
+		}
+		finally {
+			for (Future<?> future : pending) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * Waits for the future like {@link Future#get()}, but lets a {@link ForkJoinPool} that the calling thread belongs
+	 * to compensate for the blocked thread, so that the entries can't deadlock waiting for a free worker.
+	 */
+	private static <T> T await(Future<T> future) throws InterruptedException, ExecutionException {
+		if (!future.isDone()) {
+			ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+				@Override
+				public boolean block() throws InterruptedException {
+					try {
+						future.get();
+					}
+					catch (ExecutionException | CancellationException ex) {
+						// rethrown by the get() below
+					}
+					return true;
+				}
+
+				@Override
+				public boolean isReleasable() {
+					return future.isDone();
+				}
+			});
+		}
+		return future.get();
+	}
+
+	private static void rethrow(Throwable cause) throws IOException, SegmentParseException {
+		if (cause instanceof IOException) {
+			throw (IOException) cause;
+		}
+		if (cause instanceof SegmentParseException) {
+			throw (SegmentParseException) cause;
+		}
+		if (cause instanceof RuntimeException) {
+			throw (RuntimeException) cause;
+		}
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		throw new RuntimeException(cause);
+	}
+}
@@ -0,0 +1,325 @@
+package org.andork.walls.srv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.andork.walls.wpj.WallsProjectEntry;
+
+/**
+ * Saves the parsed callbacks of a project's survey entries to a compact binary file, so that a later process can
+ * restore them without reparsing.
+ *
+ * The file starts with a magic number and a format version. Each survey entry follows as a record with the entry's
+ * path, the SHA-256 hash of its contents, its {@link WallsCompileCache#fingerprint(WallsProjectEntry) fingerprint},
+ * the {@link WallsVisitor#interests() interests} it was parsed with and a CRC32-checked block of callbacks encoded by
+ * {@link WallsEventCodec}. Records are only used while the path, hash and fingerprint still match the entry and the
+ * interests match the visitor, so the snapshot is ignored for any entry that has changed (or been deleted) since. A truncated or malformed snapshot is treated like one with an unsupported version.
+ *
+ * {@link SourceLocation}s are stored by source path, line and columns, and are packed again with the reader's
+ * {@link SourceLocationResolver}, since source ids are only meaningful to the resolver that assigned them. The
+ * overloads without a resolver leave them out.
+ */
+public class WallsSnapshot {
+	static final int MAGIC = 0x57534e50; // "WSNP"
+	static final int VERSION = 4;
+
+	/**
+	 * How many bytes of a length-prefixed field are allocated before they are read, so that a corrupt length can't
+	 * allocate more memory than the stream actually has.
+	 */
+	private static final int READ_CHUNK_SIZE = 1 << 16;
+
+	private WallsSnapshot() {
+	}
+
+	private static final class Record {
+		final WallsCompileCache.Key key;
+		final byte[] block;
+		final int crc;
+
+		Record(WallsCompileCache.Key key, byte[] block, int crc) {
+			this.key = key;
+			this.block = block;
+			this.crc = crc;
+		}
+
+		boolean isIntact() {
+			return crc(block) == crc;
+		}
+
+		RecordingWallsVisitor decode(SourceLocationResolver sourceLocations) throws IOException {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(block));
+			RecordingWallsVisitor result = WallsEventCodec.read(in, sourceLocations);
+			if (in.read() >= 0) {
+				throw new IOException("trailing data in record for " + key.path);
+			}
+			return result;
+		}
+
+		/**
+		 * @return the decoded callbacks, or {@code null} if the block is malformed.
+		 */
+		RecordingWallsVisitor decodeOrNull(SourceLocationResolver sourceLocations) {
+			try {
+				return decode(sourceLocations);
+			}
+			catch (IOException | RuntimeException ex) {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Reads {@code length} bytes, allocating as they arrive rather than all at once.
+	 */
+	static byte[] readBytes(DataInputStream in, int length) throws IOException {
+		if (length < 0) {
+			throw new IOException("invalid length: " + length);
+		}
+		byte[] result = new byte[Math.min(length, READ_CHUNK_SIZE)];
+		int read = 0;
+		while (read < length) {
+			if (read == result.length) {
+				result = Arrays.copyOf(result, (int) Math.min(length, result.length * 2L));
+			}
+			in.readFully(result, read, result.length - read);
+			read = result.length;
+		}
+		return result;
+	}
+
+	private static String readUtf8(DataInputStream in) throws IOException {
+		return new String(readBytes(in, WallsEventCodec.readVarInt(in)), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return the current key of the entry, or {@code null} if its file can't be read (e.g. it has been deleted).
+	 */
+	private static WallsCompileCache.Key currentKey(WallsProjectEntry entry, WallsCompileCache cache, int interests) {
+		try {
+			return cache.key(entry, interests);
+		}
+		catch (IOException ex) {
+			return null;
+		}
+	}
+
+	static int crc(byte[] block) {
+		CRC32 crc = new CRC32();
+		crc.update(block);
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * Writes the callbacks {@code cache} has for the survey entries under (and including) {@code root}, in project
+	 * order. Entries that aren't in the cache or have changed since they were cached are left out.
+	 *
+	 * @return the number of entries written.
+	 */
+	public static int write(OutputStream out, WallsProjectEntry root, WallsCompileCache cache) throws IOException {
+		return write(out, root, cache, null);
+	}
+
+	/**
+	 * Like {@link #write(OutputStream, WallsProjectEntry, WallsCompileCache)}, but also writes the source locations
+	 * of the callbacks.
+	 *
+	 * @param sourceLocations the resolver the cached source locations are from, or {@code null} to leave them out
+	 */
+	public static int write(
+		OutputStream out,
+		WallsProjectEntry root,
+		WallsCompileCache cache,
+		SourceLocationResolver sourceLocations)
+		throws IOException {
+		return write(out, root, cache, WallsVisitor.ALL, sourceLocations);
+	}
+
+	/**
+	 * Like {@link #write(OutputStream, WallsProjectEntry, WallsCompileCache, SourceLocationResolver)}, but writes the
+	 * callbacks cached for the given {@link WallsVisitor#interests() interests}.
+	 */
+	public static int write(
+		OutputStream out,
+		WallsProjectEntry root,
+		WallsCompileCache cache,
+		int interests,
+		SourceLocationResolver sourceLocations)
+		throws IOException {
+		List<WallsCompileCache.Key> keys = new ArrayList<>();
+		List<RecordingWallsVisitor> recorded = new ArrayList<>();
+		for (WallsProjectEntry entry : WallsProjectCompiler.surveyEntries(root)) {
+			WallsCompileCache.Key key = currentKey(entry, cache, interests);
+			RecordingWallsVisitor events = key == null ? null : cache.get(key);
+			if (events != null) {
+				keys.add(key);
+				recorded.add(events);
+			}
+		}
+
+		DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(out));
+		dataOut.writeInt(MAGIC);
+		dataOut.writeInt(VERSION);
+		WallsEventCodec.writeVarInt(dataOut, keys.size());
+
+		ByteArrayOutputStream blockBytes = new ByteArrayOutputStream();
+		for (int i = 0; i < keys.size(); i++) {
+			WallsCompileCache.Key key = keys.get(i);
+			blockBytes.reset();
+			DataOutputStream blockOut = new DataOutputStream(blockBytes);
+			WallsEventCodec.write(recorded.get(i).events(), blockOut, sourceLocations);
+			blockOut.flush();
+			byte[] block = blockBytes.toByteArray();
+
+			WallsEventCodec.writeUtf8(dataOut, key.path.toString());
+			WallsEventCodec.writeVarInt(dataOut, key.contentHash.length);
+			dataOut.write(key.contentHash);
+			WallsEventCodec.writeUtf8(dataOut, key.fingerprint);
+			dataOut.writeInt(key.interests);
+			WallsEventCodec.writeVarInt(dataOut, block.length);
+			dataOut.writeInt(crc(block));
+			dataOut.write(block);
+		}
+		dataOut.flush();
+		return keys.size();
+	}
+
+	/**
+	 * @return the records in the snapshot, or {@code null} if it has the wrong magic number or version, or can't be
+	 *         read (e.g. because it's truncated).
+	 */
+	private static List<Record> readRecords(InputStream in) {
+		DataInputStream dataIn = new DataInputStream(new BufferedInputStream(in));
+		try {
+			if (dataIn.readInt() != MAGIC || dataIn.readInt() != VERSION) {
+				return null;
+			}
+			int count = WallsEventCodec.readVarInt(dataIn);
+			List<Record> records = new ArrayList<>();
+			for (int i = 0; i < count; i++) {
+				Path path = Paths.get(readUtf8(dataIn));
+				byte[] contentHash = readBytes(dataIn, WallsEventCodec.readVarInt(dataIn));
+				String fingerprint = readUtf8(dataIn);
+				int interests = dataIn.readInt();
+				int blockLength = WallsEventCodec.readVarInt(dataIn);
+				int crc = dataIn.readInt();
+				byte[] block = readBytes(dataIn, blockLength);
+				WallsCompileCache.Key key = new WallsCompileCache.Key(path, contentHash, fingerprint, interests);
+				records.add(new Record(key, block, crc));
+			}
+			return records;
+		}
+		catch (IOException | InvalidPathException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Loads the records in a snapshot into {@code cache}. Records that fail their checksum are skipped; records for
+	 * entries that have changed since are loaded, but {@link WallsCompileCache#get(WallsCompileCache.Key)} won't
+	 * return them.
+	 *
+	 * @return the number of records loaded, or 0 if the snapshot has an unsupported format version.
+	 */
+	public static int read(InputStream in, WallsCompileCache cache) throws IOException {
+		return read(in, cache, null);
+	}
+
+	/**
+	 * Like {@link #read(InputStream, WallsCompileCache)}, but packs the stored source locations with the given
+	 * resolver (or restores them as {@link SourceLocation#NONE} if it's {@code null}).
+	 */
+	public static int read(InputStream in, WallsCompileCache cache, SourceLocationResolver sourceLocations)
+		throws IOException {
+		List<Record> records = readRecords(in);
+		if (records == null) {
+			return 0;
+		}
+		int loaded = 0;
+		for (Record record : records) {
+			RecordingWallsVisitor events = record.isIntact() ? record.decodeOrNull(sourceLocations) : null;
+			if (events != null) {
+				cache.put(record.key, events);
+				loaded++;
+			}
+		}
+		return loaded;
+	}
+
+	/**
+	 * Delivers the callbacks in a snapshot of {@code root} to {@code visitor}, exactly as
+	 * {@link WallsProjectCompiler#compile(WallsProjectEntry, WallsVisitor)} would, as long as the snapshot covers
+	 * every survey entry, none of them have changed since it was written, and it was written for the visitor's
+	 * {@link WallsVisitor#interests() interests}. Otherwise nothing is delivered.
+	 *
+	 * @return whether the callbacks were delivered.
+	 */
+	public static boolean replay(InputStream in, WallsProjectEntry root, WallsVisitor visitor) throws IOException {
+		return replay(in, root, visitor, null);
+	}
+
+	/**
+	 * Like {@link #replay(InputStream, WallsProjectEntry, WallsVisitor)}, but packs the stored source locations with
+	 * the given resolver (or restores them as {@link SourceLocation#NONE} if it's {@code null}).
+	 */
+	public static boolean replay(
+		InputStream in,
+		WallsProjectEntry root,
+		WallsVisitor visitor,
+		SourceLocationResolver sourceLocations)
+		throws IOException {
+		List<Record> records = readRecords(in);
+		List<WallsProjectEntry> entries = WallsProjectCompiler.surveyEntries(root);
+		if (records == null || records.size() != entries.size()) {
+			return false;
+		}
+		List<RecordingWallsVisitor> recorded = new ArrayList<>(records.size());
+		for (int i = 0; i < records.size(); i++) {
+			Record record = records.get(i);
+			WallsProjectEntry entry = entries.get(i);
+			if (!record.key.path.equals(entry.absolutePath()) || !record.isIntact()) {
+				return false;
+			}
+			byte[] contentHash;
+			try {
+				contentHash = WallsCompileCache.contentHash(record.key.path);
+			}
+			catch (IOException ex) {
+				// e.g. the file has been deleted
+				return false;
+			}
+			WallsCompileCache.Key current = new WallsCompileCache.Key(
+				record.key.path,
+				contentHash,
+				WallsCompileCache.fingerprint(entry),
+				visitor.interests());
+			if (!record.key.sameInput(current)) {
+				return false;
+			}
+			RecordingWallsVisitor events = record.decodeOrNull(sourceLocations);
+			if (events == null) {
+				return false;
+			}
+			recorded.add(events);
+		}
+		for (RecordingWallsVisitor events : recorded) {
+			events.replay(visitor);
+		}
+		return true;
+	}
+}
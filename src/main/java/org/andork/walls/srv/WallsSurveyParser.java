@@ -1,12 +1,7 @@
 package org.andork.walls.srv;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -29,6 +24,8 @@ import org.andork.unit.Length;
 import org.andork.unit.Unit;
 import org.andork.unit.UnitType;
 import org.andork.unit.UnitizedDouble;
+import org.andork.walls.CharMap;
+import org.andork.walls.KeywordMap;
 import org.andork.walls.LineParser;
 import org.andork.walls.Optional;
 import org.andork.walls.SegmentParseExpectedException;
@@ -43,6 +40,11 @@ public class WallsSurveyParser extends LineParser {
 	boolean inBlockComment;
 	final List<String> segment = new ArrayList<>();
 	final List<String> rootSegment = new ArrayList<>();
+	/**
+	 * The interned path of {@link #segment}, as of the last call to {@link #currentSegment()}.
+	 */
+	private SegmentPath segmentNode = SegmentPath.ROOT;
+	private SourceLocationResolver sourceLocations;
 	Date date;
 
 	Segment fromStationSegment;
@@ -51,8 +53,21 @@ public class WallsSurveyParser extends LineParser {
 	Segment incSegment;
 
 	Vector vector;
+	/**
+	 * The {@link WallsVisitor#interests() interests} of the {@link #visitor}.
+	 */
+	private int interests = WallsVisitor.ALL;
+	/**
+	 * The instance {@link #newVector()} reuses, or {@code null} if it allocates a new one each time.
+	 */
+	private Vector reusableVector;
 	FixedStation fixStation;
 
+	/**
+	 * Whether to try {@link #fastVectorLine()} before the full grammar.
+	 */
+	boolean fastVectorLines = true;
+
 	Character escapedChar(Predicate<Character> charPredicate, String... expectedItems) throws SegmentParseException {
 		Character c = expectChar(charPredicate, expectedItems);
 		return c == '\\' ? oneOf(escapedChars) : c;
@@ -65,47 +80,138 @@ public class WallsSurveyParser extends LineParser {
 		return result.toString();
 	}
 
+	void skipEscapedText(Predicate<Character> charPredicate, String... expectedItems) throws SegmentParseException {
+		while (maybe(() -> escapedChar(charPredicate, expectedItems)).isPresent()) {
+		}
+	}
+
 	String escapedTextUntil(Pattern endPattern, String... expectedItems) throws SegmentParseException {
+		StringBuilder result = new StringBuilder();
+		escapedTextUntil(endPattern, result);
+		return result.toString();
+	}
+
+	/**
+	 * Appends the unescaped text up to {@code endPattern} to {@code result}, or just skips it if {@code result} is
+	 * {@code null}.
+	 */
+	void escapedTextUntil(Pattern endPattern, StringBuilder result) throws SegmentParseException {
 		Matcher m = endPattern.matcher(line);
 		m.region(index, line.length());
 		int endIndex = m.find() ? m.start() : line.length();
-		StringBuilder result = new StringBuilder();
 		while (index < endIndex) {
-			result.append('\\' == line.charAt(index) ? oneOf(escapedChars) : line.charAt(index));
+			char c = '\\' == line.charAt(index) ? (char) oneOf(escapedChars) : line.charAt(index);
+			if (result != null) {
+				result.append(c);
+			}
 			index++;
 		}
-		return result.toString();
 	}
 
-	Segment expectDirective(String... expected) throws SegmentParseException {
-		Segment raw = expect(directiveRx, expected);
-		String normalized = raw.toString().replaceFirst("^#\\s*", "#").toLowerCase();
+	static boolean isDirectiveNameChar(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+	}
+
+	/**
+	 * The start index of the name in the last directive scanned by {@link #scanDirective()}.
+	 */
+	private int directiveNameStart;
+
+	/**
+	 * Scans {@link #directiveRx} at the current index.
+	 *
+	 * @return the end index of the match, or {@code -1} if there is none.
+	 */
+	int scanDirective() {
+		if (index >= line.length() || line.charAt(index) != '#') {
+			return -1;
+		}
+		int i = directiveNameStart = skipWhitespace(index + 1);
+		if (i < line.length() && (line.charAt(i) == '[' || line.charAt(i) == ']')) {
+			return i + 1;
+		}
+		while (i < line.length() && isDirectiveNameChar(line.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * @return whether {@code line[start, end)} equals {@code directive} without its {@code #}, ignoring case.
+	 */
+	boolean directiveNameEquals(int start, int end, String directive) {
+		if (end - start != directive.length() - 1) {
+			return false;
+		}
+		for (int i = start; i < end; i++) {
+			if (KeywordMap.toLowerAscii(line.charAt(i)) != directive.charAt(i - start + 1)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	void expectDirective(String... expected) throws SegmentParseException {
+		int start = index;
+		int end = scanDirective();
+		if (end < 0) {
+			throw SegmentParseExpectedException.lightweight(line.charAtAsSegment(index), expectedSet(expected));
+		}
+		index = end;
 		for (int i = 0; i < expected.length; i++) {
-			if (normalized.equals(expected[i]))
-				return raw;
+			if (directiveNameEquals(directiveNameStart, end, expected[i]))
+				return;
 		}
-		throw new SegmentParseExpectedException(raw, expected);
+		throw SegmentParseExpectedException.lightweight(line.substring(start, end), expectedSet(expected));
 	}
 
-	<T> T expectDirective(Map<String, T> options) throws SegmentParseException {
-		Segment raw = expect(directiveRx, options.keySet());
-		String normalized = raw.toString().replaceFirst("^#\\s*", "#").toLowerCase();
-		if (!options.containsKey(normalized)) {
-			throw new SegmentParseExpectedException(raw, options.keySet());
+	<T> T expectDirective(KeywordMap<T> options) throws SegmentParseException {
+		int start = index;
+		int end = scanDirective();
+		if (end < 0) {
+			throw SegmentParseExpectedException.lightweight(line.charAtAsSegment(index), options.expectedItems());
+		}
+		index = end;
+		T option = options.get(line, directiveNameStart, end);
+		if (option == null) {
+			throw SegmentParseExpectedException.lightweight(line.substring(start, end), options.expectedItems());
 		}
-		return options.get(normalized);
+		return option;
 	}
 
-	<R> Optional<R> optional(Production<R> production) throws SegmentParseException {
-		try {
-			return Optional.of(production.run());
+	/**
+	 * @return the option for the directive at the current index, or {@code null} (with the options recorded as
+	 *         expected items) if there is none.
+	 */
+	<T> T tryExpectDirective(KeywordMap<T> options) {
+		int start = index;
+		int end = scanDirective();
+		if (end < 0) {
+			addExpected(index, options.expectedItems());
+			return null;
 		}
-		catch (SegmentParseExpectedException ex) {
-			if (maybe(() -> expect(optionalRx, "-", "--")).isPresent()) {
-				return Optional.empty();
-			}
-			throw ex;
+		index = end;
+		T option = options.get(line, directiveNameStart, end);
+		if (option == null) {
+			addExpected(start, options.expectedItems());
 		}
+		return option;
+	}
+
+	static final Set<String> omittedExpected = expectedSet("-", "--");
+
+	/**
+	 * Consumes the dashes ({@link #optionalRx}) for an omitted measurement.
+	 */
+	boolean tryOmitted() {
+		if (index >= line.length() || line.charAt(index) != '-') {
+			addExpected(index, omittedExpected);
+			return false;
+		}
+		while (index < line.length() && line.charAt(index) == '-') {
+			index++;
+		}
+		return true;
 	}
 
 	<R> Optional<R> optionalWithLookahead(Production<R> production) throws SegmentParseException {
@@ -122,26 +228,24 @@ public class WallsSurveyParser extends LineParser {
 		}
 	}
 
-	<T> List<T> elementChars(Map<Character, T> elements, Set<T> requiredElements) throws SegmentParseException {
-		final Map<Character, T> finalElements = new HashMap<>(elements);
+	<T> List<T> elementChars(CharMap<T> elements, Set<T> requiredElements) throws SegmentParseException {
+		CharMap<T> remaining = elements;
 		requiredElements = new HashSet<>(requiredElements);
 		List<T> result = new ArrayList<>();
 		while (!elements.isEmpty()) {
 			T element;
 			if (requiredElements.isEmpty()) {
-				Optional<T> optional = maybe(() -> oneOf(finalElements));
-				if (!optional.isPresent()) {
+				element = oneOf(remaining, null);
+				if (element == null) {
 					break;
 				}
-				element = optional.get();
 			}
 			else {
 				element = oneOf(elements);
 			}
 			result.add(element);
 			char c = line.charAt(index - 1);
-			finalElements.remove(Character.toLowerCase(c));
-			finalElements.remove(Character.toUpperCase(c));
+			remaining = remaining.without(Character.toLowerCase(c), Character.toUpperCase(c));
 			requiredElements.remove(element);
 		}
 		return result;
@@ -399,19 +503,19 @@ public class WallsSurveyParser extends LineParser {
 	static final Map<String, Unit<Length>> lengthUnits = createLengthUnits();
 	static final Map<String, Unit<Angle>> azmUnits = createAzmUnits();
 	static final Map<String, Unit<Angle>> incUnits = createIncUnits();
-	static final Map<Character, Unit<Length>> lengthUnitSuffixes = createLengthUnitSuffixes();
-	static final Map<Character, Unit<Angle>> azmUnitSuffixes = createAzmUnitSuffixes();
-	static final Map<Character, Unit<Angle>> incUnitSuffixes = createIncUnitSuffixes();
-	static final Map<Character, CardinalDirection> cardinalDirections = createCardinalDirections();
-	static final Map<Character, CardinalDirection> northSouth = createNorthSouth();
-	static final Map<Character, CardinalDirection> eastWest = createEastWest();
-	static final Map<Character, CtMeasurement> ctElements = createCtElements();
+	static final CharMap<Unit<Length>> lengthUnitSuffixes = new CharMap<>(createLengthUnitSuffixes());
+	static final CharMap<Unit<Angle>> azmUnitSuffixes = new CharMap<>(createAzmUnitSuffixes());
+	static final CharMap<Unit<Angle>> incUnitSuffixes = new CharMap<>(createIncUnitSuffixes());
+	static final CharMap<CardinalDirection> cardinalDirections = new CharMap<>(createCardinalDirections());
+	static final CharMap<CardinalDirection> northSouth = new CharMap<>(createNorthSouth());
+	static final CharMap<CardinalDirection> eastWest = new CharMap<>(createEastWest());
+	static final CharMap<CtMeasurement> ctElements = new CharMap<>(createCtElements());
 	static final Set<CtMeasurement> requiredCtElements =
 		new HashSet<>(Arrays.asList(CtMeasurement.DISTANCE, CtMeasurement.AZIMUTH));
-	static final Map<Character, RectMeasurement> rectElements = createRectElements();
+	static final CharMap<RectMeasurement> rectElements = new CharMap<>(createRectElements());
 	static final Set<RectMeasurement> requiredRectElements =
 		new HashSet<>(Arrays.asList(RectMeasurement.EAST, RectMeasurement.NORTH));
-	static final Map<Character, LrudMeasurement> lrudElements = createLrudElements();
+	static final CharMap<LrudMeasurement> lrudElements = new CharMap<>(createLrudElements());
 	static final Set<LrudMeasurement> requiredLrudElements =
 		new HashSet<>(
 			Arrays.asList(LrudMeasurement.LEFT, LrudMeasurement.RIGHT, LrudMeasurement.UP, LrudMeasurement.DOWN));
@@ -419,9 +523,10 @@ public class WallsSurveyParser extends LineParser {
 	static final Map<String, CaseType> caseTypes = createCaseTypes();
 	static final Map<String, LrudType> lrudTypes = createLrudTypes();
 	public static final Map<String, List<TapingMethodMeasurement>> tapingMethods = createTapingMethods();
-	static final Map<String, Integer> prefixDirectives = createPrefixDirectives();
+	static final KeywordMap<Integer> prefixDirectives = new KeywordMap<>(createPrefixDirectives(), "#");
 
-	static final Set<Character> escapedChars = new HashSet<>(Arrays.asList('r', 'n', 'f', 't', '"', '\\'));
+	static final CharMap<Character> escapedChars =
+		CharMap.identity(new HashSet<>(Arrays.asList('r', 'n', 'f', 't', '"', '\\')));
 	static final Pattern wordRx = Pattern.compile("\\w+");
 	static final Pattern notSemicolonRx = Pattern.compile("[^;]+");
 	static final Pattern UnitsOptionRx = Pattern.compile("[a-zA-Z_0-9/]*");
@@ -440,8 +545,8 @@ public class WallsSurveyParser extends LineParser {
 
 	static final Pattern segmentPartRx = Pattern.compile("[^./\\;]?[^/\\;]+");
 
-	final Map<String, VoidProduction> UnitsOptionMap = createUnitsOptionMap();
-	final Map<String, VoidProduction> directivesMap = createDirectivesMap();
+	final KeywordMap<VoidProduction> UnitsOptionMap = new KeywordMap<>(createUnitsOptionMap());
+	final KeywordMap<VoidProduction> directivesMap = new KeywordMap<>(createDirectivesMap(), "#");
 
 	static final UnitizedDouble<Angle> oneEighty = new UnitizedDouble<Angle>(180.0, Angle.degrees);
 
@@ -457,6 +562,59 @@ public class WallsSurveyParser extends LineParser {
 		super(segment);
 	}
 
+	/**
+	 * Enables or disables the single-pass parser for plain vector lines (enabled by default). Both paths produce
+	 * the same results; disabling it is mainly useful for comparing them.
+	 */
+	public void setFastVectorLines(boolean fastVectorLines) {
+		this.fastVectorLines = fastVectorLines;
+	}
+
+	/**
+	 * Makes the parser give {@link Vector}s a compact {@link Vector#sourceLocation sourceLocation} from the given
+	 * resolver instead of retaining the whole line as their {@link Vector#sourceSegment sourceSegment}, or restores
+	 * the default if {@code null}.
+	 */
+	public void setSourceLocationResolver(SourceLocationResolver sourceLocations) {
+		this.sourceLocations = sourceLocations;
+	}
+
+	/**
+	 * Makes the parser reuse a single {@link Vector} instance for every
+	 * {@link WallsVisitor#parsedVector(Vector) parsedVector} callback instead of allocating a new one for each line
+	 * (disabled by default). In this mode the vector is only valid until the callback returns, so visitors must
+	 * {@link Vector#clone() clone} it to keep it.
+	 */
+	public void setReuseVectors(boolean reuseVectors) {
+		reusableVector = reuseVectors ? new Vector() : null;
+	}
+
+	/**
+	 * @return a new (or newly cleared, if reusing vectors) {@link Vector} for the current line.
+	 */
+	Vector newVector() {
+		Vector result;
+		if (reusableVector != null) {
+			result = reusableVector;
+			result.reset();
+		}
+		else {
+			result = new Vector();
+		}
+		result.segment = currentSegment();
+		setSource(result);
+		return result;
+	}
+
+	void setSource(Vector vector) {
+		if (sourceLocations != null) {
+			vector.sourceLocation = sourceLocations.locate(line);
+		}
+		else {
+			vector.sourceSegment = line;
+		}
+	}
+
 	public void setVisitor(WallsVisitor visitor) {
 		if (visitor == null) {
 			this.visitor = new AbstractWallsVisitor();
@@ -464,75 +622,121 @@ public class WallsSurveyParser extends LineParser {
 		else {
 			this.visitor = visitor;
 		}
+		interests = this.visitor.interests();
 	}
 
-	UnitizedDouble<Length> unsignedLengthInches() throws SegmentParseException {
-		expectIgnoreCase('i');
-		double inches = unsignedDoubleLiteral();
-		return new UnitizedDouble<Length>(inches, Length.inches);
+	/**
+	 * @return whether the visitor is interested in the given {@link WallsVisitor#interests() interest}.
+	 */
+	boolean wants(int interest) {
+		return (interests & interest) != 0;
 	}
 
-	UnitizedDouble<Length> unsignedLengthNonInches(Unit<Length> defaultUnit) throws SegmentParseException {
-		double value = unsignedDoubleLiteral();
+	UnitizedDouble<Length> tryUnsignedLengthInches() {
+		if (!tryExpectIgnoreCase('i')) {
+			return null;
+		}
+		double inches = unsignedDoubleLiteralOrNaN();
+		return Double.isNaN(inches) ? null : new UnitizedDouble<Length>(inches, Length.inches);
+	}
+
+	UnitizedDouble<Length> tryUnsignedLengthNonInches(Unit<Length> defaultUnit) {
+		double value = unsignedDoubleLiteralOrNaN();
+		if (Double.isNaN(value)) {
+			return null;
+		}
 		Unit<Length> unit = oneOf(lengthUnitSuffixes, defaultUnit);
 		if (unit == Length.inches) {
-			double inches = unsignedDoubleLiteral();
-			return new UnitizedDouble<Length>(value * 12 + inches, Length.inches);
+			double inches = unsignedDoubleLiteralOrNaN();
+			return Double.isNaN(inches) ? null : new UnitizedDouble<Length>(value * 12 + inches, Length.inches);
 		}
 		return new UnitizedDouble<Length>(value, unit);
 	}
 
+	/**
+	 * @return the length at the current index, or {@code null} (with the expected items recorded) if there is none.
+	 *         Like an {@link Attempt}, it may have consumed input when it returns {@code null}.
+	 */
+	UnitizedDouble<Length> tryUnsignedLength(Unit<Length> defaultUnit) {
+		int start = index;
+		UnitizedDouble<Length> length = tryUnsignedLengthNonInches(defaultUnit);
+		if (length == null && index == start) {
+			length = tryUnsignedLengthInches();
+		}
+		return length;
+	}
+
 	UnitizedDouble<Length> unsignedLength(Unit<Length> defaultUnit) throws SegmentParseException {
-		return oneOf(() -> unsignedLengthNonInches(defaultUnit), () -> unsignedLengthInches());
+		UnitizedDouble<Length> length = tryUnsignedLength(defaultUnit);
+		if (length == null) {
+			throw expectedFailure();
+		}
+		return length;
+	}
+
+	UnitizedDouble<Length> tryLength(Unit<Length> defaultUnit) {
+		boolean negate = tryExpect('-');
+		UnitizedDouble<Length> length = tryUnsignedLength(defaultUnit);
+		return negate && length != null ? length.negate() : length;
 	}
 
 	UnitizedDouble<Length> length(Unit<Length> defaultUnit) throws SegmentParseException {
-		boolean negate = maybe(() -> expect('-')).isPresent();
-		UnitizedDouble<Length> length = unsignedLength(defaultUnit);
-		return negate ? length.negate() : length;
+		UnitizedDouble<Length> length = tryLength(defaultUnit);
+		if (length == null) {
+			throw expectedFailure();
+		}
+		return length;
 	}
 
-	Segment expectColon() throws SegmentParseException {
-		return expect(':');
+	static double orZero(double value) {
+		return Double.isNaN(value) ? 0.0 : value;
 	}
 
-	UnitizedDouble<Angle> unsignedAngle(Map<Character, Unit<Angle>> unitSuffixes, Unit<Angle> defaultUnit)
-		throws SegmentParseException {
-		Optional<Double> value = maybe(this::unsignedDoubleLiteral);
-		if (maybe(this::expectColon).isPresent()) {
-			Optional<Double> minutes = maybe(this::unsignedDoubleLiteral);
-			Optional<Double> seconds = Optional.empty();
-			if (maybe(this::expectColon).isPresent()) {
-				seconds = maybe(this::unsignedDoubleLiteral);
+	UnitizedDouble<Angle> tryUnsignedAngle(CharMap<Unit<Angle>> unitSuffixes, Unit<Angle> defaultUnit) {
+		double value = unsignedDoubleLiteralOrNaN();
+		if (tryExpect(':')) {
+			double minutes = unsignedDoubleLiteralOrNaN();
+			double seconds = Double.NaN;
+			if (tryExpect(':')) {
+				seconds = unsignedDoubleLiteralOrNaN();
 			}
-			if (!(value.isPresent() || minutes.isPresent() || seconds.isPresent())) {
-				throwAllExpected();
+			if (Double.isNaN(value) && Double.isNaN(minutes) && Double.isNaN(seconds)) {
+				return null;
 			}
 
 			return new UnitizedDouble<Angle>(
-				value.orElse(0.0) + minutes.orElse(0.0) / 60.0 + seconds.orElse(0.0) / 3600,
+				orZero(value) + orZero(minutes) / 60.0 + orZero(seconds) / 3600,
 				Angle.degrees);
 		}
-		else if (!value.isPresent()) {
-			throwAllExpected();
+		else if (Double.isNaN(value)) {
+			return null;
 		}
 		Unit<Angle> unit = unitSuffixes == null ? defaultUnit : oneOf(unitSuffixes, defaultUnit);
-		return new UnitizedDouble<Angle>(value.get(), unit);
+		return new UnitizedDouble<Angle>(value, unit);
+	}
+
+	UnitizedDouble<Angle> unsignedAngle(CharMap<Unit<Angle>> unitSuffixes, Unit<Angle> defaultUnit)
+		throws SegmentParseException {
+		UnitizedDouble<Angle> angle = tryUnsignedAngle(unitSuffixes, defaultUnit);
+		if (angle == null) {
+			throw expectedFailure();
+		}
+		return angle;
 	}
 
 	UnitizedDouble<Angle> unsignedDmsAngle() throws SegmentParseException {
-		Optional<Double> degrees = maybe(this::unsignedDoubleLiteral);
+		double degrees = unsignedDoubleLiteralOrNaN();
 		expect(':');
-		Optional<Double> minutes = maybe(this::unsignedDoubleLiteral);
-		Optional<Double> seconds = Optional.empty();
-		if (maybe(this::expectColon).isPresent()) {
-			seconds = maybe(this::unsignedDoubleLiteral);
+		double minutes = unsignedDoubleLiteralOrNaN();
+		double seconds = Double.NaN;
+		if (maybeChar(':')) {
+			seconds = unsignedDoubleLiteralOrNaN();
 		}
-		if (!(degrees.isPresent() || minutes.isPresent() || seconds.isPresent())) {
+		if (Double.isNaN(degrees) && Double.isNaN(minutes) && Double.isNaN(seconds)) {
 			throwAllExpected();
 		}
 		return new UnitizedDouble<Angle>(
-			degrees.orElse(0.0) + minutes.orElse(0.0) / 60.0 + seconds.orElse(0.0) / 3600,
+			orZero(degrees) + orZero(minutes) / 60.0 + orZero(seconds) / 3600,
 			Angle.degrees);
 	}
 
@@ -560,64 +764,98 @@ public class WallsSurveyParser extends LineParser {
 		return side == CardinalDirection.WEST ? longitude.negate() : longitude;
 	}
 
-	UnitizedDouble<Angle> nonQuadrantAzimuth(Unit<Angle> defaultUnit) throws SegmentParseException {
+	UnitizedDouble<Angle> tryNonQuadrantAzimuth(Unit<Angle> defaultUnit) throws SegmentParseException {
 		int start = index;
 
-		UnitizedDouble<Angle> result = unsignedAngle(azmUnitSuffixes, defaultUnit);
+		UnitizedDouble<Angle> result = tryUnsignedAngle(azmUnitSuffixes, defaultUnit);
+		if (result == null) {
+			return null;
+		}
 
 		if (approx(result.get(Angle.degrees)) > 360.0) {
 			throw new SegmentParseException("azimuth out of range", line.substring(start, index));
 		}
 		if (result.get(Angle.degrees) == 360.0) {
-			visitor
-				.message(
-					new WallsMessage(
-						"warning",
-						"why do you have an azimuth of 360 degrees instead of 0?",
-						line.substring(start, index)));
+			if (wants(WallsVisitor.WARNINGS)) {
+				visitor
+					.message(
+						new WallsMessage(
+							"warning",
+							"why do you have an azimuth of 360 degrees instead of 0?",
+							line.substring(start, index)));
+			}
 		}
 
 		return result;
 	}
 
-	UnitizedDouble<Angle> quadrantAzimuth() throws SegmentParseException {
-		CardinalDirection from = oneOf(cardinalDirections);
+	UnitizedDouble<Angle> nonQuadrantAzimuth(Unit<Angle> defaultUnit) throws SegmentParseException {
+		UnitizedDouble<Angle> result = tryNonQuadrantAzimuth(defaultUnit);
+		if (result == null) {
+			throw expectedFailure();
+		}
+		return result;
+	}
+
+	UnitizedDouble<Angle> tryQuadrantAzimuth() throws SegmentParseException {
+		CardinalDirection from = oneOf(cardinalDirections, null);
+		if (from == null) {
+			return null;
+		}
 
 		int start = index;
-		Optional<UnitizedDouble<Angle>> angle = maybe(() -> nonQuadrantAzimuth(Angle.degrees));
-		if (angle.isPresent()) {
-			if (approx(angle.get().get(Angle.degrees)) > 90.0) {
+		UnitizedDouble<Angle> angle = tryNonQuadrantAzimuth(Angle.degrees);
+		if (angle != null) {
+			if (approx(angle.get(Angle.degrees)) > 90.0) {
 				throw new SegmentParseException("azimuth out of range", line.substring(start, index));
 			}
-			if (angle.get().get(Angle.degrees) == 90.0) {
-				visitor
-					.message(
-						new WallsMessage(
-							"warning",
-							"why are you using 90 degrees in a quadrant azimuth?",
-							line.substring(start, index)));
+			if (angle.get(Angle.degrees) == 90.0) {
+				if (wants(WallsVisitor.WARNINGS)) {
+					visitor
+						.message(
+							new WallsMessage(
+								"warning",
+								"why are you using 90 degrees in a quadrant azimuth?",
+								line.substring(start, index)));
+				}
 			}
 
 			CardinalDirection to =
-				oneOf(from == CardinalDirection.NORTH || from == CardinalDirection.SOUTH ? eastWest : northSouth);
+				oneOf(from == CardinalDirection.NORTH || from == CardinalDirection.SOUTH ? eastWest : northSouth, null);
 
-			return from.quadrant(to, angle.get());
+			return to == null ? null : from.quadrant(to, angle);
 		}
-		return from.angle;
+		return index > start ? null : from.angle;
+	}
+
+	UnitizedDouble<Angle> tryAzimuth(Unit<Angle> defaultUnit) throws SegmentParseException {
+		int start = index;
+		UnitizedDouble<Angle> azimuth = tryQuadrantAzimuth();
+		if (azimuth == null && index == start) {
+			azimuth = tryNonQuadrantAzimuth(defaultUnit);
+		}
+		return azimuth;
 	}
 
 	UnitizedDouble<Angle> azimuth(Unit<Angle> defaultUnit) throws SegmentParseException {
-		return oneOf(() -> quadrantAzimuth(), () -> nonQuadrantAzimuth(defaultUnit));
+		UnitizedDouble<Angle> azimuth = tryAzimuth(defaultUnit);
+		if (azimuth == null) {
+			throw expectedFailure();
+		}
+		return azimuth;
 	}
 
 	UnitizedDouble<Angle> azimuthOffset(Unit<Angle> defaultUnit) throws SegmentParseException {
-		Optional<Double> signum = maybe(() -> oneOf(signSignums));
-		return nonQuadrantAzimuth(defaultUnit).mul(signum.orElse(1.0));
+		int signum = trySign();
+		return nonQuadrantAzimuth(defaultUnit).mul(signum < 0 ? -1.0 : 1.0);
 	}
 
-	UnitizedDouble<Angle> unsignedInclination(Unit<Angle> defaultUnit) throws SegmentParseException {
+	UnitizedDouble<Angle> tryUnsignedInclination(Unit<Angle> defaultUnit) throws SegmentParseException {
 		int start = index;
-		UnitizedDouble<Angle> result = unsignedAngle(incUnitSuffixes, defaultUnit);
+		UnitizedDouble<Angle> result = tryUnsignedAngle(incUnitSuffixes, defaultUnit);
+		if (result == null) {
+			return null;
+		}
 
 		if (approx(result.get(Angle.degrees)) > 90.0) {
 			throw new SegmentParseException("inclination out of range", line.substring(start, index));
@@ -626,21 +864,42 @@ public class WallsSurveyParser extends LineParser {
 		return result;
 	}
 
-	UnitizedDouble<Angle> inclination(Unit<Angle> defaultUnit) throws SegmentParseException {
+	UnitizedDouble<Angle> unsignedInclination(Unit<Angle> defaultUnit) throws SegmentParseException {
+		UnitizedDouble<Angle> result = tryUnsignedInclination(defaultUnit);
+		if (result == null) {
+			throw expectedFailure();
+		}
+		return result;
+	}
+
+	UnitizedDouble<Angle> tryInclination(Unit<Angle> defaultUnit) throws SegmentParseException {
 		int start = index;
-		Optional<Double> signum = maybe(() -> oneOf(signSignums));
-		UnitizedDouble<Angle> angle = unsignedInclination(defaultUnit);
+		int signum = trySign();
+		UnitizedDouble<Angle> angle = tryUnsignedInclination(defaultUnit);
+		if (angle == null) {
+			return null;
+		}
 
-		if (signum.isPresent()) {
+		if (signum != 0) {
 			if (angle.get(angle.unit) == 0.0) {
-				visitor
-					.message(
-						new WallsMessage(
-							"warning",
-							"why do you have an inclination of -0 instead of just 0?",
-							line.substring(start, index)));
+				if (wants(WallsVisitor.WARNINGS)) {
+					visitor
+						.message(
+							new WallsMessage(
+								"warning",
+								"why do you have an inclination of -0 instead of just 0?",
+								line.substring(start, index)));
+				}
 			}
-			return angle.mul(signum.get());
+			return angle.mul(signum);
+		}
+		return angle;
+	}
+
+	UnitizedDouble<Angle> inclination(Unit<Angle> defaultUnit) throws SegmentParseException {
+		UnitizedDouble<Angle> angle = tryInclination(defaultUnit);
+		if (angle == null) {
+			throw expectedFailure();
 		}
 		return angle;
 	}
@@ -702,11 +961,10 @@ public class WallsSurveyParser extends LineParser {
 	}
 
 	public void parseFile(File file) throws IOException, SegmentParseException {
-		try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-			int lineNumber = 0;
-			String line;
+		try (SrvFileReader reader = new SrvFileReader(file)) {
+			Segment line;
 			while ((line = reader.readLine()) != null) {
-				parseLine(new Segment(line, file, lineNumber++, 0));
+				parseLine(line);
 			}
 		}
 	}
@@ -747,24 +1005,28 @@ public class WallsSurveyParser extends LineParser {
 		if (inBlockComment) {
 			throwAllExpected(() -> oneOfWithLookahead(this::endBlockCommentLine, this::insideBlockCommentLine));
 		}
-		else {
-			throwAllExpected(() -> oneOf(this::comment, this::directiveLine, this::vectorLine));
+		else if (!fastVectorLines || !fastVectorLine()) {
+			if (!tryOneOf(this::comment, this::directiveLine, this::vectorLine)) {
+				throwAllExpected();
+			}
 		}
 	}
 
-	void directiveLine() throws SegmentParseException {
+	boolean directiveLine() throws SegmentParseException {
 		int start = index;
 		VoidProduction fixLine = this::fixLine;
-		VoidProduction directive = expectDirective(directivesMap);
+		VoidProduction directive = tryExpectDirective(directivesMap);
 		if (directive == null) {
-			throwAllExpected();
+			return false;
 		}
 		index = start;
-		// TODO check this!!
-		if (!directive.equals(fixLine)) {
-			replaceMacros();
-		}
-		directive.run();
+		return attempt(() -> {
+			// TODO check this!!
+			if (!directive.equals(fixLine)) {
+				replaceMacros();
+			}
+			directive.run();
+		}).run();
 	}
 
 	String replaceMacro() throws SegmentParseException {
@@ -832,7 +1094,20 @@ public class WallsSurveyParser extends LineParser {
 	}
 
 	void insideBlockCommentLine() {
-		visitor.parsedComment(remaining().toString());
+		remainingComment();
+	}
+
+	/**
+	 * Skips the rest of the line, or calls {@link WallsVisitor#parsedComment(String)} with it if the visitor wants
+	 * comments.
+	 */
+	void remainingComment() {
+		if (wants(WallsVisitor.COMMENTS)) {
+			visitor.parsedComment(remaining().toString());
+		}
+		else {
+			index = line.length();
+		}
 	}
 
 	Segment untilComment(List<String> expectedItems) throws SegmentParseException {
@@ -842,7 +1117,9 @@ public class WallsSurveyParser extends LineParser {
 	void segmentLine() throws SegmentParseException {
 		maybeWhitespace();
 		segment.clear();
-		segment.addAll(segmentDirective());
+		SegmentPath path = segmentDirective();
+		segment.addAll(path);
+		segmentNode = path;
 		maybeWhitespace();
 		inlineCommentOrEndOfLine();
 	}
@@ -886,7 +1163,17 @@ public class WallsSurveyParser extends LineParser {
 		return path;
 	}
 
-	List<String> segmentDirective() throws SegmentParseException {
+	/**
+	 * @return the path of {@link #segment}, which vectors and fixed stations share.
+	 */
+	SegmentPath currentSegment() {
+		if (!segmentNode.matches(segment)) {
+			segmentNode = SegmentPath.of(segment);
+		}
+		return segmentNode;
+	}
+
+	SegmentPath segmentDirective() throws SegmentParseException {
 		expectDirective("#s", "#seg", "#segment");
 
 		List<String> result = segment;
@@ -895,7 +1182,7 @@ public class WallsSurveyParser extends LineParser {
 			result = maybe(() -> segmentPath()).orElse(segment);
 		}
 
-		return result == null ? null : new ArrayList<>(result);
+		return result == segment ? currentSegment() : SegmentPath.of(result);
 	}
 
 	void prefixLine() throws SegmentParseException {
@@ -927,11 +1214,15 @@ public class WallsSurveyParser extends LineParser {
 		expectDirective("#note", "#n");
 
 		whitespace();
-		String _station = station().toString();
+		Segment _station = station();
 		whitespace();
-		String _note = escapedText(c -> c != ';', "<NOTE>");
-
-		visitor.parsedNote(_station, _note);
+		if (wants(WallsVisitor.NOTES)) {
+			String _note = escapedText(c -> c != ';', "<NOTE>");
+			visitor.parsedNote(_station.toString(), _note);
+		}
+		else {
+			skipEscapedText(c -> c != ';', "<NOTE>");
+		}
 	}
 
 	void flagLine() throws SegmentParseException {
@@ -944,24 +1235,31 @@ public class WallsSurveyParser extends LineParser {
 	void flagDirective() throws SegmentParseException {
 		expectDirective("#flag", "#f");
 
-		List<String> stations = new ArrayList<>();
+		boolean wantsFlags = wants(WallsVisitor.FLAGS);
+		List<String> stations = wantsFlags ? new ArrayList<>() : null;
+		int stationCount = 0;
 
 		maybeWhitespace();
 
 		do {
-			Optional<String> _station = maybe(() -> station().toString());
+			Optional<Segment> _station = maybe(() -> station());
 			if (!_station.isPresent())
 				break;
-			stations.add(_station.get());
+			if (wantsFlags) {
+				stations.add(_station.get().toString());
+			}
+			stationCount++;
 		} while (maybe(() -> oneOf(() -> whitespace(), () -> expect(','))).isPresent());
 
 		Optional<String> _flag = maybe(this::slashPrefixedFlag);
 		maybeWhitespace();
 
-		if (stations.isEmpty()) {
+		if (stationCount == 0) {
 			units.setFlag(_flag.orElse(null));
 		}
-		visitor.parsedFlag(stations, _flag.orElse(null));
+		if (wantsFlags) {
+			visitor.parsedFlag(stations, _flag.orElse(null));
+		}
 
 		inlineCommentOrEndOfLine();
 	}
@@ -997,55 +1295,20 @@ public class WallsSurveyParser extends LineParser {
 		maybeWhitespace();
 	}
 
-	static DateFormat fullDateFormat1 = new SimpleDateFormat("MM-dd-yyyy");
-	static DateFormat shortDateFormat1 = new SimpleDateFormat("MM-dd-yy");
-	static DateFormat fullDateFormat2 = new SimpleDateFormat("MM/dd/yyyy");
-	static DateFormat shortDateFormat2 = new SimpleDateFormat("MM/dd/yy");
-	static DateFormat fullDateFormat3 = new SimpleDateFormat("yyyy-M-d");
-	static DateFormat fullDateFormat4 = new SimpleDateFormat("yyyy/M/d");
-
 	Date usDate1() throws SegmentParseExpectedException {
-		String str = expect(usDateRx1, "<DATE>").toString();
-		try {
-			return (str.length() > 8 ? fullDateFormat1 : shortDateFormat1).parse(str);
-		}
-		catch (ParseException ex) {
-			// should never happen because of regex
-			return null;
-		}
+		return DateDecoder.decodeMonthDayYear(expect(usDateRx1, "<DATE>"));
 	}
 
 	Date usDate2() throws SegmentParseExpectedException {
-		String str = expect(usDateRx2, "<DATE>").toString();
-		try {
-			return (str.length() > 8 ? fullDateFormat2 : shortDateFormat2).parse(str);
-		}
-		catch (ParseException ex) {
-			// should never happen because of regex
-			return null;
-		}
+		return DateDecoder.decodeMonthDayYear(expect(usDateRx2, "<DATE>"));
 	}
 
 	Date usDate3() throws SegmentParseExpectedException {
-		String str = expect(usDateRx3, "<DATE>").toString();
-		try {
-			return fullDateFormat3.parse(str);
-		}
-		catch (ParseException ex) {
-			// should never happen because of regex
-			return null;
-		}
+		return DateDecoder.decodeYearMonthDay(expect(usDateRx3, "<DATE>"));
 	}
 
 	Date usDate4() throws SegmentParseExpectedException {
-		String str = expect(usDateRx4, "<DATE>").toString();
-		try {
-			return fullDateFormat4.parse(str);
-		}
-		catch (ParseException ex) {
-			// should never happen because of regex
-			return null;
-		}
+		return DateDecoder.decodeYearMonthDay(expect(usDateRx4, "<DATE>"));
 	}
 
 	void UnitsLine() throws SegmentParseException {
@@ -1080,8 +1343,23 @@ public class WallsSurveyParser extends LineParser {
 		}
 	}
 
+	/**
+	 * @return whether {@code c} matches {@link #UnitsOptionRx}.
+	 */
+	static boolean isUnitsOptionChar(char c) {
+		return isDirectiveNameChar(c) || c == '_' || c == '/';
+	}
+
 	void UnitsOption() throws SegmentParseException {
-		VoidProduction option = oneOfLowercase(UnitsOptionRx, UnitsOptionMap);
+		int end = index;
+		while (end < line.length() && isUnitsOptionChar(line.charAt(end))) {
+			end++;
+		}
+		VoidProduction option = UnitsOptionMap.get(line, index, end);
+		if (option == null) {
+			throw SegmentParseExpectedException.lightweight(line.substring(index, end), UnitsOptionMap.expectedItems());
+		}
+		index = end;
 		option.run();
 	}
 
@@ -1242,10 +1520,10 @@ public class WallsSurveyParser extends LineParser {
 		expect('=');
 		units.setTypeabCorrected(oneOfLowercase(wordRx, correctedValues));
 		if (maybeChar(',')) {
-			Optional<Double> tolerance = maybe(this::unsignedDoubleLiteral);
-			if (!tolerance.isPresent())
+			double tolerance = unsignedDoubleLiteralOrNaN();
+			if (Double.isNaN(tolerance))
 				return;
-			units.setTypeabTolerance(new UnitizedDouble<Angle>(tolerance.get(), Angle.degrees));
+			units.setTypeabTolerance(new UnitizedDouble<Angle>(tolerance, Angle.degrees));
 			if (maybe(() -> expectIgnoreCase(",x")).isPresent()) {
 				units.setTypeabNoAverage(true);
 			}
@@ -1262,10 +1540,10 @@ public class WallsSurveyParser extends LineParser {
 		expect('=');
 		units.setTypevbCorrected(oneOfLowercase(wordRx, correctedValues));
 		if (maybeChar(',')) {
-			Optional<Double> tolerance = maybe(this::unsignedDoubleLiteral);
-			if (!tolerance.isPresent())
+			double tolerance = unsignedDoubleLiteralOrNaN();
+			if (Double.isNaN(tolerance))
 				return;
-			units.setTypevbTolerance(new UnitizedDouble<Angle>(tolerance.get(), Angle.degrees));
+			units.setTypevbTolerance(new UnitizedDouble<Angle>(tolerance, Angle.degrees));
 			if (maybe(() -> expectIgnoreCase(",x")).isPresent()) {
 				units.setTypevbNoAverage(true);
 			}
@@ -1352,60 +1630,253 @@ public class WallsSurveyParser extends LineParser {
 		units.setFlag(flag);
 	}
 
-	void vectorLine() throws SegmentParseException {
+	boolean vectorLine() throws SegmentParseException {
 		maybeWhitespace();
-		fromStation();
-		whitespaceAndOrComma();
-		afterFromStation();
+		if (!fromStation() || !tryWhitespaceAndOrComma() || !afterFromStation()) {
+			return false;
+		}
 		maybeWhitespaceAndOrComma();
-		endOfLine();
+		if (!tryEndOfLine()) {
+			return false;
+		}
+		vector.date = date;
+		vector.units = units.toImmutable();
+		visitor.parsedVector(vector);
+		return true;
+	}
+
+	static boolean isDefaultCtOrder(List<CtMeasurement> ctOrder) {
+		return ctOrder.size() == 3
+			&& ctOrder.get(0) == CtMeasurement.DISTANCE
+			&& ctOrder.get(1) == CtMeasurement.AZIMUTH
+			&& ctOrder.get(2) == CtMeasurement.INCLINATION;
+	}
+
+	/**
+	 * @return the end index of a plain unsigned number at {@code start} that is followed by whitespace, a comma or
+	 *         the end of the line, or {@code -1} if there is none.
+	 */
+	int scanPlainNumber(int start) {
+		int end = scanUnsignedDoubleLiteral(start);
+		if (end < 0 || end == line.length()) {
+			return end;
+		}
+		char c = line.charAt(end);
+		return isWhitespace(c) || c == ',' ? end : -1;
+	}
+
+	/**
+	 * Parses a vector line of the most common shape, {@code FROM TO DIST AZM INC} with plain numbers (no units,
+	 * backsights, LRUDs, variance overrides or comments), in a single pass under compass-and-tape units with the
+	 * default order. On any other line, or anything that would produce a warning or an error, it returns
+	 * {@code false} without side effects so that {@link #vectorLine()} can handle it.
+	 */
+	boolean fastVectorLine() throws SegmentParseException {
+		if (units.getVectorType() != VectorType.COMPASS_AND_TAPE || !isDefaultCtOrder(units.getCtOrder())) {
+			return false;
+		}
+
+		int fromStart = index;
+		int fromEnd = scanStation(fromStart);
+		int toStart = fromEnd < 0 ? -1 : scanWhitespaceAndOrComma(fromEnd);
+		// a to station starting with < or * would be parsed as LRUDs
+		if (toStart < 0 || toStart == line.length() || line.charAt(toStart) == '<' || line.charAt(toStart) == '*') {
+			return false;
+		}
+		int toEnd = scanStation(toStart);
+		int distStart = toEnd < 0 ? -1 : scanWhitespaceAndOrComma(toEnd);
+		int distEnd = distStart < 0 ? -1 : scanPlainNumber(distStart);
+		int azmStart = distEnd < 0 ? -1 : scanWhitespaceAndOrComma(distEnd);
+		int azmEnd = azmStart < 0 ? -1 : scanPlainNumber(azmStart);
+		int incStart = azmEnd < 0 ? -1 : scanWhitespaceAndOrComma(azmEnd);
+		if (incStart < 0 || incStart == line.length()) {
+			return false;
+		}
+		int incSignum = 0;
+		char sign = line.charAt(incStart);
+		if (sign == '-' || sign == '+') {
+			incSignum = sign == '-' ? -1 : 1;
+			incStart++;
+		}
+		int incEnd = scanPlainNumber(incStart);
+		if (incEnd < 0) {
+			return false;
+		}
+		int end = scanWhitespaceAndOrComma(incEnd);
+		if ((end < 0 ? incEnd : end) != line.length()) {
+			return false;
+		}
+
+		String from = line.substring(fromStart, fromEnd).toString();
+		String to = line.substring(toStart, toEnd).toString();
+		if (isOptionalStation(from) || isOptionalStation(to) || from.equals(to)) {
+			return false;
+		}
+
+		UnitizedDouble<Length> distance =
+			new UnitizedDouble<Length>(parseUnsignedDouble(distStart, distEnd), units.getDUnit());
+		if (changesSign(distance, units.getIncd())) {
+			return false;
+		}
+		UnitizedDouble<Angle> azimuth =
+			new UnitizedDouble<Angle>(parseUnsignedDouble(azmStart, azmEnd), units.getAUnit());
+		if (azimuth.get(Angle.degrees) >= 360.0) {
+			return false;
+		}
+		UnitizedDouble<Angle> inclination =
+			new UnitizedDouble<Angle>(parseUnsignedDouble(incStart, incEnd), units.getVUnit());
+		if (inclination.get(Angle.degrees) > 90.0 || (incSignum != 0 && inclination.get(inclination.unit) == 0.0)) {
+			return false;
+		}
+		if (incSignum != 0) {
+			inclination = inclination.mul(incSignum);
+		}
+
+		vector = newVector();
+		vector.from = from;
+		vector.to = to;
+		vector.distance = distance;
+		vector.frontsightAzimuth = azimuth;
+		vector.frontsightInclination = inclination;
 		vector.date = date;
 		vector.units = units.toImmutable();
+		index = line.length();
 		visitor.parsedVector(vector);
+		return true;
+	}
+
+	static final Set<String> stationExpected = Collections.singleton("<STATION>");
+	private final int[] stationPrefixEnds = new int[4];
+
+	static boolean isStationChar(char c) {
+		switch (c) {
+		case ':':
+		case ';':
+		case ',':
+		case '#':
+		case '/':
+		case ' ':
+		case '\t':
+			return false;
+		default:
+			return true;
+		}
+	}
+
+	int skipStationChars(int start, int max) {
+		int i = start;
+		while (i < line.length() && i - start < max && isStationChar(line.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Scans {@link #stationRx} at the given index, including its backtracking behavior: up to three
+	 * colon-terminated prefixes are taken greedily, and then dropped one at a time until at least one station
+	 * name character follows.
+	 *
+	 * @return the end index of the match, or {@code -1} if there is none.
+	 */
+	int scanStation(int start) {
+		int[] prefixEnds = stationPrefixEnds;
+		prefixEnds[0] = start;
+		int prefixCount = 0;
+		while (prefixCount < 3) {
+			int i = skipStationChars(prefixEnds[prefixCount], Integer.MAX_VALUE);
+			if (i >= line.length() || line.charAt(i) != ':') {
+				break;
+			}
+			prefixEnds[++prefixCount] = i + 1;
+		}
+		for (int k = prefixCount; k >= 0; k--) {
+			int end = skipStationChars(prefixEnds[k], 8);
+			if (end > prefixEnds[k]) {
+				return end;
+			}
+		}
+		return -1;
 	}
 
 	Segment station() throws SegmentParseException {
-		return expect(stationRx, "<STATION>");
+		int end = scanStation(index);
+		if (end < 0) {
+			throw SegmentParseExpectedException.lightweight(line.charAtAsSegment(index), stationExpected);
+		}
+		int start = index;
+		index = end;
+		return line.substring(start, end);
+	}
+
+	/**
+	 * Like {@link #station()}, but returns {@code null} instead of throwing if there is no station.
+	 */
+	Segment tryStation() {
+		int end = scanStation(index);
+		if (end < 0) {
+			addExpected(index, stationExpected);
+			return null;
+		}
+		int start = index;
+		index = end;
+		return line.substring(start, end);
+	}
+
+	/**
+	 * @return whether {@code station} matches {@link #optionalStationRx}.
+	 */
+	static boolean isOptionalStation(CharSequence station) {
+		if (station.length() == 0) {
+			return false;
+		}
+		for (int i = 0; i < station.length(); i++) {
+			if (station.charAt(i) != '-') {
+				return false;
+			}
+		}
+		return true;
 	}
 
-	void fromStation() throws SegmentParseException {
-		fromStationSegment = station();
+	boolean fromStation() {
+		Segment station = tryStation();
+		if (station == null) {
+			return false;
+		}
+		fromStationSegment = station;
 		String from = fromStationSegment.toString();
-		if (optionalStationRx.matcher(from).matches()) {
+		if (isOptionalStation(from)) {
 			from = null;
 		}
-		vector = new Vector();
-		vector.segment = segment == null ? null : new ArrayList<>(segment);
-		vector.sourceSegment = line;
+		vector = newVector();
 		vector.from = from;
+		return true;
 	}
 
-	void afterFromStation() throws SegmentParseException {
-		oneOfWithLookahead(() -> {
+	boolean afterFromStation() throws SegmentParseException {
+		return tryOneOfWithLookahead(() -> {
 			// clear all measurements
 			String from = vector.from;
-			vector = new Vector();
-			vector.segment = segment == null ? null : new ArrayList<>(segment);
-			vector.sourceSegment = line;
+			vector = newVector();
 			vector.from = from;
-			lruds();
-			afterVarianceAndLruds();
-		}, () -> {
-			toStation();
-			afterToStation();
-		});
+			return lruds() && afterVarianceAndLruds();
+		}, () -> toStation() && afterToStation());
 	}
 
-	void toStation() throws SegmentParseException {
-		toStationSegment = station();
+	boolean toStation() throws SegmentParseException {
+		Segment station = tryStation();
+		if (station == null) {
+			return false;
+		}
+		toStationSegment = station;
 		String to = toStationSegment.toString();
-		if (optionalStationRx.matcher(to).matches()) {
+		if (isOptionalStation(to)) {
 			to = null;
 		}
 		if (vector.from == null && to == null) {
 			throw new SegmentParseException("from and to station can't both be omitted", toStationSegment);
 		}
 		vector.to = to;
+		return true;
 	}
 
 	boolean isAzimuthOptional() {
@@ -1428,43 +1899,45 @@ public class WallsSurveyParser extends LineParser {
 		}
 	}
 
-	void afterToStation() throws SegmentParseException {
+	boolean afterToStation() throws SegmentParseException {
 		if (Objects.equals(vector.from, vector.to)) {
 			vector.to = null;
-			afterVectorMeasurements();
-			return;
+			return afterVectorMeasurements();
 		}
 
 		if (vector.isSplay()) {
-			if (maybeWithLookahead(() -> afterVectorMeasurements()).isPresent()) {
-				return;
+			if (tryMaybeWithLookahead(this::afterVectorMeasurements)) {
+				return true;
 			}
 		}
 
-		whitespaceAndOrComma();
+		if (!tryWhitespaceAndOrComma()) {
+			return false;
+		}
 
 		int k = 0;
 		if (units.getVectorType() == VectorType.RECTANGULAR) {
 			for (RectMeasurement elem : units.getRectOrder()) {
-				if (k++ > 0) {
-					whitespaceAndOrComma();
+				if (k++ > 0 && !tryWhitespaceAndOrComma()) {
+					return false;
+				}
+				if (!rectMeasurement(elem)) {
+					return false;
 				}
-				rectMeasurement(elem);
 			}
 		}
 		else {
 			for (CtMeasurement elem : units.getCtOrder()) {
 				if (isCtMeasurementOptional(elem)) {
-					maybeWithLookahead(() -> {
-						whitespaceAndOrComma();
-						ctMeasurement(elem);
-					});
+					tryMaybeWithLookahead(() -> tryWhitespaceAndOrComma() && ctMeasurement(elem));
 					break;
 				}
-				if (k++ > 0) {
-					whitespaceAndOrComma();
+				if (k++ > 0 && !tryWhitespaceAndOrComma()) {
+					return false;
+				}
+				if (!ctMeasurement(elem)) {
+					return false;
 				}
-				ctMeasurement(elem);
 			}
 		}
 
@@ -1476,21 +1949,18 @@ public class WallsSurveyParser extends LineParser {
 				throw new SegmentParseException("azimuth can only be omitted for vertical shots", azmSegment);
 			}
 
-			maybeWithLookahead(() -> {
-				whitespaceAndOrComma();
-				instrumentHeight();
-			});
-			maybeWithLookahead(() -> {
-				whitespaceAndOrComma();
-				targetHeight();
-			});
+			tryMaybeWithLookahead(() -> tryWhitespaceAndOrComma() && instrumentHeight());
+			tryMaybeWithLookahead(() -> tryWhitespaceAndOrComma() && targetHeight());
 		}
 
-		afterVectorMeasurements();
+		return afterVectorMeasurements();
 	}
 
-	void rectMeasurement(RectMeasurement elem) throws SegmentParseException {
-		UnitizedDouble<Length> measurement = length(units.getDUnit());
+	boolean rectMeasurement(RectMeasurement elem) {
+		UnitizedDouble<Length> measurement = tryLength(units.getDUnit());
+		if (measurement == null) {
+			return false;
+		}
 		switch (elem) {
 		case EAST:
 			vector.east = measurement;
@@ -1502,35 +1972,43 @@ public class WallsSurveyParser extends LineParser {
 			vector.elevation = measurement;
 			break;
 		}
+		return true;
 	}
 
-	void ctMeasurement(CtMeasurement elem) throws SegmentParseException {
+	boolean ctMeasurement(CtMeasurement elem) throws SegmentParseException {
 		switch (elem) {
 		case DISTANCE:
-			distance();
-			break;
+			return distance();
 		case AZIMUTH:
-			azimuth();
-			break;
+			return azimuth();
 		case INCLINATION:
-			inclination();
-			break;
+			return inclination();
+		default:
+			return false;
 		}
 	}
 
+	static boolean changesSign(UnitizedDouble<Length> measurement, UnitizedDouble<Length> correction) {
+		return (measurement.isPositive() && measurement.add(correction).isNegative())
+			|| (measurement.isNegative() && measurement.add(correction).isPositive());
+	}
+
 	void checkCorrectedSign(int segStart, UnitizedDouble<Length> measurement, UnitizedDouble<Length> correction)
 		throws SegmentParseException {
-		if ((measurement.isPositive() && measurement.add(correction).isNegative())
-			|| (measurement.isNegative() && measurement.add(correction).isPositive())) {
+		if (changesSign(measurement, correction)) {
 			throw new SegmentParseException("correction changes sign of measurement", line.substring(segStart, index));
 		}
 	}
 
-	void distance() throws SegmentParseException {
+	boolean distance() throws SegmentParseException {
 		int start = index;
-		UnitizedDouble<Length> dist = unsignedLength(units.getDUnit());
+		UnitizedDouble<Length> dist = tryUnsignedLength(units.getDUnit());
+		if (dist == null) {
+			return false;
+		}
 		checkCorrectedSign(start, dist, units.getIncd());
 		vector.distance = dist;
+		return true;
 	}
 
 	UnitizedDouble<Angle> azmDifference(UnitizedDouble<Angle> fs, UnitizedDouble<Angle> bs)
@@ -1542,23 +2020,23 @@ public class WallsSurveyParser extends LineParser {
 		return diff.compareTo(oneEighty) > 0 ? new UnitizedDouble<Angle>(360.0, Angle.degrees).sub(diff) : diff;
 	}
 
-	void azimuth() throws SegmentParseException {
+	boolean azimuth() throws SegmentParseException {
 		int start = index;
 
-		oneOf(() -> {
-			vector.frontsightAzimuth = optional(() -> azimuth(units.getAUnit())).orElse(null);
-			maybe(() -> {
-				expect('/');
-				vector.backsightAzimuth = optional(() -> azimuth(units.getAbUnit())).orElse(null);
-			});
-		}, () -> {
-			expect('/');
-			vector.backsightAzimuth = optional(() -> azimuth(units.getAbUnit())).orElse(null);
-		});
+		if (!tryOneOf(() -> {
+			UnitizedDouble<Angle> fs = tryAzimuth(units.getAUnit());
+			if (fs == null && !tryOmitted()) {
+				return false;
+			}
+			vector.frontsightAzimuth = fs;
+			return tryMaybe(this::backsightAzimuth);
+		}, this::backsightAzimuth)) {
+			return false;
+		}
 
 		azmSegment = line.substring(start, index);
 
-		if (vector.frontsightAzimuth != null && vector.backsightAzimuth != null) {
+		if (wants(WallsVisitor.WARNINGS) && vector.frontsightAzimuth != null && vector.backsightAzimuth != null) {
 			UnitizedDouble<Angle> diff = azmDifference(vector.frontsightAzimuth, vector.backsightAzimuth);
 			if (diff.compareTo(units.getTypeabTolerance().mul(1 + 1e-6)) > 0) {
 				visitor
@@ -1573,6 +2051,19 @@ public class WallsSurveyParser extends LineParser {
 							azmSegment));
 			}
 		}
+		return true;
+	}
+
+	boolean backsightAzimuth() throws SegmentParseException {
+		if (!tryExpect('/')) {
+			return false;
+		}
+		UnitizedDouble<Angle> bs = tryAzimuth(units.getAbUnit());
+		if (bs == null && !tryOmitted()) {
+			return false;
+		}
+		vector.backsightAzimuth = bs;
+		return true;
 	}
 
 	UnitizedDouble<Angle> incDifference(UnitizedDouble<Angle> fs, UnitizedDouble<Angle> bs)
@@ -1580,26 +2071,32 @@ public class WallsSurveyParser extends LineParser {
 		return units.isTypevbCorrected() ? fs.sub(bs).abs() : fs.add(bs).abs();
 	}
 
-	void inclination() throws SegmentParseException {
+	boolean inclination() throws SegmentParseException {
 		int start = index;
 
-		oneOf(() -> {
-			vector.frontsightInclination = optionalWithLookahead(() -> inclination(units.getVUnit())).orElse(null);
-			maybe(() -> {
-				expect('/');
-				vector.backsightInclination = optionalWithLookahead(() -> inclination(units.getVbUnit())).orElse(null);
-			});
-		}, () -> {
-			expect('/');
-			vector.backsightInclination = optionalWithLookahead(() -> inclination(units.getVbUnit())).orElse(null);
-		});
+		if (!tryOneOf(() -> {
+			int fsStart = index;
+			UnitizedDouble<Angle> fs = tryInclination(units.getVUnit());
+			if (fs == null) {
+				index = fsStart;
+				if (!tryOmitted()) {
+					return false;
+				}
+			}
+			vector.frontsightInclination = fs;
+			return tryMaybe(this::backsightInclination);
+		}, this::backsightInclination)) {
+			return false;
+		}
 
 		incSegment = line.substring(start, index);
 
 		if (vector.frontsightInclination == null && vector.backsightInclination == null) {
 			vector.frontsightInclination = new UnitizedDouble<Angle>(0, units.getVUnit());
 		}
-		else if (vector.frontsightInclination != null && vector.backsightInclination != null) {
+		else if (wants(WallsVisitor.WARNINGS)
+			&& vector.frontsightInclination != null
+			&& vector.backsightInclination != null) {
 			UnitizedDouble<Angle> diff = incDifference(vector.frontsightInclination, vector.backsightInclination);
 			if (diff.compareTo(units.getTypevbTolerance().mul(1 + 1e-6)) > 0) {
 				visitor
@@ -1614,24 +2111,45 @@ public class WallsSurveyParser extends LineParser {
 							incSegment));
 			}
 		}
+		return true;
+	}
+
+	boolean backsightInclination() throws SegmentParseException {
+		if (!tryExpect('/')) {
+			return false;
+		}
+		int bsStart = index;
+		UnitizedDouble<Angle> bs = tryInclination(units.getVbUnit());
+		if (bs == null) {
+			index = bsStart;
+			if (!tryOmitted()) {
+				return false;
+			}
+		}
+		vector.backsightInclination = bs;
+		return true;
 	}
 
-	void instrumentHeight() throws SegmentParseException {
+	boolean instrumentHeight() throws SegmentParseException {
 		int start = index;
-		Optional<UnitizedDouble<Length>> ih = optional(() -> length(units.getSUnit()));
-		if (ih.isPresent()) {
-			checkCorrectedSign(start, ih.get(), units.getIncs());
-			vector.instrumentHeight = ih.get();
+		UnitizedDouble<Length> ih = tryLength(units.getSUnit());
+		if (ih == null) {
+			return tryOmitted();
 		}
+		checkCorrectedSign(start, ih, units.getIncs());
+		vector.instrumentHeight = ih;
+		return true;
 	}
 
-	void targetHeight() throws SegmentParseException {
+	boolean targetHeight() throws SegmentParseException {
 		int start = index;
-		Optional<UnitizedDouble<Length>> th = optional(() -> length(units.getSUnit()));
-		if (th.isPresent()) {
-			checkCorrectedSign(start, th.get(), units.getIncs());
-			vector.targetHeight = th.get();
+		UnitizedDouble<Length> th = tryLength(units.getSUnit());
+		if (th == null) {
+			return tryOmitted();
 		}
+		checkCorrectedSign(start, th, units.getIncs());
+		vector.targetHeight = th;
+		return true;
 	}
 
 	void lrudMeasurement(LrudMeasurement elem) throws SegmentParseException {
@@ -1641,6 +2159,9 @@ public class WallsSurveyParser extends LineParser {
 			warnIfNegative(measurement.get(), start, "LRUD");
 			checkCorrectedSign(start, measurement.get(), units.getIncs());
 		}
+		if (!wants(WallsVisitor.LRUDS)) {
+			return;
+		}
 		switch (elem) {
 		case LEFT:
 			vector.left = measurement.orElse(null);
@@ -1658,7 +2179,9 @@ public class WallsSurveyParser extends LineParser {
 	}
 
 	<T extends UnitType<T>> void warnIfNegative(UnitizedDouble<T> measurement, int start, String name) {
-		if (UnitizedDouble.isFinite(measurement) && measurement.get(measurement.unit) < 0) {
+		if (wants(WallsVisitor.WARNINGS)
+			&& UnitizedDouble.isFinite(measurement)
+			&& measurement.get(measurement.unit) < 0) {
 			visitor
 				.message(
 					new WallsMessage(
@@ -1668,30 +2191,30 @@ public class WallsSurveyParser extends LineParser {
 		}
 	}
 
-	void afterVectorMeasurements() throws SegmentParseException {
-		maybeWithLookahead(() -> {
-			whitespaceAndOrComma();
-			oneOfWithLookahead(() -> {
-				varianceOverrides();
-				maybeWithLookahead(() -> {
-					whitespaceAndOrComma();
-					lruds();
-				});
-
-			}, () -> {
-				lruds();
-				maybeWithLookahead(() -> {
-					whitespaceAndOrComma();
-					varianceOverrides();
-				});
-
-			});
-		});
-		afterVarianceAndLruds();
+	boolean afterVectorMeasurements() throws SegmentParseException {
+		tryMaybeWithLookahead(() -> tryWhitespaceAndOrComma() && tryOneOfWithLookahead(() -> {
+			if (!varianceOverrides()) {
+				return false;
+			}
+			tryMaybeWithLookahead(() -> tryWhitespaceAndOrComma() && lruds());
+			return true;
+		}, () -> {
+			if (!lruds()) {
+				return false;
+			}
+			tryMaybeWithLookahead(() -> tryWhitespaceAndOrComma() && varianceOverrides());
+			return true;
+		}));
+		return afterVarianceAndLruds();
 	}
 
-	void varianceOverrides() throws SegmentParseException {
-		varianceOverrides(vector);
+	boolean varianceOverrides() throws SegmentParseException {
+		int start = index;
+		if (!tryExpect('(')) {
+			return false;
+		}
+		index = start;
+		return attempt(() -> varianceOverrides(vector)).run();
 	}
 
 	void varianceOverrides(HasVarianceOverrides target) throws SegmentParseException {
@@ -1718,9 +2241,13 @@ public class WallsSurveyParser extends LineParser {
 	static final Pattern lrudStartRx = Pattern.compile("[<*]");
 	static final Pattern chevronRx = Pattern.compile("[<>]");
 
-	void lruds() throws SegmentParseException {
-		Segment start = expect(lrudStartRx);
-		char closing = '<' == start.charAt(0) ? '>' : '*';
+	boolean lruds() throws SegmentParseException {
+		if (index >= line.length() || (line.charAt(index) != '<' && line.charAt(index) != '*')) {
+			// lrudStartRx has no expected items
+			addExpected(index, Collections.emptySet());
+			return false;
+		}
+		char closing = '<' == line.charAt(index++) ? '>' : '*';
 		try {
 			lrudContent();
 		}
@@ -1729,41 +2256,41 @@ public class WallsSurveyParser extends LineParser {
 				visitor.message(new WallsMessage(ex));
 			}
 			else {
-				visitor
-					.message(
-						new WallsMessage(
-							"warning",
-							"missing LRUD measurment; use -- to indicate omitted measurements",
-							ex.getSegment()));
+				if (wants(WallsVisitor.WARNINGS)) {
+					visitor
+						.message(
+							new WallsMessage(
+								"warning",
+								"missing LRUD measurment; use -- to indicate omitted measurements",
+								ex.getSegment()));
+				}
 			}
 			clearExpected();
 		}
-		try {
-			// walls accepts utterly crap data within the LRUDs without erroring,
-			// so there's a lot of utterly crap data in the wild, hence we
-			// unfortunately have to accept it. So just skip to > if the LRUDs opened
-			// with <, or to * if they opened with *.
-			if ('>' == closing) {
-				// But make sure not to skip past a second <, since Walls seems to
-				// tolerate a line like
-				// A <1 , 2, 3, 4, <5,6,7,8>
-				// as a shot from A to <1 with DAV of 2, 3, 4 and LRUDs of 5, 6, 7, 8
-				Matcher m = chevronRx.matcher(line);
-				m.region(index, line.length());
-				if (m.find())
-					index = m.start();
-			}
-			else {
-				index = line.indexOf('*', index);
-			}
-			if (index < 0)
-				index = line.length();
-			expect(closing);
+		// walls accepts utterly crap data within the LRUDs without erroring,
+		// so there's a lot of utterly crap data in the wild, hence we
+		// unfortunately have to accept it. So just skip to > if the LRUDs opened
+		// with <, or to * if they opened with *.
+		if ('>' == closing) {
+			// But make sure not to skip past a second <, since Walls seems to
+			// tolerate a line like
+			// A <1 , 2, 3, 4, <5,6,7,8>
+			// as a shot from A to <1 with DAV of 2, 3, 4 and LRUDs of 5, 6, 7, 8
+			Matcher m = chevronRx.matcher(line);
+			m.region(index, line.length());
+			if (m.find())
+				index = m.start();
+		}
+		else {
+			index = line.indexOf('*', index);
 		}
-		catch (Exception ex) {
+		if (index < 0)
+			index = line.length();
+		if (!tryExpect(closing)) {
 			vector.left = vector.right = vector.up = vector.down = null;
-			throw ex;
+			return false;
 		}
+		return true;
 	}
 
 	void lrudContent() throws SegmentParseException {
@@ -1774,12 +2301,14 @@ public class WallsSurveyParser extends LineParser {
 				whitespaceAndOrComma();
 			}
 			if (!maybe(() -> lrudMeasurement(elem)).isPresent()) {
-				visitor
-					.message(
-						new WallsMessage(
-							"warning",
-							"missing LRUD measurement; use -- to indicate omitted measurements",
-							line.substring(index)));
+				if (wants(WallsVisitor.WARNINGS)) {
+					visitor
+						.message(
+							new WallsMessage(
+								"warning",
+								"missing LRUD measurement; use -- to indicate omitted measurements",
+								line.substring(index)));
+				}
 			}
 		}
 		maybeWhitespaceAndOrComma();
@@ -1798,25 +2327,40 @@ public class WallsSurveyParser extends LineParser {
 	}
 
 	void lrudFacingAngle() throws SegmentParseException {
-		vector.lrudFacingAzimuth = azimuth(units.getAUnit());
+		UnitizedDouble<Angle> azimuth = azimuth(units.getAUnit());
+		if (wants(WallsVisitor.LRUDS)) {
+			vector.lrudFacingAzimuth = azimuth;
+		}
 	}
 
 	void lrudCFlag() throws SegmentParseException {
 		expectIgnoreCase('C');
-		vector.cFlag = true;
+		if (wants(WallsVisitor.LRUDS)) {
+			vector.cFlag = true;
+		}
 	}
 
-	void afterVarianceAndLruds() throws SegmentParseException {
+	boolean afterVarianceAndLruds() throws SegmentParseException {
 		maybeWhitespaceAndOrComma();
-		if (maybe(() -> inlineDirective()).isPresent()) {
+		int start = index;
+		if (!tryMaybe(this::inlineDirective)) {
+			return false;
+		}
+		if (index > start) {
 			maybeWhitespace();
 		}
-		inlineCommentOrEndOfLine();
+		return tryInlineCommentOrEndOfLine();
 	}
 
-	void inlineDirective() throws SegmentParseException {
+	static final Set<String> segmentDirectiveExpected = expectedSet("#s", "#seg", "#segment");
+
+	boolean inlineDirective() throws SegmentParseException {
+		if (scanDirective() < 0) {
+			addExpected(index, segmentDirectiveExpected);
+			return false;
+		}
 		// currently this is the only directive that can be on a vector line
-		inlineSegmentDirective(vector);
+		return attempt(() -> inlineSegmentDirective(vector)).run();
 	}
 
 	void inlineFixDirective() throws SegmentParseException {
@@ -1845,7 +2389,7 @@ public class WallsSurveyParser extends LineParser {
 	void fixedStation() throws SegmentParseException {
 		String fixed = station().toString();
 		fixStation = new FixedStation();
-		fixStation.segment = segment == null ? null : new ArrayList<>(segment);
+		fixStation.segment = currentSegment();
 		fixStation.name = fixed;
 	}
 
@@ -1914,7 +2458,12 @@ public class WallsSurveyParser extends LineParser {
 	void inlineNote(HasNote target) throws SegmentParseException {
 		expect('/');
 
-		target.setNote(escapedTextUntil(inlineNoteEndRx, "<NOTE>").trim());
+		if (wants(WallsVisitor.NOTES)) {
+			target.setNote(escapedTextUntil(inlineNoteEndRx, "<NOTE>").trim());
+		}
+		else {
+			escapedTextUntil(inlineNoteEndRx, (StringBuilder) null);
+		}
 	}
 
 	void afterInlineFixNote() throws SegmentParseException {
@@ -1925,20 +2474,31 @@ public class WallsSurveyParser extends LineParser {
 	}
 
 	void inlineCommentOrEndOfLine() throws SegmentParseException {
-		oneOf(() -> {
-			inlineComment();
-		}, () -> {
-			endOfLine();
-		});
+		if (!tryInlineCommentOrEndOfLine()) {
+			throwAllExpected();
+		}
 	}
 
-	void comment() throws SegmentParseException {
-		expect(';');
-		visitor.parsedComment(remaining().toString());
+	boolean tryInlineCommentOrEndOfLine() {
+		return inlineComment() || tryEndOfLine();
 	}
 
-	void inlineComment() throws SegmentParseException {
-		expect(';');
+	boolean comment() {
+		if (!tryExpect(';')) {
+			return false;
+		}
+		remainingComment();
+		return true;
+	}
+
+	boolean inlineComment() {
+		if (!tryExpect(';')) {
+			return false;
+		}
+		if (!wants(WallsVisitor.COMMENTS)) {
+			index = line.length();
+			return true;
+		}
 		String comment = remaining().toString();
 		if (comment != null && !comment.isEmpty()) {
 			if (vector != null) {
@@ -1949,10 +2509,16 @@ public class WallsSurveyParser extends LineParser {
 			}
 			visitor.parsedComment(comment);
 		}
+		return true;
 	}
 
 	void inlineComment(HasComment target) throws SegmentParseException {
 		expect(';');
-		target.setComment(remaining().toString());
+		if (wants(WallsVisitor.COMMENTS)) {
+			target.setComment(remaining().toString());
+		}
+		else {
+			index = line.length();
+		}
 	}
 }
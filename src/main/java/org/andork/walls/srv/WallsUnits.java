@@ -6,10 +6,13 @@
 
 package org.andork.walls.srv;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.WeakHashMap;
 import java.util.function.Consumer;
 
 import org.andork.unit.Angle;
@@ -198,10 +201,31 @@ public final class WallsUnits {
 
 	private volatile Data data;
 
+	/**
+	 * The shared instance for each distinct units state. {@link Data} must not be modified once it's in here.
+	 */
+	private static final Map<Data, WeakReference<WallsUnits>> interned = new WeakHashMap<>();
+
 	WallsUnits(Data data) {
 		this.data = data;
 	}
 
+	/**
+	 * @return the shared {@code WallsUnits} for units equal to {@code data}, which must not be modified afterward.
+	 *         Equal units states interned this way are the same instance (and have the same {@link Data} instance).
+	 */
+	static WallsUnits intern(Data data) {
+		synchronized (interned) {
+			WeakReference<WallsUnits> ref = interned.get(data);
+			WallsUnits result = ref == null ? null : ref.get();
+			if (result == null) {
+				result = new WallsUnits(data);
+				interned.put(data, new WeakReference<>(result));
+			}
+			return result;
+		}
+	}
+
 	public WallsUnits() {
 		this(Data.initial);
 	}
@@ -937,8 +961,12 @@ public final class WallsUnits {
 		return this.data == data;
 	}
 
+	Data data() {
+		return data;
+	}
+
 	boolean dataEquals(Data data) {
-		return data.equals(data);
+		return this.data.equals(data);
 	}
 
 	@Override
@@ -986,6 +1014,15 @@ public final class WallsUnits {
 		return name.replaceFirst("^:+", "");
 	}
 
+	/**
+	 * Interns the name {@link #processStationName(String)} would return in {@code stations}, without building it.
+	 *
+	 * @return the id of the name, or -1 if {@code name} is {@code null}
+	 */
+	public int processStationId(CharSequence name, StationSymbolTable stations) {
+		return stations.resolve(name, getPrefix(), getCase_());
+	}
+
 	public UnitizedDouble<Angle> averageInclination(UnitizedDouble<Angle> fs, UnitizedDouble<Angle> bs) {
 		if (bs != null && !isTypevbCorrected()) {
 			bs = bs.negate();
@@ -6,6 +6,38 @@ import java.util.List;
 import org.andork.walls.WallsMessage;
 
 public interface WallsVisitor {
+    /**
+     * {@link #interests()} bit for {@link #parsedComment(String)} and the comments of vectors and fixed stations.
+     */
+    int COMMENTS = 1;
+    /**
+     * {@link #interests()} bit for {@link #parsedNote(String, String)} and the notes of fixed stations.
+     */
+    int NOTES = 1 << 1;
+    /**
+     * {@link #interests()} bit for the LRUDs of vectors (including their facing azimuth and C flag).
+     */
+    int LRUDS = 1 << 2;
+    /**
+     * {@link #interests()} bit for {@link #parsedFlag(List, String)}.
+     */
+    int FLAGS = 1 << 3;
+    /**
+     * {@link #interests()} bit for {@link #message(WallsMessage) messages} with severity {@code warning}.
+     */
+    int WARNINGS = 1 << 4;
+    int ALL = ~0;
+
+    /**
+     * Tells the parser which optional events and fields this visitor needs, as a combination of {@link #COMMENTS},
+     * {@link #NOTES}, {@link #LRUDS}, {@link #FLAGS} and {@link #WARNINGS}. The parser still validates the syntax of
+     * everything else, but skips building it: it won't call the corresponding methods and leaves the corresponding
+     * fields {@code null}.
+     */
+    default int interests() {
+        return ALL;
+    }
+
     void parsedVector(Vector parsedVector);
     void parsedFixStation(FixedStation station);
     void parsedComment(String parsedComment);
@@ -0,0 +1,180 @@
+package org.andork.walls;
+
+import static org.andork.walls.LineParserAssertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import org.andork.segment.Segment;
+import org.andork.segment.SegmentParseException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LineParserTests {
+	LineParser parser(String line) {
+		return new LineParser(new Segment(line, null, 0, 0));
+	}
+
+	@Test
+	public void testTryMaybeRecordsExpectedWithoutThrowing() throws SegmentParseException {
+		LineParser p = parser("b");
+		Assert.assertTrue(p.tryMaybe(() -> p.tryExpect('a')));
+		Assert.assertEquals(0, p.index);
+		Assert.assertEquals(new LinkedHashSet<>(Arrays.asList("a")), p.expectedItems);
+		Assert.assertTrue(p.tryMaybe(() -> p.tryExpect('b')));
+		Assert.assertTrue(p.isAtEnd());
+	}
+
+	@Test
+	public void testTryMaybeFailsIfInputWasConsumed() throws SegmentParseException {
+		LineParser p = parser("ab");
+		Assert.assertFalse(p.tryMaybe(() -> p.tryExpect('a') && p.tryExpect('c')));
+		Assert.assertEquals(1, p.index);
+		Assert.assertEquals(new LinkedHashSet<>(Arrays.asList("c")), p.expectedItems);
+	}
+
+	@Test
+	public void testTryOneOfStopsAtAttemptThatConsumedInput() throws SegmentParseException {
+		LineParser p = parser("ab");
+		Assert.assertFalse(p.tryOneOf(() -> p.tryExpect('a') && p.tryExpect('c'), () -> p.tryExpect('a')));
+		Assert.assertEquals(1, p.index);
+		assertThrows(() -> p.require(() -> false));
+	}
+
+	@Test
+	public void testTryEndOfLine() throws SegmentParseException {
+		LineParser p = parser("a");
+		Assert.assertFalse(p.tryEndOfLine());
+		Assert.assertEquals(new LinkedHashSet<>(Arrays.asList("<END_OF_LINE>")), p.expectedItems);
+		Assert.assertTrue(p.tryExpect('a') && p.tryEndOfLine());
+	}
+
+	@Test
+	public void testTryMaybeWithLookaheadBacktracks() throws SegmentParseException {
+		LineParser p = parser("ab");
+		Assert.assertFalse(p.tryMaybeWithLookahead(() -> p.tryExpect('a') && p.tryExpect('c')));
+		Assert.assertEquals(0, p.index);
+		Assert.assertTrue(p.tryOneOfWithLookahead(
+			() -> p.tryExpect('a') && p.tryExpect('c'),
+			() -> p.tryExpect('a') && p.tryExpect('b')));
+		Assert.assertTrue(p.isAtEnd());
+	}
+
+	@Test
+	public void testRequireMatchesExceptionBasedMessage() throws SegmentParseException {
+		LineParser p = parser("x");
+		String message = null;
+		try {
+			p.require(() -> p.tryOneOf(() -> p.tryExpect('a'), () -> p.tryExpect('b')));
+		}
+		catch (SegmentParseExpectedException ex) {
+			message = ex.getMessage();
+		}
+
+		LineParser q = parser("x");
+		String expectedMessage = null;
+		try {
+			q.oneOf(() -> q.expect('a'), () -> q.expect('b'));
+		}
+		catch (SegmentParseExpectedException ex) {
+			expectedMessage = ex.getMessage();
+		}
+		Assert.assertNotNull(expectedMessage);
+		Assert.assertEquals(expectedMessage, message);
+	}
+
+	@Test
+	public void testCharMapMatchesMapDispatch() throws SegmentParseException {
+		Map<Character, Integer> map = new HashMap<>();
+		for (char c : "mfiMFI".toCharArray()) {
+			map.put(c, (int) c);
+		}
+		CharMap<Integer> charMap = new CharMap<>(map);
+		Assert.assertEquals(map.keySet().size(), charMap.expectedItems().size());
+
+		LineParser p = parser("Fx");
+		Assert.assertEquals(Integer.valueOf('F'), p.oneOf(charMap));
+		Assert.assertNull(p.oneOf(charMap, null));
+		Assert.assertEquals(1, p.index);
+
+		String message = null;
+		try {
+			p.oneOf(charMap);
+		}
+		catch (SegmentParseExpectedException ex) {
+			message = ex.getMessage();
+		}
+		String expectedMessage = null;
+		try {
+			LineParser q = parser("Fx");
+			q.index = 1;
+			q.oneOf(map);
+		}
+		catch (SegmentParseExpectedException ex) {
+			expectedMessage = ex.getMessage();
+		}
+		Assert.assertNotNull(expectedMessage);
+		Assert.assertEquals(expectedMessage, message);
+	}
+
+	@Test
+	public void testCharMapWithout() {
+		Map<Character, String> map = new LinkedHashMap<>();
+		map.put('d', "d");
+		map.put('a', "a");
+		map.put('D', "d");
+		map.put('A', "a");
+		CharMap<String> charMap = new CharMap<>(map).without('a', 'A');
+		Assert.assertEquals(new LinkedHashSet<>(Arrays.asList("d", "D")), charMap.expectedItems());
+		Assert.assertFalse(charMap.containsKey('a'));
+		Assert.assertEquals("d", charMap.get('D'));
+		Assert.assertNull(charMap.get((char) 300));
+	}
+
+	@Test
+	public void testAttemptAdapter() throws SegmentParseException {
+		LineParser p = parser("a b");
+		Assert.assertTrue(p.attempt(() -> p.expect('a')).run());
+		Assert.assertFalse(p.attempt(() -> p.expect('a')).run());
+		Assert.assertEquals(1, p.index);
+		Assert.assertTrue(p.expectedItems.contains("a"));
+		p.require(p.attempt(p::whitespace));
+		assertThrows(() -> p.require(p.attempt(() -> p.expect('c'))));
+	}
+
+	@Test
+	public void testCombinatorsReturnNestedResults() throws SegmentParseException {
+		LineParser p = parser("ab");
+		Assert.assertEquals("a",
+				p.maybe(() -> p.oneOf(() -> p.expect('x'), () -> p.maybe(() -> p.expect('a')).get())).get().toString());
+		Assert.assertFalse(p.maybe(() -> p.expect('x')).isPresent());
+		Assert.assertEquals("b", p.oneOfWithLookahead(() -> p.expect('x'), () -> p.expect('b')).toString());
+		Assert.assertTrue(p.isAtEnd());
+	}
+
+	@Test
+	public void testCombinatorsThrowIfInputWasConsumed() throws SegmentParseException {
+		LineParser p = parser("ab");
+		try {
+			p.oneOf(() -> {
+				p.expect('a');
+				return p.expect('c');
+			}, () -> p.expect('a'));
+			Assert.fail("expected oneOf to throw");
+		}
+		catch (SegmentParseExpectedException ex) {
+			Assert.assertEquals(1, ex.getSegment().startCol);
+			Assert.assertEquals(new LinkedHashSet<>(Arrays.asList("c")), ex.expectedItems());
+		}
+
+		LineParser q = parser("ab");
+		Assert.assertFalse(q.maybeWithLookahead(() -> {
+			q.expect('a');
+			return q.expect('c');
+		}).isPresent());
+		Assert.assertEquals(0, q.index);
+	}
+}
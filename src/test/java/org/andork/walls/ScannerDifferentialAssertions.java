@@ -0,0 +1,66 @@
+package org.andork.walls;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Assert;
+
+/**
+ * Checks that a hand-written scanner accepts exactly the same text as the regex it replaces.
+ */
+public class ScannerDifferentialAssertions {
+	@FunctionalInterface
+	public static interface Scanner {
+		/**
+		 * @return the end index of the token at the start of {@code text}, or {@code -1} if there is none.
+		 */
+		public int scan(String text);
+	}
+
+	/**
+	 * @return the end index of the match of {@code rx} at the start of {@code text} (the way
+	 *         {@link LineParser#expect(Pattern, String...)} finds it), or {@code -1} if there is none.
+	 */
+	public static int regexEnd(Pattern rx, String text) {
+		Matcher m = rx.matcher(text);
+		return m.find() && m.start() == 0 ? m.end() : -1;
+	}
+
+	/**
+	 * @return every string of up to {@code maxLength} characters from {@code alphabet}, plus {@code randomCount}
+	 *         longer random strings.
+	 */
+	public static List<String> corpus(String alphabet, int maxLength, int randomCount) {
+		List<String> result = new ArrayList<>();
+		result.add("");
+		int start = 0;
+		for (int length = 1; length <= maxLength; length++) {
+			int end = result.size();
+			for (int i = start; i < end; i++) {
+				for (int k = 0; k < alphabet.length(); k++) {
+					result.add(result.get(i) + alphabet.charAt(k));
+				}
+			}
+			start = end;
+		}
+		Random random = new Random(alphabet.hashCode());
+		for (int i = 0; i < randomCount; i++) {
+			StringBuilder text = new StringBuilder();
+			int length = maxLength + 1 + random.nextInt(16);
+			for (int k = 0; k < length; k++) {
+				text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+			}
+			result.add(text.toString());
+		}
+		return result;
+	}
+
+	public static void assertSameAcceptance(Pattern rx, Scanner scanner, List<String> corpus) {
+		for (String text : corpus) {
+			Assert.assertEquals("text: \"" + text + "\"", regexEnd(rx, text), scanner.scan(text));
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package org.andork.walls;
+
+import static org.andork.walls.ScannerDifferentialAssertions.assertSameAcceptance;
+import static org.andork.walls.ScannerDifferentialAssertions.corpus;
+
+import java.util.Random;
+
+import org.andork.segment.Segment;
+import org.andork.segment.SegmentParseException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ScannerDifferentialTests {
+	static LineParser parser(String text) {
+		return new LineParser(new Segment(text, null, 0, 0));
+	}
+
+	@Test
+	public void testWhitespace() {
+		assertSameAcceptance(LineParser.whitespaceRx, text -> {
+			LineParser p = parser(text);
+			return p.tryWhitespace() ? p.index : -1;
+		}, corpus(" \t\r\n\u000B\fa,", 4, 500));
+	}
+
+	@Test
+	public void testWhitespaceAndOrComma() {
+		assertSameAcceptance(LineParser.whitespaceAndOrCommaRx, text -> {
+			LineParser p = parser(text);
+			return p.tryWhitespaceAndOrComma() ? p.index : -1;
+		}, corpus(" \t,a", 7, 1000));
+	}
+
+	@Test
+	public void testUnsignedIntLiteral() {
+		assertSameAcceptance(LineParser.unsignedIntLiteralRx, text -> {
+			LineParser p = parser(text);
+			return p.scanUnsignedIntLiteral(0);
+		}, corpus("09a.-", 6, 1000));
+	}
+
+	@Test
+	public void testUnsignedDoubleLiteral() {
+		assertSameAcceptance(LineParser.unsignedDoubleLiteralRx, text -> {
+			LineParser p = parser(text);
+			return p.scanUnsignedDoubleLiteral(0);
+		}, corpus("05.a+e", 6, 1000));
+	}
+
+	@Test
+	public void testUnsignedDoubleLiteralValues() throws SegmentParseException {
+		for (String text : corpus("05.", 7, 0)) {
+			if (ScannerDifferentialAssertions.regexEnd(LineParser.unsignedDoubleLiteralRx, text) != text.length()) {
+				continue;
+			}
+			Assert.assertEquals(text, Double.valueOf(text), parser(text).unsignedDoubleLiteral(), 0.0);
+		}
+	}
+
+	@Test
+	public void testUnsignedDoubleLiteralRounding() throws SegmentParseException {
+		Random random = new Random(3);
+		for (int i = 0; i < 100000; i++) {
+			StringBuilder text = new StringBuilder();
+			int intDigits = random.nextInt(10);
+			int fractionDigits = random.nextInt(intDigits == 0 ? 24 : 20) + (intDigits == 0 ? 1 : 0);
+			for (int k = 0; k < intDigits; k++) {
+				text.append((char) ('0' + random.nextInt(10)));
+			}
+			if (fractionDigits > 0 || random.nextBoolean()) {
+				text.append('.');
+			}
+			for (int k = 0; k < fractionDigits; k++) {
+				text.append((char) ('0' + random.nextInt(10)));
+			}
+			String str = text.toString();
+			Assert.assertEquals(
+				str,
+				Double.doubleToLongBits(Double.valueOf(str)),
+				Double.doubleToLongBits(parser(str).unsignedDoubleLiteral()));
+		}
+	}
+
+	@Test
+	public void testUnsignedDoubleLiteralOrNaN() {
+		LineParser p = parser("a");
+		Assert.assertTrue(Double.isNaN(p.unsignedDoubleLiteralOrNaN()));
+		Assert.assertEquals(0, p.index);
+		Assert.assertTrue(p.expectedItems.contains("<UNSIGNED_DOUBLE_LITERAL>"));
+		Assert.assertEquals(2.5, parser("2.5a").unsignedDoubleLiteralOrNaN(), 0.0);
+	}
+
+	@Test
+	public void testIntLiterals() throws SegmentParseException {
+		Assert.assertEquals(Integer.MAX_VALUE, parser(String.valueOf(Integer.MAX_VALUE)).unsignedIntLiteral());
+		Assert.assertEquals(-12, parser("-0012").intLiteral());
+		Assert.assertEquals(12, parser("+12").intLiteral());
+		Assert.assertEquals(-2.5, parser("-2.5").doubleLiteral(), 0.0);
+		try {
+			parser("2147483648").unsignedIntLiteral();
+			Assert.fail("expected NumberFormatException");
+		}
+		catch (NumberFormatException ex) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package org.andork.walls;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.andork.segment.Segment;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SegmentParseExpectedExceptionTests {
+	Segment segment = new Segment("abc", null, 0, 0).charAtAsSegment(1);
+
+	@Test
+	public void testLightweightMessageIsIdentical() {
+		Assert.assertEquals(
+			new SegmentParseExpectedException(segment, "<STATION>").getMessage(),
+			SegmentParseExpectedException.lightweight(segment, "<STATION>").getMessage());
+
+		Set<String> items = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList("a", "b", "c")));
+		Assert.assertEquals(
+			new SegmentParseExpectedException(segment, "a", "b", "c").getMessage(),
+			SegmentParseExpectedException.lightweight(segment, items).getMessage());
+		Assert.assertEquals(
+			new SegmentParseExpectedException(segment, "a", "b", "c").toString(),
+			SegmentParseExpectedException.lightweight(segment, items).toString());
+	}
+
+	@Test
+	public void testLightweightSharesExpectedItems() {
+		Set<String> items = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList("a", "b")));
+		SegmentParseExpectedException ex = SegmentParseExpectedException.lightweight(segment, items);
+		Assert.assertSame(items, ex.expectedItems());
+		Assert.assertSame(segment, ex.getSegment());
+		Assert.assertEquals(0, ex.getStackTrace().length);
+	}
+}
@@ -2,13 +2,16 @@ package org.andork.walls.srv;
 
 import static org.andork.walls.LineParserAssertions.assertThrows;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import org.andork.segment.SegmentParseException;
 import org.andork.unit.Angle;
 import org.andork.unit.Length;
 import org.andork.unit.UnitType;
 import org.andork.unit.UnitizedDouble;
+import org.andork.walls.WallsMessage;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -63,10 +66,24 @@ public class ApplyHeightCorrectionsTest {
 				tape.get(1) == TapingMethodMeasurement.STATION &&
 				instY.isZero() && targetY.isZero();
 
+		double[] distance = { vector.distance.doubleValue(Length.meters) };
+		double[] fsInc = { vector.frontsightInclination == null ? Double.NaN : vector.frontsightInclination.doubleValue(Angle.radians) };
+		double[] bsInc = { Double.NaN };
+		double[] ih = { vector.instrumentHeight.doubleValue(Length.meters) };
+		double[] th = { vector.targetHeight.doubleValue(Length.meters) };
+		byte[] status = new byte[1];
+		HeightCorrections.apply(vector.units, distance, fsInc, bsInc, ih, th, status, 0, 1);
+
 		if (!isDiveShot && instHeightAboveTape.sub(targetHeightAboveTape).abs().compareTo(vector.distance) > 0) {
 			assertThrows(() -> vector.applyHeightCorrections());
+			Assert.assertEquals(HeightCorrections.AMBIGUOUS, status[0]);
 		} else {
 			vector.applyHeightCorrections();
+			Assert.assertNotEquals(HeightCorrections.AMBIGUOUS, status[0]);
+			Assert.assertEquals(vector.distance.doubleValue(Length.meters), distance[0], 1e-12);
+			Assert.assertEquals(vector.frontsightInclination.doubleValue(Angle.radians), fsInc[0], 1e-12);
+			Assert.assertEquals(vector.instrumentHeight.doubleValue(Length.meters), ih[0], 0);
+			Assert.assertEquals(vector.targetHeight.doubleValue(Length.meters), th[0], 0);
 			Assert.assertEquals(
 					vector.distance.add(units.getIncd()).doubleValue(Length.meters),
 					expectedDist.doubleValue(Length.meters), 1e-9);
@@ -119,4 +136,131 @@ public class ApplyHeightCorrectionsTest {
         testInstance(Length.meters(3), Length.meters(8), Length.meters(68), Length.meters(68), Length.meters(7), Length.meters(2));
         testInstance(Length.meters(3), Length.meters(58), Length.meters(2), Length.meters(-62), Length.meters(7), Length.meters(2));
     }
+
+	static UnitizedDouble<Length> randomFeet(Random random, double nullChance, double min, double max) {
+		return random.nextDouble() < nullChance ? null : Length.feet(min + random.nextDouble() * (max - min));
+	}
+
+	static UnitizedDouble<Angle> randomDegrees(Random random, double nullChance, double min, double max) {
+		return random.nextDouble() < nullChance ? null : Angle.degrees(min + random.nextDouble() * (max - min));
+	}
+
+	static double meters(UnitizedDouble<Length> length) {
+		return length == null ? Double.NaN : length.doubleValue(Length.meters);
+	}
+
+	static double radians(UnitizedDouble<Angle> angle) {
+		return angle == null ? Double.NaN : angle.doubleValue(Angle.radians);
+	}
+
+	/**
+	 * Checks that {@link HeightCorrections} gives the same results and error cases as
+	 * {@link Vector#applyHeightCorrections(WallsVisitor)} for random shots and units.
+	 */
+	@Test
+	public void testHeightCorrectionsMatchVector() throws SegmentParseException {
+		String[] tapes = { "it", "is", "st", "ss" };
+		Random random = new Random(5);
+		int[] statusCounts = new int[4];
+		double[] scratch = new double[HeightCorrections.SCRATCH_SIZE];
+		for (int i = 0; i < 20000; i++) {
+			MutableWallsUnits units = new MutableWallsUnits();
+			units.setDUnit(Length.feet);
+			units.setTape(WallsSurveyParser.tapingMethods.get(tapes[random.nextInt(tapes.length)]));
+			units.setTypevbCorrected(random.nextBoolean());
+			units.setIncd(random.nextBoolean() ? Length.feet(0) : randomFeet(random, 0, -1, 1));
+			units.setIncs(random.nextBoolean() ? Length.feet(0) : randomFeet(random, 0, -1, 1));
+			units.setInch(random.nextBoolean() ? Length.feet(0) : randomFeet(random, 0, -5, 5));
+			units.setIncv(random.nextBoolean() ? Angle.degrees(0) : randomDegrees(random, 0, -2, 2));
+			units.setIncvb(random.nextBoolean() ? Angle.degrees(0) : randomDegrees(random, 0, -2, 2));
+
+			Vector vector = new Vector();
+			vector.units = units.toImmutable();
+			vector.distance = randomFeet(random, 0, 0.5, 100);
+			vector.frontsightInclination = random.nextInt(20) == 0
+				? Angle.degrees(random.nextBoolean() ? 90 : -90)
+				: randomDegrees(random, 0.15, -90, 90);
+			if (random.nextBoolean()) {
+				double fs = vector.frontsightInclination == null ? 0 : vector.frontsightInclination.doubleValue(Angle.degrees);
+				double bs = (units.isTypevbCorrected() ? fs : -fs) + random.nextDouble() * 2 - 1;
+				vector.backsightInclination = Angle.degrees(Math.max(-90, Math.min(90, bs)));
+			}
+			vector.instrumentHeight = randomFeet(random, 0.25, -5, 5);
+			vector.targetHeight = randomFeet(random, 0.25, -5, 5);
+
+			double[] distance = { meters(vector.distance) };
+			double[] fsInc = { radians(vector.frontsightInclination) };
+			double[] bsInc = { radians(vector.backsightInclination) };
+			double[] ih = { meters(vector.instrumentHeight) };
+			double[] th = { meters(vector.targetHeight) };
+			byte[] status = new byte[1];
+			if (i % 2 == 0) {
+				HeightCorrections.apply(vector.units, distance, fsInc, bsInc, ih, th, status, 0, 1);
+			}
+			else {
+				HeightCorrections.apply(vector.units, distance, fsInc, bsInc, ih, th, status, 0, 1, scratch);
+			}
+			statusCounts[status[0]]++;
+
+			List<WallsMessage> messages = new ArrayList<>();
+			boolean changed;
+			try {
+				changed = vector.applyHeightCorrections(new AbstractWallsVisitor() {
+					@Override
+					public void message(WallsMessage message) {
+						messages.add(message);
+					}
+				});
+			}
+			catch (SegmentParseException ex) {
+				Assert.assertEquals("shot " + i, HeightCorrections.AMBIGUOUS, status[0]);
+				continue;
+			}
+			if (!changed) {
+				Assert.assertEquals("shot " + i, HeightCorrections.UNCHANGED, status[0]);
+				continue;
+			}
+			Assert.assertEquals(
+				"shot " + i,
+				messages.isEmpty() ? HeightCorrections.CORRECTED : HeightCorrections.DEPTH_EXCEEDS_DISTANCE,
+				status[0]);
+			Assert.assertEquals("shot " + i, meters(vector.distance), distance[0], 1e-9);
+			Assert.assertEquals("shot " + i, radians(vector.frontsightInclination), fsInc[0], 1e-9);
+			if (vector.backsightInclination == null) {
+				Assert.assertTrue("shot " + i, Double.isNaN(bsInc[0]));
+			}
+			else {
+				Assert.assertEquals("shot " + i, radians(vector.backsightInclination), bsInc[0], 1e-9);
+			}
+			// neither version clears the heights
+			Assert.assertEquals("shot " + i, meters(vector.instrumentHeight), ih[0], 0);
+			Assert.assertEquals("shot " + i, meters(vector.targetHeight), th[0], 0);
+		}
+		for (int count : statusCounts) {
+			Assert.assertTrue(count > 0);
+		}
+	}
+
+	@Test
+	public void testDepthExceedsDistanceMessage() throws SegmentParseException {
+		MutableWallsUnits units = new MutableWallsUnits();
+		units.setTape(WallsSurveyParser.tapingMethods.get("ss"));
+		Vector vector = new Vector();
+		vector.units = units.toImmutable();
+		vector.distance = Length.meters(3);
+		vector.instrumentHeight = Length.meters(5);
+		vector.targetHeight = Length.meters(0);
+		UnitizedDouble<Length> tapeDist = vector.distance.add(units.getIncd());
+
+		List<WallsMessage> messages = new ArrayList<>();
+		vector.applyHeightCorrections(new AbstractWallsVisitor() {
+			@Override
+			public void message(WallsMessage message) {
+				messages.add(message);
+			}
+		});
+		Assert.assertEquals(1, messages.size());
+		Assert.assertTrue(messages.get(0).message, messages.get(0).message.contains(" (not " + tapeDist + ")"));
+		Assert.assertEquals(5, vector.distance.doubleValue(Length.meters), 1e-9);
+	}
 }
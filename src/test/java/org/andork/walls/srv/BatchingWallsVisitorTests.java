@@ -0,0 +1,134 @@
+package org.andork.walls.srv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.andork.segment.SegmentParseException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BatchingWallsVisitorTests {
+	static class BatchRecorder extends AbstractWallsVisitor implements WallsBatchVisitor {
+		final int interests;
+		final List<String> events = new ArrayList<>();
+
+		BatchRecorder(int interests) {
+			this.interests = interests;
+		}
+
+		@Override
+		public int interests() {
+			return interests;
+		}
+
+		@Override
+		public void parsedVectors(VectorTable batch) {
+			StringBuilder event = new StringBuilder("batch");
+			for (int row = 0; row < batch.size(); row++) {
+				event.append(' ').append(batch.station(batch.fromId(row)));
+			}
+			events.add(event.toString());
+		}
+
+		@Override
+		public void parsedComment(String comment) {
+			events.add("comment " + comment);
+		}
+	}
+
+	static void parse(WallsVisitor visitor, String... lines) throws SegmentParseException {
+		WallsSurveyParser parser = new WallsSurveyParser();
+		parser.setVisitor(visitor);
+		for (String line : lines) {
+			parser.parseLine(line);
+		}
+	}
+
+	@Test
+	public void testFixedSizeBatches() throws SegmentParseException {
+		BatchRecorder recorder = new BatchRecorder(0);
+		BatchingWallsVisitor batching = new BatchingWallsVisitor(recorder, 2);
+		parse(batching, "A1 A2 1 2 3", "A2 A3 1 2 3 ;c", "A3 A4 1 2 3", "A4 A5 1 2 3", "A5 A6 1 2 3");
+		batching.flush();
+		batching.flush();
+		Assert.assertEquals(3, recorder.events.size());
+		Assert.assertEquals("batch A1 A2", recorder.events.get(0));
+		Assert.assertEquals("batch A3 A4", recorder.events.get(1));
+		Assert.assertEquals("batch A5", recorder.events.get(2));
+	}
+
+	@Test
+	public void testOtherEventsStayInOrder() throws SegmentParseException {
+		BatchRecorder recorder = new BatchRecorder(WallsVisitor.ALL);
+		BatchingWallsVisitor batching = new BatchingWallsVisitor(recorder, 10);
+		parse(batching, "A1 A2 1 2 3", "A2 A3 1 2 3", "; between", "A3 A4 1 2 3");
+		batching.flush();
+		Assert.assertEquals(3, recorder.events.size());
+		Assert.assertEquals("batch A1 A2", recorder.events.get(0));
+		Assert.assertEquals("comment  between", recorder.events.get(1));
+		Assert.assertEquals("batch A3", recorder.events.get(2));
+	}
+
+	@Test
+	public void testDefaultDeliversEachVector() throws SegmentParseException {
+		String[] lines = { "#units feet", "A1 A2 1 2 3 <4,5,6,8>", "#segment /s", "A2 A3 10 N20E -3", "A3 <1,2,3,4>" };
+
+		List<String> expected = new ArrayList<>();
+		parse(new AbstractWallsVisitor() {
+			@Override
+			public void parsedVector(Vector vector) {
+				expected.add(FastVectorLineDifferentialTests.describe(vector));
+			}
+		}, lines);
+
+		List<String> actual = new ArrayList<>();
+		class Unbatched extends AbstractWallsVisitor implements WallsBatchVisitor {
+			@Override
+			public void parsedVector(Vector vector) {
+				actual.add(FastVectorLineDifferentialTests.describe(vector));
+			}
+		}
+		BatchingWallsVisitor batching = new BatchingWallsVisitor(new Unbatched(), 2);
+		parse(batching, lines);
+		batching.flush();
+		Assert.assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testDefaultVectorsAreTheParsedVectors() throws SegmentParseException {
+		List<Vector> kept = new ArrayList<>();
+		class Unbatched extends AbstractWallsVisitor implements WallsBatchVisitor {
+			@Override
+			public void parsedVector(Vector vector) {
+				kept.add(vector);
+			}
+		}
+		BatchingWallsVisitor batching = new BatchingWallsVisitor(new Unbatched(), 2);
+		parse(batching, "A1 A2 1 2 3", "A2 A3 1 2 3", "A3 A4 1 2 3");
+		Assert.assertEquals(3, kept.size());
+		Assert.assertEquals("A1", kept.get(0).from);
+		Assert.assertEquals("A2", kept.get(1).from);
+		Assert.assertEquals("A3", kept.get(2).from);
+		Assert.assertNotSame(kept.get(0), kept.get(1));
+		Assert.assertNotNull(kept.get(0).sourceSegment);
+	}
+
+	@Test
+	public void testIdsAreResetBetweenBatches() throws SegmentParseException {
+		List<Integer> stationCounts = new ArrayList<>();
+		BatchRecorder recorder = new BatchRecorder(0) {
+			@Override
+			public void parsedVectors(VectorTable batch) {
+				super.parsedVectors(batch);
+				stationCounts.add(batch.stationCount());
+			}
+		};
+		BatchingWallsVisitor batching = new BatchingWallsVisitor(recorder, 2);
+		parse(batching, "A1 A2 1 2 3", "A2 A3 1 2 3", "A3 A4 1 2 3", "A4 A5 1 2 3", "A5 A6 1 2 3");
+		batching.flush();
+		Assert.assertEquals("batch A3 A4", recorder.events.get(1));
+		Assert.assertEquals("batch A5", recorder.events.get(2));
+		Assert.assertEquals(Arrays.asList(3, 3, 2), stationCounts);
+	}
+}
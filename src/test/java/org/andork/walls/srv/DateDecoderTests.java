@@ -0,0 +1,109 @@
+package org.andork.walls.srv;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DateDecoderTests {
+	static String pad(int value, int digits) {
+		StringBuilder result = new StringBuilder(String.valueOf(value));
+		while (result.length() < digits) {
+			result.insert(0, '0');
+		}
+		return result.toString();
+	}
+
+	static List<String> monthDayYearCorpus(char separator) {
+		int thisYear = Calendar.getInstance().get(Calendar.YEAR);
+		int[] years = { 0, 1, 19, 20, 21, 50, 99, 100, 999, 1999, 2000, 2017, 9999, thisYear % 100, (thisYear - 80) % 100,
+			(thisYear + 20) % 100, (thisYear + 19) % 100 };
+		int[] months = { 0, 1, 2, 6, 12, 13, 99 };
+		int[] days = { 0, 1, 15, 28, 29, 30, 31, 32, 99 };
+		List<String> result = new ArrayList<>();
+		for (int year : years) {
+			for (int yearDigits = 2; yearDigits <= 4; yearDigits++) {
+				if (year >= Math.pow(10, yearDigits)) {
+					continue;
+				}
+				for (int month : months) {
+					for (int day : days) {
+						result.add(pad(month, 2) + separator + pad(day, 2) + separator + pad(year, yearDigits));
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	@Test
+	public void testMonthDayYearMatchesSimpleDateFormat() throws ParseException {
+		for (char separator : new char[] { '-', '/' }) {
+			DateFormat full = new SimpleDateFormat("MM" + separator + "dd" + separator + "yyyy");
+			DateFormat abbreviated = new SimpleDateFormat("MM" + separator + "dd" + separator + "yy");
+			for (String str : monthDayYearCorpus(separator)) {
+				Date expected = (str.length() > 8 ? full : abbreviated).parse(str);
+				Assert.assertEquals(str, expected, DateDecoder.decodeMonthDayYear(str));
+			}
+		}
+	}
+
+	@Test
+	public void testYearMonthDayMatchesSimpleDateFormat() throws ParseException {
+		DateFormat format = new SimpleDateFormat("yyyy/M/d");
+		for (int year : new int[] { 1, 1900, 1999, 2000, 2016, 2017, 9999 }) {
+			for (String month : new String[] { "0", "1", "01", "2", "12", "13", "99" }) {
+				for (String day : new String[] { "0", "1", "09", "28", "29", "31", "32", "99" }) {
+					String str = pad(year, 4) + "/" + month + "/" + day;
+					Assert.assertEquals(str, format.parse(str), DateDecoder.decodeYearMonthDay(str));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testReturnsNewInstances() {
+		Date a = DateDecoder.decodeYearMonthDay("2016-04-01");
+		Date b = DateDecoder.decodeYearMonthDay("2016-04-01");
+		Assert.assertEquals(a, b);
+		Assert.assertNotSame(a, b);
+	}
+
+	@Test
+	public void testParsesConcurrently() throws Exception {
+		List<String> corpus = monthDayYearCorpus('/');
+		List<Date> expected = new ArrayList<>();
+		for (String str : corpus) {
+			expected.add(DateDecoder.decodeMonthDayYear(str));
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<List<Date>>> futures = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				futures.add(executor.submit(() -> {
+					List<Date> result = new ArrayList<>();
+					for (String str : corpus) {
+						WallsSurveyParser parser = new WallsSurveyParser("#date " + str);
+						result.add(parser.dateDirective());
+					}
+					return result;
+				}));
+			}
+			for (Future<List<Date>> future : futures) {
+				Assert.assertEquals(expected, future.get());
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package org.andork.walls.srv;
+
+import static org.andork.walls.ScannerDifferentialAssertions.assertSameAcceptance;
+import static org.andork.walls.ScannerDifferentialAssertions.corpus;
+
+import java.util.Map;
+
+import org.andork.segment.SegmentParseException;
+import org.andork.walls.KeywordMap;
+import org.andork.walls.LineParser.VoidProduction;
+import org.andork.walls.SegmentParseExpectedException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DirectiveDispatchTests {
+	@Test
+	public void testScanDirective() {
+		assertSameAcceptance(
+			WallsSurveyParser.directiveRx,
+			text -> new WallsSurveyParser(text).scanDirective(),
+			corpus("#uU1 \t[]_", 5, 20000));
+	}
+
+	@Test
+	public void testUnitsOptionChars() {
+		for (char c = 0; c < 256; c++) {
+			Assert.assertEquals(
+				String.valueOf(c),
+				WallsSurveyParser.UnitsOptionRx.matcher(String.valueOf(c)).matches(),
+				WallsSurveyParser.isUnitsOptionChar(c));
+		}
+	}
+
+	@Test
+	public void testKeywordMapMatchesLowercaseLookup() {
+		WallsSurveyParser parser = new WallsSurveyParser();
+		Map<String, VoidProduction> options = parser.createUnitsOptionMap();
+		KeywordMap<VoidProduction> keywords = new KeywordMap<>(options);
+		Assert.assertEquals(options.keySet(), keywords.expectedItems());
+		for (String text : corpus("aBv/", 5, 0)) {
+			Assert.assertEquals(
+				text,
+				options.containsKey(text.toLowerCase()),
+				keywords.get(text, 0, text.length()) != null);
+		}
+		Assert.assertNotNull(keywords.get("x INCAB x", 2, 7));
+		Assert.assertNull(keywords.get("x INCABX", 2, 8));
+	}
+
+	@Test
+	public void testDirectiveErrorsAreUnchanged() throws SegmentParseException {
+		WallsSurveyParser parser = new WallsSurveyParser("#  UNITS");
+		parser.expectDirective("#u", "#units");
+		Assert.assertTrue(parser.isAtEnd());
+
+		parser = new WallsSurveyParser("#  unit feet");
+		try {
+			parser.expectDirective("#u", "#units");
+			Assert.fail("expected exception");
+		}
+		catch (SegmentParseExpectedException ex) {
+			Assert.assertEquals("#  unit", ex.getSegment().toString());
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package org.andork.walls.srv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.andork.segment.SegmentParseException;
+import org.andork.walls.WallsMessage;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FastVectorLineDifferentialTests {
+	static final List<String> unitsLines = Arrays.asList(
+		null,
+		"#units feet",
+		"#units a=grads v=percent",
+		"#units incd=-2",
+		"#units order=avd",
+		"#units rect",
+		"#units lrud=from:udlr");
+
+	static final List<String> lines = Arrays.asList(
+		"A1 A2 2.5 350 2.3",
+		"  A1 A2 2.5 350 2.3  ",
+		"A1,A2,2.5,350,-2.3,",
+		"A1\tA2 , 2.5\t350 +2.3",
+		"q:A1 ::A2 2.5 350 2.3",
+		"A1 A2 2.5 350 2.3 ;comment",
+		"A1 A2 2.5 350 2.3 #s foo",
+		"A1 A2 2.5 350 2.3 <1,2,3,4>",
+		"A1 A2 2.5 350 2.3 (?,*)",
+		"A1 A2 2.5 350 2.3 4 5",
+		"A1 A2 2.5 350 2.3 1.5",
+		"A1 A2 2.5f 350 2.3",
+		"A1 A2 2i6 350 2.3",
+		"A1 A2 2.5 350g 2.3",
+		"A1 A2 2.5 350 2.3p",
+		"A1 A2 2.5 350/170 2.3/-2",
+		"A1 A2 2.5 N30E 2.3",
+		"A1 A2 2.5 -- 90",
+		"A1 A2 2.5 360 2.3",
+		"A1 A2 2.5 361 2.3",
+		"A1 A2 2.5 350 -0",
+		"A1 A2 2.5 350 +0.0",
+		"A1 A2 2.5 350 90",
+		"A1 A2 2.5 350 91",
+		"A1 A2 2.5 350 100",
+		"A1 A2 1 350 2.3",
+		"A1 A2 0 350 2.3",
+		"A1 A1 2.5 350 2.3",
+		"A1 - 2.5 350 2.3",
+		"-- A2 2.5 350 2.3",
+		"A1 <1,2,3,4>",
+		"A1 *1,2,3,4*",
+		"A1 *B 2.5 350 2.3",
+		"A1 A2 .5 350. 2.",
+		"A1 A2 2.5 350 2.3 ",
+		"A1 A2 2.5 350",
+		"A1 A2 2.5",
+		"A1 A2 1.2.3 350 2",
+		"A1 A2 2.5 350 2.3x",
+		"A123456789 A2 2.5 350 2.3",
+		"; A1 A2 2.5 350 2.3",
+		"#s A1 A2 2.5 350 2.3");
+
+	static String describe(Vector v) {
+		if (v == null) {
+			return "null";
+		}
+		return Arrays
+			.asList(
+				v.from,
+				v.to,
+				v.distance,
+				v.frontsightAzimuth,
+				v.backsightAzimuth,
+				v.frontsightInclination,
+				v.backsightInclination,
+				v.instrumentHeight,
+				v.targetHeight,
+				v.north,
+				v.east,
+				v.elevation,
+				v.horizontalVariance,
+				v.verticalVariance,
+				v.left,
+				v.right,
+				v.up,
+				v.down,
+				v.lrudFacingAzimuth,
+				v.cFlag,
+				v.segment,
+				v.comment,
+				v.date,
+				v.sourceSegment == null ? null : v.sourceSegment.toString())
+			.toString();
+	}
+
+	static List<String> parse(String unitsLine, String line, boolean fast) {
+		List<String> events = new ArrayList<>();
+		WallsSurveyParser parser = new WallsSurveyParser();
+		parser.setFastVectorLines(fast);
+		parser.setVisitor(new AbstractWallsVisitor() {
+			@Override
+			public void parsedVector(Vector vector) {
+				events.add("vector " + describe(vector));
+			}
+
+			@Override
+			public void parsedComment(String comment) {
+				events.add("comment " + comment);
+			}
+
+			@Override
+			public void message(WallsMessage message) {
+				events.add("message " + message);
+			}
+		});
+		try {
+			if (unitsLine != null) {
+				parser.parseLine(unitsLine);
+			}
+			parser.parseLine(line);
+		}
+		catch (SegmentParseException ex) {
+			events.add("error " + ex.getMessage() + " at " + ex.getSegment().sourceIndex + " " + ex.getSegment());
+		}
+		return events;
+	}
+
+	@Test
+	public void testFastPathMatchesFullGrammar() {
+		for (String unitsLine : unitsLines) {
+			for (String line : lines) {
+				Assert.assertEquals(unitsLine + " / " + line, parse(unitsLine, line, false), parse(unitsLine, line, true));
+			}
+		}
+	}
+
+	@Test
+	public void testFastPathIsTakenForPlainShots() throws SegmentParseException {
+		WallsSurveyParser parser = new WallsSurveyParser("A1 A2 2.5 350 -2.3");
+		Assert.assertTrue(parser.fastVectorLine());
+		Assert.assertEquals("A1", parser.vector.from);
+		Assert.assertTrue(parser.isAtEnd());
+
+		parser = new WallsSurveyParser("A1 A2 2.5 350 2.3 <1,2,3,4>");
+		Assert.assertFalse(parser.fastVectorLine());
+		Assert.assertNull(parser.vector);
+		Assert.assertFalse(parser.isAtEnd());
+	}
+}
@@ -0,0 +1,141 @@
+package org.andork.walls.srv;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.andork.segment.SegmentParseException;
+import org.andork.unit.Angle;
+import org.andork.unit.Length;
+import org.andork.walls.srv.VectorTable.Column;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RectToCtTests {
+	static final String[] lines = {
+		"#units rect",
+		"A1 A2 3 4 5",
+		"#units feet incd=1 inca=2 incv=3",
+		"A2 A3 -3 -4 0",
+		"#units ct",
+		"A3 A4 10 20 30", };
+
+	@Test
+	public void testDeriveCtFromRect() throws SegmentParseException {
+		List<Vector> vectors = VectorReducerTests.parse(lines);
+
+		Vector v = vectors.get(0);
+		Assert.assertTrue(v.deriveCtFromRect());
+		Assert.assertEquals(Math.sqrt(50), v.distance.doubleValue(Length.meters), 1e-9);
+		Assert.assertEquals(Math.toDegrees(Math.atan2(3, 4)), v.frontsightAzimuth.doubleValue(Angle.degrees), 1e-9);
+		Assert.assertEquals(45, v.frontsightInclination.doubleValue(Angle.degrees), 1e-9);
+
+		v = vectors.get(1);
+		Assert.assertTrue(v.deriveCtFromRect());
+		Assert.assertSame(Length.feet, v.distance.unit);
+		Assert.assertEquals(4, v.distance.doubleValue(Length.feet), 1e-9);
+		Assert.assertEquals(180 + Math.toDegrees(Math.atan2(3, 4)) - 2, v.frontsightAzimuth.doubleValue(Angle.degrees), 1e-9);
+		Assert.assertEquals(-3, v.frontsightInclination.doubleValue(Angle.degrees), 1e-9);
+
+		Assert.assertFalse(vectors.get(2).deriveCtFromRect());
+	}
+
+	@Test
+	public void testConvert() throws SegmentParseException {
+		List<Vector> vectors = VectorReducerTests.parse(lines);
+		double[] east = { 0, 3 * 0.3048, -4 * 0.3048 };
+		double[] north = { 0, 4 * 0.3048, 0 };
+		double[] up = { 0, Double.NaN, 4 * 0.3048 };
+		double[] distance = new double[3];
+		double[] azimuth = new double[3];
+		double[] inclination = new double[3];
+		RectToCt.convert(vectors.get(1).units, east, north, up, distance, azimuth, inclination, 1, 2);
+
+		Assert.assertEquals(0, distance[0], 0);
+		Assert.assertEquals(4 * 0.3048, distance[1], 1e-9);
+		Assert.assertEquals(Math.atan2(3, 4) - Math.toRadians(2), azimuth[1], 1e-9);
+		Assert.assertEquals(-Math.toRadians(3), inclination[1], 1e-9);
+		Assert.assertEquals(Math.sqrt(32) * 0.3048 - 0.3048, distance[2], 1e-9);
+		Assert.assertEquals(Math.toRadians(268), azimuth[2], 1e-9);
+		Assert.assertEquals(Math.toRadians(42), inclination[2], 1e-9);
+	}
+
+	@Test
+	public void testPipelineStage() throws SegmentParseException {
+		testPipelineStage(BatchingWallsVisitor.DEFAULT_BATCH_SIZE);
+	}
+
+	@Test
+	public void testPipelineStageWithResetBetweenBatches() throws SegmentParseException {
+		// each batch has different units under the same units id
+		testPipelineStage(1);
+	}
+
+	void testPipelineStage(int batchSize) throws SegmentParseException {
+		List<Vector> expected = VectorReducerTests.parse(lines);
+		for (Vector vector : expected) {
+			vector.deriveCtFromRect();
+		}
+
+		List<Vector> actual = new ArrayList<>();
+		class Collector extends AbstractWallsVisitor implements WallsBatchVisitor {
+			@Override
+			public void parsedVectors(VectorTable batch) {
+				for (int row = 0; row < batch.size(); row++) {
+					actual.add(batch.get(row));
+				}
+				Assert.assertSame(batch.units(batch.unitsId(0)).getDUnit(), batch.unit(Column.DISTANCE, 0));
+			}
+		}
+		BatchingWallsVisitor batching = new BatchingWallsVisitor(new RectToCt(new Collector()), batchSize);
+		WallsSurveyParser parser = new WallsSurveyParser();
+		parser.setVisitor(batching);
+		for (String line : lines) {
+			parser.parseLine(line);
+		}
+		batching.flush();
+
+		double[] expectedDistances = { Math.sqrt(50), 4 * 0.3048, 10 * 0.3048 };
+		Assert.assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			Vector e = expected.get(i);
+			Vector a = actual.get(i);
+			Assert.assertEquals(expectedDistances[i], a.distance.doubleValue(Length.meters), 1e-9);
+			Assert.assertSame(i == 0 ? Length.meters : Length.feet, a.distance.unit);
+			Assert.assertEquals(
+				e.frontsightAzimuth.doubleValue(Angle.radians),
+				a.frontsightAzimuth.doubleValue(Angle.radians),
+				1e-9);
+			Assert.assertEquals(
+				e.frontsightInclination.doubleValue(Angle.radians),
+				a.frontsightInclination.doubleValue(Angle.radians),
+				1e-9);
+		}
+	}
+
+	@Test
+	public void testPerVectorStage() throws SegmentParseException {
+		List<Vector> actual = new ArrayList<>();
+		class Collector extends AbstractWallsVisitor implements WallsBatchVisitor {
+			@Override
+			public void parsedVector(Vector vector) {
+				actual.add(vector);
+			}
+		}
+		RectToCt stage = new RectToCt(new Collector());
+		for (Vector vector : VectorReducerTests.parse(lines)) {
+			stage.parsedVector(vector);
+		}
+
+		Assert.assertEquals(3, actual.size());
+		Assert.assertEquals(Math.sqrt(50), actual.get(0).distance.doubleValue(Length.meters), 1e-9);
+		Assert.assertEquals(45, actual.get(0).frontsightInclination.doubleValue(Angle.degrees), 1e-9);
+		Assert.assertSame(Length.feet, actual.get(1).distance.unit);
+		Assert.assertEquals(4, actual.get(1).distance.doubleValue(Length.feet), 1e-9);
+		Assert.assertEquals(
+			180 + Math.toDegrees(Math.atan2(3, 4)) - 2,
+			actual.get(1).frontsightAzimuth.doubleValue(Angle.degrees),
+			1e-9);
+		Assert.assertEquals(10, actual.get(2).distance.doubleValue(Length.feet), 1e-9);
+		Assert.assertEquals(20, actual.get(2).frontsightAzimuth.doubleValue(Angle.degrees), 1e-9);
+	}
+}
@@ -0,0 +1,81 @@
+package org.andork.walls.srv;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.andork.segment.SegmentParseException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ReusedVectorTests {
+	static List<Vector> parse(boolean reuse, boolean fast, List<String> described) throws SegmentParseException {
+		List<Vector> vectors = new ArrayList<>();
+		WallsSurveyParser parser = new WallsSurveyParser();
+		parser.setReuseVectors(reuse);
+		parser.setFastVectorLines(fast);
+		parser.setVisitor(new AbstractWallsVisitor() {
+			@Override
+			public void parsedVector(Vector vector) {
+				vectors.add(vector);
+				described.add(FastVectorLineDifferentialTests.describe(vector));
+			}
+		});
+		for (String unitsLine : FastVectorLineDifferentialTests.unitsLines) {
+			if (unitsLine != null) {
+				parser.parseLine(unitsLine);
+			}
+			for (String line : FastVectorLineDifferentialTests.lines) {
+				try {
+					parser.parseLine(line);
+				}
+				catch (SegmentParseException ex) {
+					// ignore
+				}
+			}
+		}
+		return vectors;
+	}
+
+	@Test
+	public void testReusedVectorsMatchNewVectors() throws SegmentParseException {
+		for (boolean fast : new boolean[] { false, true }) {
+			List<String> expected = new ArrayList<>();
+			List<Vector> vectors = parse(false, fast, expected);
+			List<String> actual = new ArrayList<>();
+			List<Vector> reused = parse(true, fast, actual);
+
+			Assert.assertEquals(expected, actual);
+			Assert.assertEquals(vectors.size(), reused.size());
+			for (Vector vector : reused) {
+				Assert.assertSame(reused.get(0), vector);
+			}
+		}
+	}
+
+	@Test
+	public void testCloneRetainsVector() throws SegmentParseException {
+		List<Vector> clones = new ArrayList<>();
+		WallsSurveyParser parser = new WallsSurveyParser();
+		parser.setReuseVectors(true);
+		parser.setVisitor(new AbstractWallsVisitor() {
+			@Override
+			public void parsedVector(Vector vector) {
+				clones.add(vector.clone());
+			}
+		});
+		parser.parseLine("A1 A2 2.5 350 2.3 <1,2,3,4> ;first");
+		parser.parseLine("A2 A3 3.5 10 -2");
+		parser.parseLine("A3 *1,2,3,4*");
+
+		Assert.assertEquals(3, clones.size());
+		Assert.assertEquals("A1", clones.get(0).from);
+		Assert.assertEquals("first", clones.get(0).comment);
+		Assert.assertNotNull(clones.get(0).left);
+		Assert.assertEquals("A3", clones.get(1).to);
+		Assert.assertNull(clones.get(1).comment);
+		Assert.assertNull(clones.get(1).left);
+		Assert.assertEquals("A3", clones.get(2).from);
+		Assert.assertNull(clones.get(2).to);
+		Assert.assertNull(clones.get(2).distance);
+	}
+}
@@ -0,0 +1,95 @@
+package org.andork.walls.srv;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.andork.segment.SegmentParseException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SegmentPathTests {
+	@Test
+	public void testInterning() {
+		SegmentPath ab = SegmentPath.of(Arrays.asList("a", "b"));
+		Assert.assertSame(ab, SegmentPath.ROOT.child("a").child("b"));
+		Assert.assertSame(ab, SegmentPath.of(new ArrayList<>(ab)));
+		Assert.assertSame(ab.parent(), SegmentPath.of(Arrays.asList("a")));
+		Assert.assertEquals("b", ab.part());
+		Assert.assertNull(SegmentPath.ROOT.part());
+		Assert.assertNull(SegmentPath.of(null));
+
+		Assert.assertEquals(Arrays.asList("a", "b"), ab);
+		Assert.assertEquals(ab, Arrays.asList("a", "b"));
+		Assert.assertEquals(Arrays.asList("a", "b").hashCode(), ab.hashCode());
+		Assert.assertNotEquals(ab, SegmentPath.of(Arrays.asList("a", "c")));
+		Assert.assertTrue(ab.matches(Arrays.asList("a", "b")));
+		Assert.assertFalse(ab.matches(Arrays.asList("a")));
+		Assert.assertFalse(ab.matches(Arrays.asList("c", "b")));
+		Assert.assertEquals("a", ab.get(0));
+		Assert.assertEquals(2, ab.size());
+	}
+
+	@Test
+	public void testCollectedPathsAreRemoved() {
+		SegmentPath parent = SegmentPath.ROOT.child("testCollectedPathsAreRemoved");
+		SegmentPath a = parent.child("a");
+		Assert.assertSame(a, parent.childReference("a").get());
+
+		// simulate the garbage collector clearing and enqueueing the reference
+		WeakReference<SegmentPath> ref = parent.childReference("a");
+		ref.clear();
+		ref.enqueue();
+		SegmentPath.removeCollected();
+		Assert.assertNull(parent.childReference("a"));
+
+		SegmentPath again = parent.child("a");
+		Assert.assertSame(parent, again.parent());
+		Assert.assertEquals(Arrays.asList("testCollectedPathsAreRemoved", "a"), again);
+		Assert.assertSame(again, parent.child("a"));
+
+		// a cleared reference that hasn't been enqueued yet is replaced
+		parent.childReference("a").clear();
+		SegmentPath third = parent.child("a");
+		Assert.assertSame(third, parent.childReference("a").get());
+		Assert.assertSame(third, SegmentPath.of(Arrays.asList("testCollectedPathsAreRemoved", "a")));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testImmutable() {
+		SegmentPath.ROOT.child("a").add("b");
+	}
+
+	@Test
+	public void testParsedItemsShareSegments() throws SegmentParseException {
+		List<List<String>> segments = new ArrayList<>();
+		WallsSurveyParser parser = new WallsSurveyParser();
+		parser.setVisitor(new AbstractWallsVisitor() {
+			@Override
+			public void parsedVector(Vector vector) {
+				segments.add(vector.segment);
+			}
+
+			@Override
+			public void parsedFixStation(FixedStation station) {
+				segments.add(station.segment);
+			}
+		});
+		parser.parseLine("#segment /a");
+		parser.parseLine("A1 A2 2.5 350 2.3");
+		parser.parseLine("A2 A3 2.5 350 2.3 <1,2,3,4>");
+		parser.parseLine("A3 *1,2,3,4*");
+		parser.parseLine("#fix A1 1 2 3");
+		parser.parseLine("A3 A4 2.5 350 2.3 #s c");
+		parser.parseLine("#segment /a");
+		parser.parseLine("A4 A5 2.5 350 2.3 #s c");
+
+		Assert.assertEquals(6, segments.size());
+		for (int i = 1; i < 4; i++) {
+			Assert.assertSame(segments.get(0), segments.get(i));
+		}
+		Assert.assertEquals(Arrays.asList("a", "c"), segments.get(4));
+		Assert.assertSame(segments.get(4), segments.get(5));
+	}
+}
@@ -0,0 +1,143 @@
+package org.andork.walls.srv;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.andork.segment.SegmentParseException;
+import org.andork.walls.WallsMessage;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SourceLocationTests {
+	@Test
+	public void testPack() {
+		long location = SourceLocation.pack(5, 1234, 7, 19);
+		Assert.assertEquals(5, SourceLocation.sourceId(location));
+		Assert.assertEquals(1234, SourceLocation.line(location));
+		Assert.assertEquals(7, SourceLocation.startCol(location));
+		Assert.assertEquals(19, SourceLocation.endCol(location));
+		Assert.assertNotEquals(SourceLocation.NONE, location);
+
+		long max = SourceLocation.pack(SourceLocation.MAX_SOURCE_ID, Integer.MAX_VALUE, 5000, 6000);
+		Assert.assertNotEquals(SourceLocation.NONE, max);
+		Assert.assertEquals(SourceLocation.MAX_SOURCE_ID, SourceLocation.sourceId(max));
+		Assert.assertEquals(SourceLocation.MAX_LINE, SourceLocation.line(max));
+		Assert.assertEquals(SourceLocation.MAX_COLUMN, SourceLocation.startCol(max));
+		Assert.assertEquals(SourceLocation.MAX_COLUMN, SourceLocation.endCol(max));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testPackRejectsBackwardRange() {
+		SourceLocation.pack(0, 0, 5, 4);
+	}
+
+	@Test
+	public void testParseFile() throws IOException, SegmentParseException {
+		File file = File.createTempFile("SourceLocationTests", ".SRV");
+		file.deleteOnExit();
+		Files.write(file.toPath(), Arrays.asList("#units feet", "A1 A2 10 20 5", ";comment", "  A2 A3 15 30 -5"),
+			StandardCharsets.UTF_8);
+
+		List<Vector> vectors = new ArrayList<>();
+		SourceLocationResolver resolver = new SourceLocationResolver();
+		WallsSurveyParser parser = new WallsSurveyParser();
+		parser.setSourceLocationResolver(resolver);
+		parser.setVisitor(new AbstractWallsVisitor() {
+			@Override
+			public void parsedVector(Vector vector) {
+				vectors.add(vector);
+			}
+		});
+		parser.parseFile(file);
+
+		Assert.assertEquals(2, vectors.size());
+		for (Vector vector : vectors) {
+			Assert.assertNull(vector.sourceSegment);
+			Assert.assertEquals(file, resolver.source(SourceLocation.sourceId(vector.sourceLocation)));
+		}
+		Assert.assertEquals(1, SourceLocation.line(vectors.get(0).sourceLocation));
+		Assert.assertEquals("A1 A2 10 20 5", resolver.resolve(vectors.get(0).sourceLocation).toString());
+		Assert.assertEquals(3, SourceLocation.line(vectors.get(1).sourceLocation));
+		Assert.assertEquals("  A2 A3 15 30 -5", resolver.resolve(vectors.get(1).sourceLocation).toString());
+
+		WallsMessage message = new WallsMessage("warning", "test", null, vectors.get(1).sourceLocation);
+		Assert.assertEquals("A2 A3 15 30 -5", resolver.segment(message).toString().trim());
+		Assert.assertTrue(resolver.render(message).startsWith("test"));
+	}
+
+	@Test
+	public void testNoResolver() throws SegmentParseException {
+		List<Vector> vectors = new ArrayList<>();
+		WallsSurveyParser parser = new WallsSurveyParser();
+		parser.setVisitor(new AbstractWallsVisitor() {
+			@Override
+			public void parsedVector(Vector vector) {
+				vectors.add(vector);
+			}
+		});
+		parser.parseLine("A1 A2 10 20 5");
+		Assert.assertNotNull(vectors.get(0).sourceSegment);
+		Assert.assertEquals(SourceLocation.NONE, vectors.get(0).sourceLocation);
+	}
+
+	@Test
+	public void testAmbiguousVectorLocation() throws IOException, SegmentParseException {
+		File file = File.createTempFile("SourceLocationTests", ".SRV");
+		file.deleteOnExit();
+		Files.write(file.toPath(), Arrays.asList("#units tape=st", "A1 A2 10 0 0 20 0"), StandardCharsets.UTF_8);
+
+		List<Vector> vectors = new ArrayList<>();
+		SourceLocationResolver resolver = new SourceLocationResolver();
+		WallsSurveyParser parser = new WallsSurveyParser();
+		parser.setSourceLocationResolver(resolver);
+		parser.setVisitor(new AbstractWallsVisitor() {
+			@Override
+			public void parsedVector(Vector vector) {
+				vectors.add(vector);
+			}
+		});
+		parser.parseFile(file);
+
+		Vector vector = vectors.get(0);
+		try {
+			vector.applyHeightCorrections();
+			Assert.fail("expected vector to be ambiguous");
+		}
+		catch (SourceLocationParseException ex) {
+			Assert.assertNull(ex.getSegment());
+			Assert.assertEquals(vector.sourceLocation, ex.location);
+			Assert.assertEquals("A1 A2 10 0 0 20 0", resolver.segment(ex).toString());
+			Assert.assertTrue(resolver.render(ex).startsWith("vector is ambiguous"));
+		}
+	}
+
+	@Test
+	public void testResolveAfterFileChanges() throws IOException {
+		File file = File.createTempFile("SourceLocationTests", ".SRV");
+		file.deleteOnExit();
+		Files.write(file.toPath(), "A1 A2 1 2 3\r\nA2 A3 4 5 6\r\n".getBytes(StandardCharsets.UTF_8));
+
+		SourceLocationResolver resolver = new SourceLocationResolver();
+		int sourceId = resolver.sourceId(file);
+		for (int i = 0; i < 3; i++) {
+			Assert.assertEquals("A3", resolver.resolve(SourceLocation.pack(sourceId, 1, 3, 5)).toString());
+			Assert.assertEquals("A1 A2", resolver.resolve(SourceLocation.pack(sourceId, 0, 0, 5)).toString());
+		}
+
+		Files.write(file.toPath(), "; header\nB1 B2 1 2 3\nB2 B3 4 5 6\n".getBytes(StandardCharsets.UTF_8));
+		Assert.assertEquals("B2", resolver.resolve(SourceLocation.pack(sourceId, 1, 3, 5)).toString());
+		Assert.assertEquals("B3", resolver.resolve(SourceLocation.pack(sourceId, 2, 3, 5)).toString());
+		try {
+			resolver.resolve(SourceLocation.pack(sourceId, 3, 0, 2));
+			Assert.fail("expected an IOException");
+		}
+		catch (IOException ex) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package org.andork.walls.srv;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.andork.segment.Segment;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SrvFileReaderTests {
+	static List<String> expectedLines(byte[] bytes) throws IOException {
+		List<String> result = new ArrayList<>();
+		try (BufferedReader reader =
+			new BufferedReader(new InputStreamReader(new ByteArrayInputStream(bytes), SrvFileReader.CHARSET))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				result.add(line);
+			}
+		}
+		return result;
+	}
+
+	static List<String> actualLines(byte[] bytes, int bufferSize) throws IOException {
+		List<String> result = new ArrayList<>();
+		try (SrvFileReader reader = new SrvFileReader(
+			Channels.newChannel(new ByteArrayInputStream(bytes)),
+			"test",
+			bufferSize)) {
+			Segment line;
+			while ((line = reader.readLine()) != null) {
+				Assert.assertEquals(result.size(), line.startLine);
+				result.add(line.toString());
+			}
+			Assert.assertNull(reader.readLine());
+		}
+		return result;
+	}
+
+	@Test
+	public void testLineTerminators() throws IOException {
+		String[] texts = {
+			"",
+			"a",
+			"a\n",
+			"a\r",
+			"a\r\n",
+			"\n\n",
+			"\r\r\n\n\r",
+			"A1 A2 2.5 350 2.3\r\n#units feet\r\n\r\nA2 A3 1 2 3" };
+		for (String text : texts) {
+			byte[] bytes = text.getBytes(SrvFileReader.CHARSET);
+			for (int bufferSize = 1; bufferSize < 5; bufferSize++) {
+				Assert.assertEquals(text, expectedLines(bytes), actualLines(bytes, bufferSize));
+			}
+		}
+	}
+
+	@Test
+	public void testDecodesWindows1252() throws IOException {
+		byte[] bytes = new byte[256];
+		for (int b = 0; b < 256; b++) {
+			bytes[b] = (byte) b;
+		}
+		Assert.assertEquals(expectedLines(bytes), actualLines(bytes, 64));
+		Assert.assertEquals("caf\u00e9 \u2013 \u20ac", actualLines(new byte[] {
+			'c', 'a', 'f', (byte) 0xe9, ' ', (byte) 0x96, ' ', (byte) 0x80 }, 64).get(0));
+	}
+
+	@Test
+	public void testRandomBytes() throws IOException {
+		Random random = new Random(8);
+		String alphabet = "ab\r\n\u00e9";
+		for (int i = 0; i < 200; i++) {
+			StringBuilder text = new StringBuilder();
+			int length = random.nextInt(40);
+			for (int k = 0; k < length; k++) {
+				text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+			}
+			byte[] bytes = text.toString().getBytes(SrvFileReader.CHARSET);
+			Assert.assertEquals(text.toString(), expectedLines(bytes), actualLines(bytes, 1 + random.nextInt(8)));
+			assertLineStarts(bytes);
+		}
+	}
+
+	static void assertLineStarts(byte[] bytes) throws IOException {
+		List<String> expected = expectedLines(bytes);
+		long[] lineStarts = SrvFileReader.lineStarts(Channels.newChannel(new ByteArrayInputStream(bytes)));
+		Assert.assertEquals(expected.size(), lineStarts.length);
+		for (int i = 0; i < lineStarts.length; i++) {
+			ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+			in.skip(lineStarts[i]);
+			try (SrvFileReader reader = new SrvFileReader(Channels.newChannel(in), "test", 4, i)) {
+				Segment line = reader.readLine();
+				Assert.assertEquals(i, line.startLine);
+				Assert.assertEquals(expected.get(i), line.toString());
+			}
+		}
+	}
+
+	@Test
+	public void testLineStarts() throws IOException {
+		String[] texts = { "", "a", "a\n", "a\r", "a\r\n", "\n\n", "\r\r\n\n\r", "ab\r\ncd\ref\ngh" };
+		for (String text : texts) {
+			assertLineStarts(text.getBytes(SrvFileReader.CHARSET));
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package org.andork.walls.srv;
+
+import static org.andork.walls.ScannerDifferentialAssertions.assertSameAcceptance;
+import static org.andork.walls.ScannerDifferentialAssertions.corpus;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StationScannerDifferentialTests {
+	@Test
+	public void testStation() {
+		assertSameAcceptance(
+			WallsSurveyParser.stationRx,
+			text -> new WallsSurveyParser(text).scanStation(0),
+			corpus("a:; ,#/\t-", 4, 20000));
+	}
+
+	@Test
+	public void testLongStationNamesAndPrefixes() {
+		assertSameAcceptance(
+			WallsSurveyParser.stationRx,
+			text -> new WallsSurveyParser(text).scanStation(0),
+			corpus("a: ", 10, 5000));
+	}
+
+	@Test
+	public void testOptionalStation() {
+		for (String text : corpus("-a", 6, 0)) {
+			Assert.assertEquals(
+				text,
+				WallsSurveyParser.optionalStationRx.matcher(text).matches(),
+				WallsSurveyParser.isOptionalStation(text));
+		}
+	}
+}
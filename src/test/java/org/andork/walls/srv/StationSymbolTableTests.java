@@ -0,0 +1,81 @@
+package org.andork.walls.srv;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.andork.segment.SegmentParseException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StationSymbolTableTests {
+	static final List<String> unitsLines = Arrays
+		.asList(
+			"#units reset",
+			"#units prefix=a",
+			"#units prefix=a prefix2=c",
+			"#units prefix=a prefix2=c prefix3=e",
+			"#units prefix2=c",
+			"#units prefix3=e",
+			"#units case=upper prefix=Ab",
+			"#units case=lower prefix2=Cd",
+			"#units case=upper");
+
+	static final List<String> names = Arrays
+		.asList("b", "B", "d:b", ":b", "::b", ":::::b", "c::b", "x:y:z", "", ":", "a:", "Stra\u00dfe", "\u0131x", "ab12");
+
+	@Test
+	public void testResolveMatchesProcessStationName() throws SegmentParseException {
+		StationSymbolTable stations = new StationSymbolTable();
+		for (String unitsLine : unitsLines) {
+			WallsSurveyParser parser = new WallsSurveyParser();
+			parser.parseLine(unitsLine);
+			WallsUnits units = parser.units.toImmutable();
+			for (String name : names) {
+				String expected = parser.units.processStationName(name);
+				int id = parser.units.processStationId(name, stations);
+				Assert.assertEquals(unitsLine + " / " + name, expected, stations.name(id));
+				Assert.assertEquals(unitsLine + " / " + name, id, units.processStationId(name, stations));
+				Assert.assertEquals(unitsLine + " / " + name, id, stations.intern(expected));
+			}
+		}
+		Assert.assertEquals(-1, stations.resolve(null, null, CaseType.MIXED));
+	}
+
+	@Test
+	public void testIdsAreDenseAndShared() {
+		StationSymbolTable stations = new StationSymbolTable();
+		int ab = stations.intern("a:b");
+		int ac = stations.intern("a:c");
+		Assert.assertEquals(4, stations.size());
+		Assert.assertEquals(stations.parent(ab), stations.parent(ac));
+		Assert.assertEquals("a", stations.name(stations.parent(ab)));
+		Assert.assertEquals(StationSymbolTable.ROOT, stations.parent(stations.parent(ab)));
+		Assert.assertEquals("c", stations.component(ac));
+		Assert.assertEquals(ab, stations.intern("a:b"));
+		Assert.assertEquals(ab, stations.child(stations.intern("a"), "xbx", 1, 2));
+
+		for (int i = 0; i < 1000; i++) {
+			Assert.assertEquals(4 + i, stations.intern("s" + i));
+		}
+		for (int i = 0; i < 1000; i++) {
+			Assert.assertEquals("s" + i, stations.name(4 + i));
+			Assert.assertEquals(4 + i, stations.intern("s" + i));
+		}
+	}
+
+	@Test
+	public void testFindDoesNotAdd() {
+		StationSymbolTable stations = new StationSymbolTable();
+		int ab = stations.intern("a:b");
+		int b = stations.intern(":b");
+		Assert.assertEquals(ab, stations.find("a:b"));
+		Assert.assertEquals(stations.parent(ab), stations.find("a"));
+		Assert.assertEquals(b, stations.find(":b"));
+		Assert.assertEquals(b, stations.find("b"));
+		int size = stations.size();
+		Assert.assertEquals(-1, stations.find("a:c"));
+		Assert.assertEquals(-1, stations.find("c:b"));
+		Assert.assertEquals(-1, stations.find(null));
+		Assert.assertEquals(size, stations.size());
+	}
+}
@@ -8,10 +8,12 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import org.andork.segment.Segment;
 import org.andork.segment.SegmentParseException;
 import org.andork.unit.Angle;
 import org.andork.unit.Length;
 import org.andork.unit.UnitizedDouble;
+import org.andork.walls.SegmentParseExpectedException;
 import org.andork.walls.WallsMessage;
 import org.junit.Assert;
 import org.junit.Before;
@@ -1198,4 +1200,21 @@ public class SurveyLineParsingTests {
 				.elevation(meters(3));
 		}
 	}
+
+	@Test
+	public void testVectorLineFailsWithoutThrowing() throws SegmentParseException {
+		String expectedMessage = null;
+		try {
+			parser.parseLine("A B 2.5 350x 45");
+		}
+		catch (SegmentParseExpectedException ex) {
+			expectedMessage = ex.getMessage();
+		}
+		Assert.assertNotNull(expectedMessage);
+
+		parser.reset(new Segment("A B 2.5 350x 45", null, 0, 0));
+		Assert.assertFalse(parser.vectorLine());
+		Assert.assertNull(vector);
+		Assert.assertEquals(expectedMessage, parser.expectedFailure().getMessage());
+	}
 }
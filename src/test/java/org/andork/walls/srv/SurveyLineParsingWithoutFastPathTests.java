@@ -0,0 +1,15 @@
+package org.andork.walls.srv;
+
+import org.junit.Before;
+
+/**
+ * Runs {@link SurveyLineParsingTests} through the full vector line grammar only.
+ */
+public class SurveyLineParsingWithoutFastPathTests extends SurveyLineParsingTests {
+	@Override
+	@Before
+	public void setUp() {
+		super.setUp();
+		parser.setFastVectorLines(false);
+	}
+}
@@ -0,0 +1,128 @@
+package org.andork.walls.srv;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.andork.segment.SegmentParseException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SurveyNetworkTests {
+	static SurveyNetwork build(String... lines) throws SegmentParseException {
+		SurveyNetwork network = new SurveyNetwork();
+		WallsSurveyParser parser = new WallsSurveyParser();
+		parser.setVisitor(network);
+		for (String line : lines) {
+			parser.parseLine(line);
+		}
+		return network;
+	}
+
+	static Set<String> neighbors(SurveyNetwork network, String name) {
+		Set<String> result = new HashSet<>();
+		int station = network.station(name);
+		for (int i = network.adjacencyStart(station); i < network.adjacencyEnd(station); i++) {
+			int shot = network.adjacentShot(i);
+			int other = network.adjacentStation(i);
+			Assert.assertTrue(
+				network.shotFrom(shot) == station && network.shotTo(shot) == other
+					|| network.shotTo(shot) == station && network.shotFrom(shot) == other);
+			result.add(network.stationName(other));
+		}
+		return result;
+	}
+
+	static Set<String> set(String... names) {
+		Set<String> result = new HashSet<>();
+		for (String name : names) {
+			result.add(name);
+		}
+		return result;
+	}
+
+	@Test
+	public void testAdjacency() throws SegmentParseException {
+		SurveyNetwork network = build("A1 A2 10 0 0", "A2 A3 10 90 0", "A3 A1 10 180 0", "A3 A4 5 0 0");
+		Assert.assertEquals(4, network.stationCount());
+		Assert.assertEquals(4, network.shotCount());
+		Assert.assertEquals(set("A2", "A3"), neighbors(network, "A1"));
+		Assert.assertEquals(set("A1", "A2", "A4"), neighbors(network, "A3"));
+		Assert.assertEquals(set("A3"), neighbors(network, "A4"));
+		Assert.assertEquals(-1, network.station("B1"));
+
+		network = build("A1 A2 10 0 0");
+		Assert.assertEquals(set("A2"), neighbors(network, "A1"));
+		WallsSurveyParser parser = new WallsSurveyParser();
+		parser.setVisitor(network);
+		parser.parseLine("A1 A3 10 0 0");
+		Assert.assertEquals(set("A2", "A3"), neighbors(network, "A1"));
+	}
+
+	@Test
+	public void testComponentsAndAnchors() throws SegmentParseException {
+		SurveyNetwork network = build(
+			"A1 A2 10 0 0",
+			"A2 A3 10 90 0",
+			"B1 B2 10 0 0",
+			"#fix B2 1 2 3",
+			"#fix C1 4 5 6",
+			"#fix A1 7 8 9");
+		Assert.assertEquals(3, network.componentCount());
+		int a = network.component(network.station("A1"));
+		int b = network.component(network.station("B1"));
+		int c = network.component(network.station("C1"));
+		Assert.assertEquals(a, network.component(network.station("A3")));
+		Assert.assertEquals(b, network.component(network.station("B2")));
+		Assert.assertNotEquals(a, b);
+		Assert.assertNotEquals(a, c);
+		Assert.assertNotEquals(b, c);
+
+		Assert.assertEquals(3, network.fixedStationCount());
+		Assert.assertEquals(0, network.componentAnchor(b));
+		Assert.assertEquals(1, network.componentAnchor(c));
+		Assert.assertEquals(2, network.componentAnchor(a));
+		Assert.assertEquals(network.station("B2"), network.fixedStationStation(0));
+		Assert.assertEquals("B2", network.fixedStation(0).name);
+
+		network = build("A1 A2 10 0 0", "B1 B2 10 0 0");
+		Assert.assertEquals(-1, network.componentAnchor(network.component(network.station("A1"))));
+	}
+
+	@Test
+	public void testSplays() throws SegmentParseException {
+		SurveyNetwork network = build("A1 A2 10 0 0", "A1 - 2.5 350 2.3", "- A2 3 10 0", "A2 <1,2,3,4>");
+		Assert.assertEquals(1, network.shotCount());
+		Assert.assertEquals(2, network.splayCount());
+		Assert.assertEquals(network.station("A1"), network.splayStation(0));
+		Assert.assertEquals(network.station("A2"), network.splayStation(1));
+		Assert.assertEquals(2.5, network.splays().value(VectorTable.Column.DISTANCE, 0), 1e-9);
+		Assert.assertEquals(2, network.stationCount());
+		Assert.assertEquals(set("A2"), neighbors(network, "A1"));
+	}
+
+	@Test
+	public void testPrefixes() throws SegmentParseException {
+		SurveyNetwork network = build("#prefix X", "A1 A2 10 0 0", "#prefix Y", "A2 X:A2 10 0 0", "#fix A2 1 2 3");
+		Assert.assertEquals(3, network.stationCount());
+		Assert.assertEquals(set("X:A1", "Y:A2"), neighbors(network, "X:A2"));
+		Assert.assertEquals(-1, network.station("A2"));
+		Assert.assertEquals(network.station("Y:A2"), network.fixedStationStation(0));
+		Assert.assertEquals(1, network.componentCount());
+	}
+
+	@Test
+	public void testTablesShareSymbols() throws SegmentParseException {
+		SurveyNetwork network = build("#prefix X", "A1 A2 10 0 0", "A1 - 2.5 350 2.3");
+		int symbolCount = network.symbols().size();
+		Assert.assertEquals(-1, network.station("X:B1"));
+		Assert.assertEquals(-1, network.station("B1"));
+		Assert.assertEquals(symbolCount, network.symbols().size());
+
+		VectorTable shots = network.shots();
+		Assert.assertEquals("X:A1", shots.station(shots.fromId(0)));
+		Assert.assertEquals("X:A2", shots.station(shots.toId(0)));
+		Assert.assertEquals(network.symbols().find("X:A1"), shots.fromId(0));
+		Assert.assertEquals(shots.fromId(0), network.splays().fromId(0));
+		Assert.assertEquals(symbolCount, shots.stationCount());
+	}
+}
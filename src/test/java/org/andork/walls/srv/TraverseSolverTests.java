@@ -0,0 +1,88 @@
+package org.andork.walls.srv;
+
+import org.andork.segment.SegmentParseException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TraverseSolverTests {
+	static TraverseSolver solve(TraverseSolver.LoopMode loopMode, String... lines) throws SegmentParseException {
+		TraverseSolver solver = new TraverseSolver(SurveyNetworkTests.build(lines));
+		solver.setLoopMode(loopMode);
+		solver.solve();
+		return solver;
+	}
+
+	static void assertPosition(TraverseSolver solver, SurveyNetwork network, String name, double e, double n, double u) {
+		int station = network.station(name);
+		Assert.assertEquals(name, e, solver.east(station), 1e-9);
+		Assert.assertEquals(name, n, solver.north(station), 1e-9);
+		Assert.assertEquals(name, u, solver.up(station), 1e-9);
+	}
+
+	@Test
+	public void testFromOrigin() throws SegmentParseException {
+		SurveyNetwork network = SurveyNetworkTests.build("A1 A2 10 90 0", "A3 A2 10 180 0", "A3 A4 5 0 90");
+		TraverseSolver solver = new TraverseSolver(network);
+		solver.solve();
+		assertPosition(solver, network, "A1", 0, 0, 0);
+		assertPosition(solver, network, "A2", 10, 0, 0);
+		assertPosition(solver, network, "A3", 10, 10, 0);
+		assertPosition(solver, network, "A4", 10, 10, 5);
+		Assert.assertEquals(-1, solver.reachedBy(network.station("A1")));
+		Assert.assertEquals(1, solver.reachedBy(network.station("A3")));
+		Assert.assertFalse(solver.isFixed(network.station("A1")));
+	}
+
+	@Test
+	public void testFixedStationsAndComponents() throws SegmentParseException {
+		SurveyNetwork network = SurveyNetworkTests.build(
+			"A1 A2 10 90 0",
+			"B1 B2 10 0 0",
+			"C1 C2 10 0 0",
+			"#fix A2 100 200 300",
+			"#fix B1 1000 2000 3000");
+		TraverseSolver solver = new TraverseSolver(network);
+		solver.solve();
+		assertPosition(solver, network, "A1", 90, 200, 300);
+		assertPosition(solver, network, "A2", 100, 200, 300);
+		assertPosition(solver, network, "B2", 1000, 2010, 3000);
+		assertPosition(solver, network, "C1", 0, 0, 0);
+		assertPosition(solver, network, "C2", 0, 10, 0);
+		Assert.assertTrue(solver.isFixed(network.station("A2")));
+		Assert.assertFalse(solver.isFixed(network.station("A1")));
+	}
+
+	@Test
+	public void testLoops() throws SegmentParseException {
+		// the loop from A1 to A4 closes 2 meters east of the direct shot
+		String[] lines = { "A1 A2 10 0 0", "A2 A3 10 90 0", "A1 A4 12 90 0", "A3 A4 10 180 0" };
+		SurveyNetwork network = SurveyNetworkTests.build(lines);
+
+		TraverseSolver solver = solve(TraverseSolver.LoopMode.FIRST_REACHED, lines);
+		assertPosition(solver, network, "A4", 12, 0, 0);
+		assertPosition(solver, network, "A3", 10, 10, 0);
+
+		solver = solve(TraverseSolver.LoopMode.AVERAGED, lines);
+		assertPosition(solver, network, "A2", 0, 10, 0);
+		assertPosition(solver, network, "A4", 12, 0, 0);
+		// reached from both A2 and A4
+		assertPosition(solver, network, "A3", 11, 10, 0);
+	}
+
+	@Test
+	public void testSplaysAndHeightCorrections() throws SegmentParseException {
+		SurveyNetwork network = SurveyNetworkTests.build(
+			"A1 - 20 45 0",
+			"#units tape=ss",
+			"A1 A2 10 0 0 2 1");
+		TraverseSolver solver = new TraverseSolver(network);
+		solver.solve();
+		assertPosition(solver, network, "A1", 0, 0, 0);
+		Vector vector = VectorReducerTests.parse("#units tape=ss", "A1 A2 10 0 0 2 1").get(0);
+		vector.applyHeightCorrections();
+		double[] enu = new double[3];
+		VectorReducer.reduce(vector, enu);
+		assertPosition(solver, network, "A2", enu[0], enu[1], enu[2]);
+		Assert.assertEquals(1, enu[2], 1e-9);
+	}
+}
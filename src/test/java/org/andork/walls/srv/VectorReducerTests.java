@@ -0,0 +1,126 @@
+package org.andork.walls.srv;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.andork.segment.SegmentParseException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class VectorReducerTests {
+	static List<Vector> parse(String... lines) throws SegmentParseException {
+		List<Vector> result = new ArrayList<>();
+		WallsSurveyParser parser = new WallsSurveyParser();
+		parser.setVisitor(new AbstractWallsVisitor() {
+			@Override
+			public void parsedVector(Vector vector) {
+				result.add(vector);
+			}
+		});
+		for (String line : lines) {
+			parser.parseLine(line);
+		}
+		return result;
+	}
+
+	static void assertReduces(double east, double north, double up, String... lines) throws SegmentParseException {
+		List<Vector> vectors = parse(lines);
+		Vector vector = vectors.get(vectors.size() - 1);
+
+		double[] enu = new double[3];
+		VectorReducer.reduce(vector, enu);
+		String message = String.join(" / ", lines);
+		Assert.assertEquals(message, east, enu[0], 1e-9);
+		Assert.assertEquals(message, north, enu[1], 1e-9);
+		Assert.assertEquals(message, up, enu[2], 1e-9);
+
+		VectorTable table = new VectorTable();
+		table.add(vector);
+		double[][] batch = new VectorReducer().reduce(table);
+		Assert.assertEquals(message, east, batch[0][0], 1e-9);
+		Assert.assertEquals(message, north, batch[1][0], 1e-9);
+		Assert.assertEquals(message, up, batch[2][0], 1e-9);
+	}
+
+	static double sin(double degrees) {
+		return Math.sin(Math.toRadians(degrees));
+	}
+
+	static double cos(double degrees) {
+		return Math.cos(Math.toRadians(degrees));
+	}
+
+	@Test
+	public void testPlain() throws SegmentParseException {
+		assertReduces(10, 0, 0, "A1 A2 10 90 0");
+		assertReduces(0, -10 * cos(30), -10 * sin(30), "A1 A2 10 180 -30");
+		assertReduces(10 * 0.3048 * sin(45), 10 * 0.3048 * cos(45), 0, "#units feet", "A1 A2 10 45 0");
+	}
+
+	@Test
+	public void testDeclinationAndGrid() throws SegmentParseException {
+		assertReduces(10 * sin(10), 10 * cos(10), 0, "#units decl=10", "A1 A2 10 0 0");
+		assertReduces(10 * sin(8), 10 * cos(8), 0, "#units decl=10 grid=2", "A1 A2 10 0 0");
+	}
+
+	@Test
+	public void testIncrements() throws SegmentParseException {
+		assertReduces(11 * cos(12) * sin(5), 11 * cos(12) * cos(5), 11 * sin(12), "#units incd=1 inca=5 incv=2", "A1 A2 10 0 10");
+	}
+
+	@Test
+	public void testBacksights() throws SegmentParseException {
+		assertReduces(10 * sin(11), 10 * cos(11), 0, "A1 A2 10 10/192 0");
+		assertReduces(0, 10, 0, "A1 A2 10 359/181 0");
+		assertReduces(10 * sin(11), 10 * cos(11), 0, "#units typeab=c", "A1 A2 10 10/12 0");
+		assertReduces(10 * sin(10), 10 * cos(10), 0, "#units typeab=n,5,x", "A1 A2 10 10/192 0");
+		assertReduces(10 * sin(12), 10 * cos(12), 0, "A1 A2 10 --/192 0");
+
+		assertReduces(0, 10 * cos(31), 10 * sin(31), "A1 A2 10 0 30/-32");
+		assertReduces(0, 10 * cos(31), 10 * sin(31), "#units typevb=c", "A1 A2 10 0 30/32");
+		assertReduces(0, 10 * cos(30), 10 * sin(30), "#units typevb=n,5,x", "A1 A2 10 0 30/-32");
+	}
+
+	@Test
+	public void testVertical() throws SegmentParseException {
+		assertReduces(0, 0, 10, "A1 A2 10 -- 90");
+		assertReduces(0, 0, -10, "A1 A2 10 -- -90");
+	}
+
+	@Test
+	public void testRect() throws SegmentParseException {
+		assertReduces(3, 4, 5, "#units rect", "A1 A2 3 4 5");
+		assertReduces(4, -3, 5, "#units rect=90", "#units rect", "A1 A2 3 4 5");
+	}
+
+	@Test
+	public void testBatch() throws SegmentParseException {
+		List<Vector> vectors = parse(
+			"A1 A2 10 90 0",
+			"#units decl=10",
+			"A2 A3 10 0 0",
+			"A3 <1,2,3,4>",
+			"#units feet",
+			"A3 A4 10 45 5");
+		VectorTable table = new VectorTable();
+		for (Vector vector : vectors) {
+			table.add(vector);
+		}
+		double[] east = new double[6];
+		double[] north = new double[6];
+		double[] up = new double[6];
+		VectorReducer reducer = new VectorReducer();
+		reducer.reduce(table, 1, 3, east, north, up, 2);
+		reducer.reduce(table, 0, 1, east, north, up, 1);
+
+		Assert.assertEquals(10, east[1], 1e-9);
+		Assert.assertEquals(10 * sin(10), east[2], 1e-9);
+		Assert.assertTrue(Double.isNaN(north[3]));
+		double[] enu = new double[3];
+		VectorReducer.reduce(vectors.get(3), enu);
+		Assert.assertEquals(enu[0], east[4], 1e-9);
+		Assert.assertEquals(enu[1], north[4], 1e-9);
+		Assert.assertEquals(enu[2], up[4], 1e-9);
+		Assert.assertEquals(0, east[5], 0);
+	}
+}
@@ -0,0 +1,140 @@
+package org.andork.walls.srv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.andork.unit.Angle;
+import org.andork.unit.Length;
+import org.andork.unit.UnitType;
+import org.andork.unit.UnitizedDouble;
+import org.andork.walls.srv.VectorTable.Column;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class VectorTableTests {
+	static <T extends UnitType<T>> void assertEquals(
+		String message,
+		UnitizedDouble<T> expected,
+		UnitizedDouble<T> actual) {
+		if (expected == null || actual == null) {
+			Assert.assertSame(message, expected, actual);
+			return;
+		}
+		Assert.assertSame(message, expected.unit, actual.unit);
+		Assert.assertEquals(message, expected.get(expected.unit), actual.get(expected.unit), 1e-9);
+	}
+
+	static void assertEquals(String message, VarianceOverride expected, VarianceOverride actual) {
+		if (expected instanceof VarianceOverride.Length) {
+			Assert.assertTrue(message, actual instanceof VarianceOverride.Length);
+			assertEquals(
+				message,
+				((VarianceOverride.Length) expected).lengthOverride,
+				((VarianceOverride.Length) actual).lengthOverride);
+		}
+		else if (expected instanceof VarianceOverride.RMSError) {
+			Assert.assertTrue(message, actual instanceof VarianceOverride.RMSError);
+			assertEquals(
+				message,
+				((VarianceOverride.RMSError) expected).error,
+				((VarianceOverride.RMSError) actual).error);
+		}
+		else {
+			Assert.assertSame(message, expected, actual);
+		}
+	}
+
+	static void assertEquals(Vector expected, Vector actual) {
+		String message = expected.sourceSegment.toString();
+		Assert.assertEquals(message, expected.from, actual.from);
+		Assert.assertEquals(message, expected.to, actual.to);
+		assertEquals(message, expected.distance, actual.distance);
+		assertEquals(message, expected.frontsightAzimuth, actual.frontsightAzimuth);
+		assertEquals(message, expected.backsightAzimuth, actual.backsightAzimuth);
+		assertEquals(message, expected.frontsightInclination, actual.frontsightInclination);
+		assertEquals(message, expected.backsightInclination, actual.backsightInclination);
+		assertEquals(message, expected.targetHeight, actual.targetHeight);
+		assertEquals(message, expected.instrumentHeight, actual.instrumentHeight);
+		assertEquals(message, expected.north, actual.north);
+		assertEquals(message, expected.east, actual.east);
+		assertEquals(message, expected.elevation, actual.elevation);
+		assertEquals(message, expected.left, actual.left);
+		assertEquals(message, expected.right, actual.right);
+		assertEquals(message, expected.up, actual.up);
+		assertEquals(message, expected.down, actual.down);
+		assertEquals(message, expected.lrudFacingAzimuth, actual.lrudFacingAzimuth);
+		assertEquals(message, expected.horizontalVariance, actual.horizontalVariance);
+		assertEquals(message, expected.verticalVariance, actual.verticalVariance);
+		Assert.assertEquals(message, expected.cFlag, actual.cFlag);
+		Assert.assertEquals(message, expected.segment, actual.segment);
+		Assert.assertEquals(message, expected.comment, actual.comment);
+		Assert.assertEquals(message, expected.date, actual.date);
+		Assert.assertTrue(message, expected.units.dataIs(actual.units.data()));
+	}
+
+	@Test
+	public void testViewsMatchParsedVectors() throws Exception {
+		List<Vector> expected = new ArrayList<>();
+		VectorTable table = new VectorTable(2);
+		WallsSurveyParser parser = new WallsSurveyParser();
+		parser.setVisitor(new AbstractWallsVisitor() {
+			@Override
+			public void parsedVector(Vector vector) {
+				expected.add(vector);
+				table.parsedVector(vector);
+			}
+		});
+		for (String line : Arrays
+			.asList(
+				"#units feet lrud=from:udlr",
+				"#date 2018-03-04",
+				"A1 A2 2.5 350 2.3 (?,*) <1,2,3,4> ;shot",
+				"#segment /a",
+				"A2 A3 3i4 350/170 2.3/-2 5 6 #s c",
+				"#units a=grads v=percent",
+				"A3 A4 10 20 -30 (5,R3)",
+				"#units rect",
+				"A4 A5 1 2 3",
+				"A5 *1,2,3,4,C*",
+				"#units reset",
+				"A5 A6 2.5 N30E 2.3")) {
+			parser.parseLine(line);
+		}
+
+		Assert.assertEquals(expected.size(), table.size());
+		Vector view = new Vector();
+		for (int row = 0; row < table.size(); row++) {
+			Assert.assertSame(view, table.get(row, view));
+			assertEquals(expected.get(row), view);
+			assertEquals(expected.get(row), table.get(row));
+		}
+	}
+
+	@Test
+	public void testColumnsAndIds() throws Exception {
+		VectorTable table = new VectorTable();
+		WallsSurveyParser parser = new WallsSurveyParser();
+		parser.setVisitor(table);
+		parser.parseLine("#units feet");
+		parser.parseLine("A1 A2 10 90 0");
+		parser.parseLine("A2 A1 10 270 0");
+		parser.parseLine("A2 *1,2,3,4*");
+
+		Assert.assertEquals(3, table.size());
+		Assert.assertEquals(2, table.stationCount());
+		Assert.assertEquals(table.fromId(0), table.toId(1));
+		Assert.assertEquals(table.toId(0), table.fromId(1));
+		Assert.assertEquals("A2", table.station(table.fromId(2)));
+		Assert.assertEquals(-1, table.toId(2));
+		Assert.assertEquals(3.048, table.value(Column.DISTANCE, 0), 1e-12);
+		Assert.assertSame(Length.feet, table.unit(Column.DISTANCE, 0));
+		Assert.assertEquals(Math.PI / 2, table.value(Column.FRONTSIGHT_AZIMUTH, 0), 1e-12);
+		Assert.assertSame(Angle.degrees, table.unit(Column.FRONTSIGHT_AZIMUTH, 0));
+		Assert.assertTrue(Double.isNaN(table.value(Column.BACKSIGHT_AZIMUTH, 0)));
+		Assert.assertNull(table.unit(Column.BACKSIGHT_AZIMUTH, 0));
+		Assert.assertEquals(table.unitsId(0), table.unitsId(1));
+		Assert.assertEquals(table.segmentId(0), table.segmentId(2));
+		Assert.assertEquals(Long.MIN_VALUE, table.date(0));
+	}
+}
@@ -0,0 +1,138 @@
+package org.andork.walls.srv;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.andork.segment.SegmentParseException;
+import org.andork.walls.WallsMessage;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class VisitorInterestsTests {
+	static final String[] lines = {
+		"; a comment",
+		"#[",
+		"block comment",
+		"#]",
+		"#note A1 a note",
+		"#flag A1 A2 /flagged",
+		"A1 A2 2.5 350/171 2.3/-2 <1,2,3,4,90 C> ;inline",
+		"A2 A3 2.5 360 -0",
+		"A3 *1,2,-3,4*",
+		"#fix A4 1 2 3 /fix note ;fix comment", };
+
+	static class EventVisitor extends AbstractWallsVisitor {
+		final int interests;
+		final List<String> events = new ArrayList<>();
+
+		EventVisitor(int interests) {
+			this.interests = interests;
+		}
+
+		@Override
+		public int interests() {
+			return interests;
+		}
+
+		@Override
+		public void parsedVector(Vector v) {
+			events.add("vector " + FastVectorLineDifferentialTests.describe(v));
+		}
+
+		@Override
+		public void parsedFixStation(FixedStation station) {
+			events.add("fix " + station.name + " " + station.note + " " + station.comment);
+		}
+
+		@Override
+		public void parsedComment(String comment) {
+			events.add("comment " + comment);
+		}
+
+		@Override
+		public void parsedNote(String station, String note) {
+			events.add("note " + station + " " + note);
+		}
+
+		@Override
+		public void parsedFlag(List<String> stations, String flag) {
+			events.add("flag " + stations + " " + flag);
+		}
+
+		@Override
+		public void message(WallsMessage message) {
+			events.add(message.severity + " " + message.message);
+		}
+	}
+
+	static List<String> parse(int interests) throws SegmentParseException {
+		EventVisitor visitor = new EventVisitor(interests);
+		WallsSurveyParser parser = new WallsSurveyParser();
+		parser.setVisitor(visitor);
+		for (String line : lines) {
+			parser.parseLine(line);
+		}
+		return visitor.events;
+	}
+
+	static long count(List<String> events, String prefix) {
+		return events.stream().filter(e -> e.startsWith(prefix)).count();
+	}
+
+	@Test
+	public void testAll() throws SegmentParseException {
+		List<String> events = parse(WallsVisitor.ALL);
+		Assert.assertEquals(4, count(events, "comment "));
+		Assert.assertEquals(1, count(events, "note "));
+		Assert.assertEquals(1, count(events, "flag "));
+		Assert.assertEquals(3, count(events, "vector "));
+		Assert.assertTrue(count(events, "warning ") >= 3);
+		Assert.assertTrue(events.contains("fix A4 fix note null"));
+	}
+
+	@Test
+	public void testNone() throws SegmentParseException {
+		List<String> events = parse(0);
+		Assert.assertEquals(0, count(events, "comment "));
+		Assert.assertEquals(0, count(events, "note "));
+		Assert.assertEquals(0, count(events, "flag "));
+		Assert.assertEquals(0, count(events, "warning "));
+		Assert.assertTrue(events.contains("fix A4 null null"));
+
+		List<String> all = parse(WallsVisitor.ALL);
+		List<String> vectors = new ArrayList<>();
+		for (String event : all) {
+			if (event.startsWith("vector ")) {
+				vectors.add(event);
+			}
+		}
+		Assert.assertEquals(vectors.size(), count(events, "vector "));
+		for (String event : events) {
+			if (event.startsWith("vector ")) {
+				Assert.assertTrue(event, event.contains("null, null, null, null, null, false, [], null"));
+			}
+		}
+	}
+
+	@Test
+	public void testOnlyComments() throws SegmentParseException {
+		List<String> events = parse(WallsVisitor.COMMENTS);
+		Assert.assertEquals(4, count(events, "comment "));
+		Assert.assertEquals(0, count(events, "note "));
+		Assert.assertTrue(events.contains("fix A4 null null"));
+	}
+
+	@Test(expected = SegmentParseException.class)
+	public void testStillValidatesNotes() throws SegmentParseException {
+		WallsSurveyParser parser = new WallsSurveyParser();
+		parser.setVisitor(new EventVisitor(0));
+		parser.parseLine("#note");
+	}
+
+	@Test(expected = SegmentParseException.class)
+	public void testStillValidatesLruds() throws SegmentParseException {
+		WallsSurveyParser parser = new WallsSurveyParser();
+		parser.setVisitor(new EventVisitor(0));
+		parser.parseLine("A1 A2 2.5 350 2.3 <1,2,3,4");
+	}
+}
@@ -0,0 +1,154 @@
+package org.andork.walls.srv;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.andork.walls.wpj.WallsProjectBook;
+import org.andork.walls.wpj.WallsProjectEntry;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class WallsCompileCacheTests {
+	static class CountingCompiler extends WallsProjectCompiler {
+		final AtomicInteger parseCount = new AtomicInteger();
+
+		CountingCompiler(ExecutorService executor) {
+			super(executor);
+		}
+
+		@Override
+		protected WallsSurveyParser createParser(WallsProjectEntry entry) {
+			parseCount.incrementAndGet();
+			return super.createParser(entry);
+		}
+	}
+
+	static List<String> compile(WallsProjectCompiler compiler, WallsProjectBook project) throws Exception {
+		WallsProjectCompilerTests.EventLog log = new WallsProjectCompilerTests.EventLog() {
+			@Override
+			public void parsedVector(Vector v) {
+				super.parsedVector(v);
+				// make sure modifying the delivered vectors doesn't affect the cache
+				v.from = "modified";
+				v.segment = Arrays.asList("modified");
+			}
+		};
+		compiler.compile(project, log);
+		return log.events;
+	}
+
+	@Test
+	public void testOnlyChangedEntriesAreReparsed() throws Exception {
+		Path dir = Files.createTempDirectory("WallsCompileCacheTests");
+		WallsProjectBook project = WallsProjectCompilerTests.createProject(dir, 10, -1);
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			CountingCompiler compiler = new CountingCompiler(executor);
+			compiler.setCache(new WallsCompileCache());
+
+			List<String> expected = compile(compiler, project);
+			Assert.assertEquals(10, compiler.parseCount.get());
+			Assert.assertEquals(10, compiler.getCache().size());
+
+			Assert.assertEquals(expected, compile(compiler, project));
+			Assert.assertEquals(10, compiler.parseCount.get());
+
+			Files.write(dir.resolve("s3.SRV"), Arrays.asList("X1 X2 3 4 5"), StandardCharsets.UTF_8);
+			List<String> afterChange = compile(compiler, project);
+			Assert.assertEquals(11, compiler.parseCount.get());
+			Assert.assertNotEquals(expected, afterChange);
+
+			WallsProjectCompiler uncached = new WallsProjectCompiler(executor);
+			Assert.assertEquals(compile(uncached, project), afterChange);
+
+			// the same files under different inherited options must be reparsed
+			WallsProjectBook metersProject = WallsProjectCompilerTests.createProject(dir, 10, -1, "meters");
+			Assert.assertEquals(compile(uncached, metersProject), compile(compiler, metersProject));
+			Assert.assertEquals(21, compiler.parseCount.get());
+
+			// both sets of options stay cached (s3 was rewritten by createProject, so it is reparsed once)
+			Assert.assertEquals(20, compiler.getCache().size());
+			compile(compiler, project);
+			compile(compiler, metersProject);
+			Assert.assertEquals(22, compiler.parseCount.get());
+
+			compiler.getCache().invalidate(dir.resolve("sub").resolve("..").resolve("s3.SRV"));
+			Assert.assertEquals(18, compiler.getCache().size());
+			compile(compiler, project);
+			Assert.assertEquals(23, compiler.parseCount.get());
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	static class CommentlessLog extends WallsProjectCompilerTests.EventLog {
+		@Override
+		public int interests() {
+			return ALL & ~COMMENTS;
+		}
+	}
+
+	@Test
+	public void testEntriesAreParsedAndCachedWithTheVisitorsInterests() throws Exception {
+		Path dir = Files.createTempDirectory("WallsCompileCacheTests");
+		WallsProjectBook project = WallsProjectCompilerTests.createProject(dir, 10, -1);
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			CountingCompiler compiler = new CountingCompiler(executor);
+			compiler.setCache(new WallsCompileCache());
+
+			List<String> all = compile(compiler, project);
+			Assert.assertTrue(all.contains("comment  survey 0"));
+
+			CommentlessLog log = new CommentlessLog();
+			compiler.compile(project, log);
+			Assert.assertEquals(20, compiler.parseCount.get());
+			Assert.assertEquals(20, compiler.getCache().size());
+			all.removeIf(event -> event.startsWith("comment "));
+			Assert.assertEquals(all, log.events);
+
+			log = new CommentlessLog();
+			compiler.compile(project, log);
+			Assert.assertEquals(20, compiler.parseCount.get());
+			Assert.assertEquals(all, log.events);
+
+			ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+			Assert.assertEquals(
+				10,
+				WallsSnapshot.write(snapshot, project, compiler.getCache(), log.interests(), null));
+			Assert.assertFalse(
+				WallsSnapshot.replay(
+					new ByteArrayInputStream(snapshot.toByteArray()),
+					project,
+					new WallsProjectCompilerTests.EventLog()));
+			log = new CommentlessLog();
+			Assert.assertTrue(WallsSnapshot.replay(new ByteArrayInputStream(snapshot.toByteArray()), project, log));
+			Assert.assertEquals(all, log.events);
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testFingerprintDependsOnOptionsAndSegment() throws Exception {
+		Path dir = Files.createTempDirectory("WallsCompileCacheTests");
+		WallsProjectBook project = WallsProjectCompilerTests.createProject(dir, 10, -1);
+		List<WallsProjectEntry> entries = WallsProjectCompiler.surveyEntries(project);
+		Assert.assertNotEquals(
+			WallsCompileCache.fingerprint(entries.get(0)),
+			WallsCompileCache.fingerprint(entries.get(1)));
+		Assert.assertEquals(
+			WallsCompileCache.fingerprint(entries.get(0)),
+			WallsCompileCache.fingerprint(WallsProjectCompiler.surveyEntries(project).get(0)));
+	}
+}
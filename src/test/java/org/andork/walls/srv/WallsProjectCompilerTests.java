@@ -0,0 +1,188 @@
+package org.andork.walls.srv;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import org.andork.segment.SegmentParseException;
+import org.andork.walls.WallsMessage;
+import org.andork.walls.wpj.WallsProjectBook;
+import org.andork.walls.wpj.WallsProjectEntry;
+import org.andork.walls.wpj.WallsProjectParser;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class WallsProjectCompilerTests {
+	static class EventLog extends AbstractWallsVisitor {
+		final List<String> events = new ArrayList<>();
+
+		@Override
+		public void parsedVector(Vector v) {
+			events.add("vector " + v.from + " " + v.to + " " + v.distance + " " + v.segment);
+		}
+
+		@Override
+		public void parsedComment(String comment) {
+			events.add("comment " + comment);
+		}
+
+		@Override
+		public void willParseUnits() {
+			events.add("willParseUnits");
+		}
+
+		@Override
+		public void parsedUnits() {
+			events.add("parsedUnits");
+		}
+
+		@Override
+		public void message(WallsMessage message) {
+			events.add("message " + message);
+		}
+	}
+
+	static WallsProjectBook createProject(Path dir, int surveyCount, int badSurvey) throws Exception {
+		return createProject(dir, surveyCount, badSurvey, "feet");
+	}
+
+	static WallsProjectBook createProject(Path dir, int surveyCount, int badSurvey, String options) throws Exception {
+		WallsProjectParser parser = new WallsProjectParser();
+		parser.parseLine(".book root");
+		parser.parseLine(".path " + dir);
+		for (int i = 0; i < surveyCount; i++) {
+			if (i % 5 == 0) {
+				if (i > 0) {
+					parser.parseLine(".endbook");
+				}
+				parser.parseLine(".book b" + i);
+				parser.parseLine(".options " + options);
+			}
+			parser.parseLine(".survey s" + i);
+			parser.parseLine(".name s" + i);
+			parser.parseLine(".status 8");
+
+			List<String> lines = new ArrayList<>();
+			lines.add("; survey " + i);
+			for (int k = 0; k < 20; k++) {
+				lines.add("A" + k + " A" + (k + 1) + " " + (i + k) + " 10 5");
+				if (i == badSurvey && k == 10) {
+					lines.add("A1 A2 bogus");
+				}
+			}
+			Files.write(dir.resolve("s" + i + ".SRV"), lines, StandardCharsets.UTF_8);
+		}
+		parser.parseLine(".endbook");
+		parser.parseLine(".endbook");
+		return parser.result();
+	}
+
+	static List<String> parseSequentially(WallsProjectBook project) throws IOException {
+		EventLog log = new EventLog();
+		try {
+			for (WallsProjectEntry entry : WallsProjectCompiler.surveyEntries(project)) {
+				WallsSurveyParser parser = new WallsSurveyParser();
+				parser.setVisitor(log);
+				parser.parseSurveyEntry(entry);
+			}
+		}
+		catch (SegmentParseException ex) {
+			log.events.add("error " + ex.getMessage());
+		}
+		return log.events;
+	}
+
+	static List<String> compile(WallsProjectBook project, int threads, int maxPending) throws IOException {
+		EventLog log = new EventLog();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			new WallsProjectCompiler(executor, maxPending).compile(project, log);
+		}
+		catch (SegmentParseException ex) {
+			log.events.add("error " + ex.getMessage());
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		return log.events;
+	}
+
+	@Test
+	public void testDeliversEventsInProjectOrder() throws Exception {
+		Path dir = Files.createTempDirectory("WallsProjectCompilerTests");
+		WallsProjectBook project = createProject(dir, 23, -1);
+		Assert.assertEquals(23, WallsProjectCompiler.surveyEntries(project).size());
+
+		List<String> expected = parseSequentially(project);
+		Assert.assertEquals(23 * 21, expected.size());
+		for (int[] config : Arrays.asList(new int[] { 1, 1 }, new int[] { 4, 3 }, new int[] { 8, 100 })) {
+			Assert.assertEquals(expected, compile(project, config[0], config[1]));
+		}
+	}
+
+	@Test
+	public void testStopsAtFirstFailedEntry() throws Exception {
+		Path dir = Files.createTempDirectory("WallsProjectCompilerTests");
+		WallsProjectBook project = createProject(dir, 12, 7);
+
+		List<String> expected = parseSequentially(project);
+		Assert.assertTrue(expected.get(expected.size() - 1).startsWith("error"));
+		Assert.assertEquals(expected, compile(project, 4, 6));
+	}
+
+	@Test(timeout = 60000)
+	public void testCompileFromTaskInSameForkJoinPool() throws Exception {
+		Path dir = Files.createTempDirectory("WallsProjectCompilerTests");
+		WallsProjectBook project = createProject(dir, 6, -1);
+		List<String> expected = parseSequentially(project);
+
+		ForkJoinPool pool = new ForkJoinPool(1);
+		try {
+			WallsProjectCompiler compiler = new WallsProjectCompiler(pool, 3);
+			List<String> actual = pool.submit(() -> {
+				EventLog log = new EventLog();
+				compiler.compile(project, log);
+				return log.events;
+			}).get();
+			Assert.assertEquals(expected, actual);
+		}
+		finally {
+			pool.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testParsersThatReuseVectors() throws Exception {
+		Path dir = Files.createTempDirectory("WallsProjectCompilerTests");
+		WallsProjectBook project = createProject(dir, 4, -1);
+		List<String> expected = parseSequentially(project);
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			WallsProjectCompiler compiler = new WallsProjectCompiler(executor) {
+				@Override
+				protected WallsSurveyParser createParser(WallsProjectEntry entry) {
+					WallsSurveyParser parser = super.createParser(entry);
+					parser.setReuseVectors(true);
+					return parser;
+				}
+			};
+			compiler.setCache(new WallsCompileCache());
+			for (int i = 0; i < 2; i++) {
+				EventLog log = new EventLog();
+				compiler.compile(project, log);
+				Assert.assertEquals(expected, log.events);
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+}
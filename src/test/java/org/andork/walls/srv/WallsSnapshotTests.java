@@ -0,0 +1,281 @@
+package org.andork.walls.srv;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.andork.walls.srv.RecordingWallsVisitor.Event;
+import org.andork.walls.wpj.WallsProjectBook;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class WallsSnapshotTests {
+	static String describe(Event event) {
+		switch (event.type) {
+		case VECTOR: {
+			Vector v = (Vector) event.arg;
+			return "vector " + FastVectorLineDifferentialTests.describe(v) + " " + v.sourceSegment.source + ":"
+				+ v.sourceSegment.startLine + ":" + v.sourceSegment.startCol + " " + v.units.data().hashCode();
+		}
+		case FIX_STATION: {
+			FixedStation s = (FixedStation) event.arg;
+			return "fix " + Arrays
+				.asList(
+					s.name,
+					s.north,
+					s.east,
+					s.elevation,
+					s.latitude,
+					s.longitude,
+					s.horizontalVariance,
+					s.verticalVariance,
+					s.note,
+					s.segment,
+					s.comment,
+					s.date,
+					s.units.data().hashCode());
+		}
+		default:
+			return event.type + " " + event.arg + " " + event.arg2;
+		}
+	}
+
+	static List<String> describe(RecordingWallsVisitor recorder) {
+		List<String> result = new ArrayList<>();
+		for (Event event : recorder.events()) {
+			result.add(describe(event));
+		}
+		return result;
+	}
+
+	@Test
+	public void testCodecRoundTrip() throws Exception {
+		RecordingWallsVisitor recorder = new RecordingWallsVisitor();
+		WallsSurveyParser parser = new WallsSurveyParser();
+		parser.setVisitor(recorder);
+		for (String line : Arrays
+			.asList(
+				"#units feet lrud=from:udlr prefix=Q tape=ss decl=2 incd=-1",
+				"#date 2018-03-04",
+				"#segment /a",
+				"A1 A2 2.5 350 2.3 (?,*) <1,2,3,4> ;shot",
+				"A2 A3 3i4 350/170 2.3/-2 5 6 #s c",
+				"#units rect uvh=2",
+				"A3 A4 1 2 3 (R5)",
+				"#fix A1 1 2 3 (2,3) /note ;fixed",
+				"#note A2 /a note",
+				"#flag A1 A2 /flagged",
+				"A4 *1,2,3,4*",
+				"#units reset",
+				"A4 A5 2.5 N30E 2.3",
+				"; done")) {
+			parser.parseLine(line);
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		WallsEventCodec.write(recorder.events(), out);
+		out.flush();
+		RecordingWallsVisitor decoded =
+			WallsEventCodec.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+		Assert.assertEquals(describe(recorder), describe(decoded));
+		for (int i = 0; i < recorder.events().size(); i++) {
+			Event expected = recorder.events().get(i);
+			if (expected.type == RecordingWallsVisitor.EventType.VECTOR) {
+				Assert.assertEquals(
+					((Vector) expected.arg).units,
+					((Vector) decoded.events().get(i).arg).units);
+			}
+		}
+	}
+
+	@Test
+	public void testSourceLocationsAreRepacked() throws Exception {
+		File file = File.createTempFile("WallsSnapshotTests", ".SRV");
+		file.deleteOnExit();
+		Files.write(file.toPath(), Arrays.asList("A1 A2 10 20 5", "A2 A3 15 30 -5"), StandardCharsets.UTF_8);
+
+		SourceLocationResolver writerResolver = new SourceLocationResolver();
+		writerResolver.sourceId("some other source");
+		RecordingWallsVisitor recorder = new RecordingWallsVisitor();
+		WallsSurveyParser parser = new WallsSurveyParser();
+		parser.setSourceLocationResolver(writerResolver);
+		parser.setVisitor(recorder);
+		parser.parseFile(file);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		WallsEventCodec.write(recorder.events(), out, writerResolver);
+		out.flush();
+
+		SourceLocationResolver readerResolver = new SourceLocationResolver();
+		RecordingWallsVisitor decoded = WallsEventCodec
+			.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), readerResolver);
+		Vector vector = (Vector) decoded.events().get(1).arg;
+		Assert.assertEquals(0, SourceLocation.sourceId(vector.sourceLocation));
+		Assert.assertEquals("A2 A3 15 30 -5", readerResolver.resolve(vector.sourceLocation).toString());
+
+		decoded = WallsEventCodec.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		Assert.assertEquals(SourceLocation.NONE, ((Vector) decoded.events().get(1).arg).sourceLocation);
+
+		bytes.reset();
+		WallsEventCodec.write(recorder.events(), out);
+		out.flush();
+		decoded = WallsEventCodec
+			.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), readerResolver);
+		Assert.assertEquals(SourceLocation.NONE, ((Vector) decoded.events().get(1).arg).sourceLocation);
+	}
+
+	static WallsCompileCache compileWithCache(WallsProjectBook project, ExecutorService executor) throws Exception {
+		WallsProjectCompiler compiler = new WallsProjectCompiler(executor);
+		compiler.setCache(new WallsCompileCache());
+		compiler.compile(project, new WallsProjectCompilerTests.EventLog());
+		return compiler.getCache();
+	}
+
+	@Test
+	public void testReplayMatchesParsing() throws Exception {
+		Path dir = Files.createTempDirectory("WallsSnapshotTests");
+		WallsProjectBook project = WallsProjectCompilerTests.createProject(dir, 10, -1);
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+			Assert.assertEquals(10, WallsSnapshot.write(snapshot, project, compileWithCache(project, executor)));
+
+			WallsProjectCompilerTests.EventLog log = new WallsProjectCompilerTests.EventLog();
+			Assert.assertTrue(WallsSnapshot.replay(new ByteArrayInputStream(snapshot.toByteArray()), project, log));
+			Assert.assertEquals(WallsProjectCompilerTests.parseSequentially(project), log.events);
+
+			Files.write(dir.resolve("s3.SRV"), Arrays.asList("X1 X2 3 4 5"), StandardCharsets.UTF_8);
+			log = new WallsProjectCompilerTests.EventLog();
+			Assert.assertFalse(WallsSnapshot.replay(new ByteArrayInputStream(snapshot.toByteArray()), project, log));
+			Assert.assertTrue(log.events.isEmpty());
+
+			WallsProjectBook metersProject = WallsProjectCompilerTests.createProject(dir, 10, -1, "meters");
+			Assert.assertFalse(
+				WallsSnapshot.replay(new ByteArrayInputStream(snapshot.toByteArray()), metersProject, log));
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testReadIntoCache() throws Exception {
+		Path dir = Files.createTempDirectory("WallsSnapshotTests");
+		WallsProjectBook project = WallsProjectCompilerTests.createProject(dir, 10, -1);
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+			WallsSnapshot.write(snapshot, project, compileWithCache(project, executor));
+			Files.write(dir.resolve("s3.SRV"), Arrays.asList("X1 X2 3 4 5"), StandardCharsets.UTF_8);
+
+			WallsCompileCacheTests.CountingCompiler compiler = new WallsCompileCacheTests.CountingCompiler(executor);
+			compiler.setCache(new WallsCompileCache());
+			Assert.assertEquals(
+				10,
+				WallsSnapshot.read(new ByteArrayInputStream(snapshot.toByteArray()), compiler.getCache()));
+
+			List<String> events = WallsCompileCacheTests.compile(compiler, project);
+			Assert.assertEquals(1, compiler.parseCount.get());
+			Assert.assertEquals(WallsCompileCacheTests.compile(new WallsProjectCompiler(executor), project), events);
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testCorruptRecordsAreSkipped() throws Exception {
+		Path dir = Files.createTempDirectory("WallsSnapshotTests");
+		WallsProjectBook project = WallsProjectCompilerTests.createProject(dir, 3, -1);
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+			WallsSnapshot.write(snapshot, project, compileWithCache(project, executor));
+			byte[] bytes = snapshot.toByteArray();
+			bytes[bytes.length - 5] ^= 0x40;
+
+			Assert.assertEquals(2, WallsSnapshot.read(new ByteArrayInputStream(bytes), new WallsCompileCache()));
+			Assert.assertFalse(
+				WallsSnapshot.replay(new ByteArrayInputStream(bytes), project, new WallsProjectCompilerTests.EventLog()));
+
+			bytes = snapshot.toByteArray();
+			bytes[7] = (byte) (WallsSnapshot.VERSION + 1);
+			Assert.assertEquals(0, WallsSnapshot.read(new ByteArrayInputStream(bytes), new WallsCompileCache()));
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testTruncatedAndMalformedSnapshotsAreInvalid() throws Exception {
+		Path dir = Files.createTempDirectory("WallsSnapshotTests");
+		WallsProjectBook project = WallsProjectCompilerTests.createProject(dir, 3, -1);
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+			WallsSnapshot.write(snapshot, project, compileWithCache(project, executor));
+			byte[] bytes = snapshot.toByteArray();
+
+			for (int length : new int[] { 4, 9, 20, bytes.length / 2, bytes.length - 1 }) {
+				byte[] truncated = Arrays.copyOf(bytes, length);
+				WallsCompileCache cache = new WallsCompileCache();
+				Assert.assertEquals(0, WallsSnapshot.read(new ByteArrayInputStream(truncated), cache));
+				WallsProjectCompilerTests.EventLog log = new WallsProjectCompilerTests.EventLog();
+				Assert.assertFalse(WallsSnapshot.replay(new ByteArrayInputStream(truncated), project, log));
+			}
+
+			// a record count followed by a path length of 2^31 - 1
+			ByteArrayOutputStream huge = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(huge);
+			out.writeInt(WallsSnapshot.MAGIC);
+			out.writeInt(WallsSnapshot.VERSION);
+			WallsEventCodec.writeVarInt(out, 1);
+			WallsEventCodec.writeVarInt(out, Integer.MAX_VALUE);
+			out.write(new byte[100]);
+			out.flush();
+			Assert.assertEquals(
+				0,
+				WallsSnapshot.read(new ByteArrayInputStream(huge.toByteArray()), new WallsCompileCache()));
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testDeletedSourceIsChanged() throws Exception {
+		Path dir = Files.createTempDirectory("WallsSnapshotTests");
+		WallsProjectBook project = WallsProjectCompilerTests.createProject(dir, 3, -1);
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			WallsCompileCache cache = compileWithCache(project, executor);
+			ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+			WallsSnapshot.write(snapshot, project, cache);
+			Files.delete(dir.resolve("s1.SRV"));
+
+			Assert.assertFalse(
+				WallsSnapshot.replay(
+					new ByteArrayInputStream(snapshot.toByteArray()),
+					project,
+					new WallsProjectCompilerTests.EventLog()));
+			Assert.assertEquals(2, WallsSnapshot.write(new ByteArrayOutputStream(), project, cache));
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package org.andork.walls.srv;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.andork.segment.SegmentParseException;
+import org.andork.unit.Length;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class WallsUnitsInterningTests {
+	static List<WallsUnits> parseUnits(String... lines) throws SegmentParseException {
+		List<WallsUnits> result = new ArrayList<>();
+		WallsSurveyParser parser = new WallsSurveyParser();
+		parser.setVisitor(new AbstractWallsVisitor() {
+			@Override
+			public void parsedVector(Vector vector) {
+				result.add(vector.units);
+			}
+		});
+		for (String line : lines) {
+			parser.parseLine(line);
+		}
+		return result;
+	}
+
+	@Test
+	public void testEqualStatesAreShared() throws SegmentParseException {
+		List<WallsUnits> units = parseUnits(
+			"#units feet",
+			"A1 A2 1 2 3",
+			"A2 A3 1 2 3",
+			"#units meters",
+			"A3 A4 1 2 3",
+			"#units feet",
+			"A4 A5 1 2 3",
+			"#units save",
+			"#units meters decl=2",
+			"A5 A6 1 2 3",
+			"#units restore",
+			"A6 A7 1 2 3");
+		Assert.assertSame(units.get(0), units.get(1));
+		Assert.assertNotSame(units.get(0), units.get(2));
+		Assert.assertSame(units.get(0), units.get(3));
+		Assert.assertNotSame(units.get(2), units.get(4));
+		Assert.assertSame(units.get(0), units.get(5));
+
+		List<WallsUnits> other = parseUnits("#units feet", "A1 A2 1 2 3", "#units reset", "A1 A2 1 2 3");
+		Assert.assertSame(units.get(0), other.get(0));
+		Assert.assertSame(units.get(2), other.get(1));
+		Assert.assertTrue(units.get(0).dataIs(other.get(0).data()));
+	}
+
+	@Test
+	public void testEquals() {
+		WallsUnits feet = new WallsUnits().setDUnit(Length.feet);
+		Assert.assertEquals(feet, new WallsUnits().setDUnit(Length.feet));
+		Assert.assertEquals(feet.hashCode(), new WallsUnits().setDUnit(Length.feet).hashCode());
+		Assert.assertNotEquals(feet, new WallsUnits());
+		Assert.assertSame(feet, new WallsUnits().setDUnit(Length.feet));
+	}
+}